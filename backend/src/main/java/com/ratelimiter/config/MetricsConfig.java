@@ -0,0 +1,36 @@
+package com.ratelimiter.config;
+
+import com.ratelimiter.service.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Size and turnover of the shared limiter's bucket store. Read at scrape time, so the
+     * decision path pays nothing for them.
+     */
+    @Bean
+    public MeterBinder bucketStoreMetrics(TokenBucketRateLimiter rateLimiter) {
+        return registry -> {
+            Gauge.builder("ratelimiter.store.size", rateLimiter, r -> r.getStoreStats().getSize())
+                .description("Buckets currently held")
+                .register(registry);
+            Gauge.builder("ratelimiter.store.max.size", rateLimiter, r -> r.getStoreStats().getMaxSize())
+                .register(registry);
+            Gauge.builder("ratelimiter.store.memory", rateLimiter, r -> r.getStoreStats().getEstimatedBytes())
+                .baseUnit("bytes")
+                .register(registry);
+            FunctionCounter.builder("ratelimiter.store.expired", rateLimiter, r -> r.getStoreStats().getExpired())
+                .description("Idle buckets dropped after refilling to capacity")
+                .register(registry);
+            FunctionCounter.builder("ratelimiter.store.evicted", rateLimiter, r -> r.getStoreStats().getEvicted())
+                .description("Active buckets dropped to stay under the maximum size")
+                .register(registry);
+        };
+    }
+}
@@ -1,15 +1,31 @@
 package com.ratelimiter.controller;
 
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimitRules;
 import com.ratelimiter.model.RateLimiterRequest;
 import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.model.RateLimiterStats;
+import com.ratelimiter.model.Storage;
+import com.ratelimiter.model.TelemetrySnapshot;
+import com.ratelimiter.service.LoadGenerator;
+import com.ratelimiter.service.RateLimitRuleLoader;
+import com.ratelimiter.service.RateLimiter;
+import com.ratelimiter.service.RateLimiterFactory;
+import com.ratelimiter.service.TelemetryAggregator;
 import com.ratelimiter.service.TokenBucketRateLimiter;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 @RestController
 @RequestMapping("/api/rate-limiter")
@@ -22,34 +38,117 @@ public class RateLimiterController {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    private final AtomicBoolean isRunning = new AtomicBoolean(false);
-    private final AtomicInteger currentTps = new AtomicInteger(0);
+    @Autowired
+    private RateLimiterFactory rateLimiterFactory;
+
+    @Autowired
+    private RateLimitRuleLoader ruleLoader;
+
+    private final TelemetryAggregator telemetry = new TelemetryAggregator();
+    private volatile LoadGenerator loadGenerator;
+    // The shared limiter with its decisions recorded in Micrometer
+    private RateLimiter instrumentedRateLimiter;
+
+    @PostConstruct
+    public void init() {
+        instrumentedRateLimiter = rateLimiterFactory.instrument(rateLimiter, Storage.LOCAL);
+    }
 
     @PostMapping("/start")
-    public void startRequests(@RequestBody RateLimiterRequest request) {
-        isRunning.set(true);
-        currentTps.set(request.getTps());
+    public synchronized void startRequests(@RequestBody RateLimiterRequest request) {
+        RateLimiter target = request.getEngine() != null
+            ? rateLimiterFactory.create(request.getEngine())
+            : instrumentedRateLimiter;
+        // Every decision goes into the snapshots; about one in eventSampleInterval is also published on its own
+        int sampleInterval = Math.max(0, request.getEventSampleInterval());
+        LoadGenerator generator = new LoadGenerator(target, request, (response, latencyNanos) -> {
+            telemetry.record(response, latencyNanos);
+            if (sampleInterval > 0 && ThreadLocalRandom.current().nextInt(sampleInterval) == 0) {
+                messagingTemplate.convertAndSend("/topic/rateLimiterUpdate", response);
+            }
+        });
+        stopRequests();
+        loadGenerator = generator;
+        generator.start();
     }
 
     @PostMapping("/stop")
-    public void stopRequests() {
-        isRunning.set(false);
-        currentTps.set(0);
+    public synchronized void stopRequests() {
+        LoadGenerator generator = loadGenerator;
+        if (generator != null) {
+            generator.stop();
+        }
     }
 
-    @Scheduled(fixedRate = 1000)
-    public void processRequests() {
-        if (!isRunning.get()) return;
+    @GetMapping("/stats")
+    public RateLimiterStats stats() {
+        LoadGenerator generator = loadGenerator;
+        return generator != null ? generator.getStats() : new RateLimiterStats();
+    }
 
-        int tps = currentTps.get();
-        for (int i = 0; i < tps; i++) {
-            RateLimiterResponse response = rateLimiter.check("test-client");
-            messagingTemplate.convertAndSend("/topic/rateLimiterUpdate", response);
+    @Scheduled(fixedRateString = "${rate.limiter.telemetry.interval-ms:250}")
+    public void publishTelemetry() {
+        TelemetrySnapshot snapshot = telemetry.snapshot();
+        // Keep publishing while idle only until the interval that saw the last decisions
+        LoadGenerator generator = loadGenerator;
+        if ((generator != null && generator.isRunning()) || snapshot.getAllowed() + snapshot.getDenied() > 0) {
+            messagingTemplate.convertAndSend("/topic/rateLimiterSnapshot", snapshot);
         }
     }
 
     @GetMapping("/check/{clientId}")
-    public RateLimiterResponse check(@PathVariable String clientId) {
-        return rateLimiter.check(clientId);
+    public Mono<ResponseEntity<RateLimiterResponse>> check(@PathVariable String clientId,
+                                                           @RequestParam(defaultValue = "1") int permits) {
+        return Mono.fromFuture(() -> instrumentedRateLimiter.checkAsync(clientId, permits)).map(this::toResponseEntity);
+    }
+
+    /**
+     * Holds the request until the permits are available, for at most maxWaitMs. The wait is a
+     * virtual-thread sleep after a single reservation, not a polling loop.
+     */
+    @GetMapping("/acquire/{clientId}")
+    public Mono<Boolean> acquire(@PathVariable String clientId,
+                                 @RequestParam(defaultValue = "1") int permits,
+                                 @RequestParam(defaultValue = "1000") long maxWaitMs) {
+        return Mono.fromFuture(() -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return instrumentedRateLimiter.acquire(clientId, permits, Duration.ofMillis(maxWaitMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }, Thread::startVirtualThread));
+    }
+
+    private ResponseEntity<RateLimiterResponse> toResponseEntity(RateLimiterResponse response) {
+        if (response.isAllowed()) {
+            return ResponseEntity.ok(response);
+        }
+        // Retry-After is expressed in whole seconds, so round up
+        long retryAfterSeconds = (response.getRetryAfterMs() + 999) / 1000;
+        // Clients and proxies only act on Retry-After with a 429 or 503
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(response);
+    }
+
+    @GetMapping("/store-stats")
+    public BucketStoreStats storeStats() {
+        return rateLimiter.getStoreStats();
+    }
+
+    @GetMapping("/rules")
+    public RateLimitRules rules() {
+        return ruleLoader.current();
+    }
+
+    @PutMapping("/rules")
+    public void updateRules(@RequestBody RateLimitRules rules) {
+        ruleLoader.apply(rules);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
     }
 } 
\ No newline at end of file
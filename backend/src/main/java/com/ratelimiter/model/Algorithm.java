@@ -2,11 +2,10 @@ package com.ratelimiter.model;
 
 /**
  * Enum representing different rate limiting algorithms.
- * Currently only TOKEN_BUCKET is implemented.
- * Other algorithms (LEAKY_BUCKET, SLIDING_WINDOW) are placeholders for future implementation.
  */
 public enum Algorithm {
     TOKEN_BUCKET,
-    LEAKY_BUCKET,  // Not implemented yet
-    SLIDING_WINDOW // Not implemented yet
-} 
\ No newline at end of file
+    LEAKY_BUCKET,      // GCRA, one theoretical arrival time per client
+    SLIDING_WINDOW,    // Weighted counters of the current and previous window
+    SLIDING_WINDOW_LOG // Exact, one timestamp per request in the window
+}
@@ -0,0 +1,16 @@
+package com.ratelimiter.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class BucketStoreStats {
+    private long size;
+    private long maxSize;
+    // Idle buckets dropped after refilling to capacity, which loses no state
+    private long expired;
+    // Active buckets dropped to stay under maxSize; those clients start over with a full bucket
+    private long evicted;
+    private long estimatedBytes;
+}
@@ -0,0 +1,10 @@
+package com.ratelimiter.model;
+
+/**
+ * How the load generator picks the client of each request.
+ */
+public enum KeyDistribution {
+    UNIFORM,  // Every client equally likely
+    ZIPF,     // Client i chosen with probability proportional to 1 / i^zipfExponent
+    HOT_KEY   // One client receives hotKeyShare of the traffic, the rest is uniform
+}
@@ -0,0 +1,19 @@
+package com.ratelimiter.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PeerSyncStats {
+    private String nodeId;
+    private int nodes;
+    private long syncs;
+    // Keys whose consumption was sent to the peers, and peer deltas applied to local buckets
+    private long deltasSent;
+    private long deltasApplied;
+    // Tokens granted beyond the limit across the nodes, as seen once the peers' deltas arrive
+    private double overshootTokens;
+    // Requests denied by this node's share although its view of the bucket had the tokens
+    private long shareDenials;
+}
@@ -0,0 +1,13 @@
+package com.ratelimiter.model;
+
+import lombok.Data;
+
+@Data
+public class RateLimitRule {
+    // Client id or glob such as "partner-*"; matches every client when absent
+    private String pattern;
+    // Tier the client must be assigned to; matches every tier when absent
+    private String tier;
+    private int capacity;
+    private int refillRate;
+}
@@ -0,0 +1,16 @@
+package com.ratelimiter.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class RateLimitRules {
+    // Checked in order after exact client ids; the first match wins
+    private List<RateLimitRule> rules = new ArrayList<>();
+    // Client id to tier
+    private Map<String, String> tiers = new HashMap<>();
+}
@@ -6,7 +6,8 @@ import lombok.Data;
 public class RateLimiterConfig {
     private String clientId;
     private Algorithm algorithm;
+    private Storage storage = Storage.LOCAL;
     private int capacity;
     private int refillRate;
     private long windowSizeMs;
-} 
\ No newline at end of file
+}
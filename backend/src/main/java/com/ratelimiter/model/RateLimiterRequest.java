@@ -8,4 +8,14 @@ public class RateLimiterRequest {
     private int tps;
     private int capacity;
     private int refillRate;
-} 
\ No newline at end of file
+    // Publish every nth simulated decision on /topic/rateLimiterUpdate; 0 publishes snapshots only
+    private int eventSampleInterval;
+    private int threads = 1;
+    // Number of distinct clients; with more than one they are named clientId-0, clientId-1, ...
+    private int clientCount = 1;
+    private KeyDistribution distribution = KeyDistribution.UNIFORM;
+    private double zipfExponent = 1.0;
+    private double hotKeyShare = 0.5;
+    // Engine to load; the shared local token bucket when absent
+    private RateLimiterConfig engine;
+}
@@ -10,4 +10,7 @@ public class RateLimiterResponse {
     private int currentTokens;
     private int capacity;
     private int refillRate;
+    private long retryAfterMs;
+    // Level of a composite limit that denied the request, null otherwise
+    private String rejectedLevel;
 } 
\ No newline at end of file
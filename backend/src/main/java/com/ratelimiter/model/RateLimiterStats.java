@@ -9,5 +9,18 @@ public class RateLimiterStats {
     private int refillRate;
     private long requestCount;
     private long allowedCount;
+    // Checks that threw, e.g. because Redis was unreachable; not part of the counts above
+    private long errorCount;
     private double successRate;
-} 
\ No newline at end of file
+    private int targetTps;
+    private double achievedTps;
+    private long elapsedMs;
+    // Measured from the time each request was scheduled to start, so a stalled limiter also
+    // delays the requests queued behind it instead of hiding them (coordinated omission)
+    private double meanLatencyMicros;
+    private long p50LatencyMicros;
+    private long p90LatencyMicros;
+    private long p99LatencyMicros;
+    private long p999LatencyMicros;
+    private long maxLatencyMicros;
+}
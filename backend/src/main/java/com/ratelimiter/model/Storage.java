@@ -0,0 +1,11 @@
+package com.ratelimiter.model;
+
+/**
+ * Where an engine keeps its per-client state.
+ * LOCAL state is in-process and only limits the node it runs on,
+ * REDIS state is shared by every node using the same Redis.
+ */
+public enum Storage {
+    LOCAL,
+    REDIS
+}
@@ -0,0 +1,23 @@
+package com.ratelimiter.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TelemetrySnapshot {
+    private long timestamp;
+    private long intervalMs;
+    private long allowed;
+    private long denied;
+    // Token level after the last decision of the interval
+    private int currentTokens;
+    private int capacity;
+    private int refillRate;
+    // latencyHistogram[i] counts decisions that took less than 2^i microseconds and at least 2^(i-1)
+    private long[] latencyHistogram;
+    // Percentiles are the upper bound of the histogram bucket they fall in
+    private long p50LatencyMicros;
+    private long p99LatencyMicros;
+    private long maxLatencyMicros;
+}
@@ -0,0 +1,161 @@
+package com.ratelimiter.service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary file of token bucket states, written and read through memory maps.
+ *
+ * A header holds a magic number, the format version, the wall-clock time of the snapshot
+ * and the number of entries. Each entry is the client id, the bucket's zero instant relative
+ * to the snapshot time, and the limits of a pinned bucket, zero for one following the rules:
+ * <pre>
+ *   u16 key length | key, UTF-8 | i64 zero instant offset, ns | i32 capacity | i32 refill rate
+ * </pre>
+ * A bucket state is a nanoTime, meaningless in another process, so offsets are taken against
+ * the nanoTime of the snapshot and restored against the nanoTime of the reader, less the
+ * wall-clock time elapsed in between. Buckets therefore come back as they would be had the
+ * process kept running. A wall clock that went backwards counts as no time elapsed.
+ *
+ * The writer fills a temporary file and moves it over the snapshot, so a crash mid-write
+ * leaves the previous snapshot intact.
+ */
+final class BucketSnapshotFile {
+    private static final int MAGIC = 0x524C4253;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int COUNT_OFFSET = 16;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+    /** Bytes mapped at a time while writing; the file is truncated to its content at the end. */
+    private static final int WRITE_CHUNK = 8 << 20;
+
+    private BucketSnapshotFile() {
+    }
+
+    interface EntryConsumer {
+        /**
+         * @param zeroTokensAt the restored state, a nanoTime of this process
+         * @param capacity the capacity of a pinned bucket, 0 for a bucket following the rules
+         * @param refillRate the refill rate of a pinned bucket, 0 for a bucket following the rules
+         */
+        void accept(String clientId, long zeroTokensAt, int capacity, int refillRate);
+    }
+
+    /**
+     * Writes a snapshot. Entries go to a temporary file until {@link #commit}.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final long snapshotNanos = System.nanoTime();
+        private MappedByteBuffer chunk;
+        private long chunkStart;
+        private int count;
+        private boolean committed;
+
+        Writer(Path target) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(0);
+            this.chunkStart = HEADER_BYTES;
+            this.chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, WRITE_CHUNK);
+        }
+
+        /**
+         * @return false if the client id is too long to be saved
+         */
+        boolean add(String clientId, long zeroTokensAt, int capacity, int refillRate) throws IOException {
+            byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+            if (key.length > MAX_KEY_BYTES) {
+                return false;
+            }
+            int size = 2 + key.length + 8 + 4 + 4;
+            if (chunk.remaining() < size) {
+                chunk.force();
+                chunkStart += chunk.position();
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, WRITE_CHUNK);
+            }
+            chunk.putShort((short) key.length).put(key)
+                .putLong(zeroTokensAt - snapshotNanos).putInt(capacity).putInt(refillRate);
+            count++;
+            return true;
+        }
+
+        /**
+         * Completes the snapshot and moves it over the previous one.
+         *
+         * @return the number of entries written
+         */
+        int commit() throws IOException {
+            header.putInt(COUNT_OFFSET, count);
+            header.force();
+            chunk.force();
+            channel.truncate(chunkStart + chunk.position());
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot, handing each entry to {@code consumer} with its state restored to now.
+     *
+     * @return the number of entries read
+     * @throws IOException if the file cannot be read, is not a snapshot of this version, or is
+     *                     truncated or corrupt; entries read before the fault were handed over
+     */
+    static int read(Path file, EntryConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a bucket snapshot: " + file + " is " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a bucket snapshot of version " + VERSION + ": " + file);
+            }
+            long elapsedMillis = Math.max(0, System.currentTimeMillis() - buffer.getLong());
+            int count = buffer.getInt();
+            long base = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(elapsedMillis);
+            byte[] key = new byte[MAX_KEY_BYTES];
+            for (int i = 0; i < count; i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                buffer.get(key, 0, length);
+                long offset = buffer.getLong();
+                int capacity = buffer.getInt();
+                int refillRate = buffer.getInt();
+                // Pinned limits must be valid, rule-following entries carry none
+                if (capacity < 0 || capacity > 0 && refillRate < 1 || capacity == 0 && refillRate != 0) {
+                    throw new IOException("Corrupt bucket snapshot: " + file + " has limits " + capacity
+                        + " and " + refillRate + " in entry " + i);
+                }
+                consumer.accept(new String(key, 0, length, StandardCharsets.UTF_8), base + offset, capacity, refillRate);
+            }
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated bucket snapshot: " + file, e);
+        }
+    }
+}
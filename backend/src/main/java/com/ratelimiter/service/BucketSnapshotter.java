@@ -0,0 +1,69 @@
+package com.ratelimiter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps the buckets of the shared {@link TokenBucketRateLimiter} across restarts, so that a
+ * deploy does not hand every client a full burst at once. The buckets are restored on startup,
+ * after the rules so that they resolve their limits, saved periodically, and saved once more
+ * on a graceful shutdown. Without a snapshot file set, nothing is saved.
+ */
+@Component
+@DependsOn("rateLimitRuleLoader")
+public class BucketSnapshotter {
+    private static final Logger log = LoggerFactory.getLogger(BucketSnapshotter.class);
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final Path snapshotFile;
+
+    public BucketSnapshotter(TokenBucketRateLimiter rateLimiter,
+                             @Value("${rate.limiter.snapshot.file:}") String snapshotFile) {
+        this.rateLimiter = rateLimiter;
+        this.snapshotFile = snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (snapshotFile == null || !Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            int restored = rateLimiter.restoreSnapshot(snapshotFile);
+            log.info("Restored {} buckets from {} in {} ms", restored, snapshotFile, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            // A bad snapshot must not keep the service from starting
+            log.warn("Starting with empty buckets, {} could not be restored: {}", snapshotFile, e.toString());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rate.limiter.snapshot.interval-ms:10000}")
+    public synchronized void save() {
+        if (snapshotFile == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            int saved = rateLimiter.saveSnapshot(snapshotFile);
+            log.debug("Saved {} buckets to {} in {} ms", saved, snapshotFile, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            log.warn("Keeping the previous bucket snapshot, {} could not be written: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void saveOnShutdown() {
+        save();
+    }
+}
@@ -0,0 +1,213 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.BucketStoreStats;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Bounded map of per-client buckets.
+ *
+ * A bucket that has refilled to its initial state carries no information, so it is dropped
+ * for free: every insert advances a cursor over a few entries and retires the idle ones. When
+ * the store is still over {@code maxSize}, it samples a few entries at the cursor and evicts
+ * the one that will be idle soonest, approximating LRU without any per-access bookkeeping.
+ * Only inserts do maintenance, so lookups of existing clients stay a single map read.
+ *
+ * Retiring a bucket is a CAS on the bucket itself, after which it refuses updates; a thread
+ * that still holds it removes it and looks the client up again, so no decision is ever made
+ * against a bucket that is no longer in the store.
+ */
+class BucketStore<B extends BucketStore.Bucket> {
+    /** Entries examined for idle buckets on every insert. */
+    private static final int SWEEP_STEP = 4;
+    /** Entries sampled to pick a victim when the store is full. */
+    private static final int EVICTION_SAMPLES = 8;
+    /** Approximate heap cost of an entry besides its key: map node, table slot and token bucket. */
+    private static final int BYTES_PER_ENTRY = 112;
+    /** Approximate heap cost of a key besides its characters. */
+    private static final int BYTES_PER_KEY = 40;
+
+    private final ConcurrentHashMap<String, B> buckets = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final int bytesPerEntry;
+    private final ReentrantLock maintenance = new ReentrantLock();
+    private Iterator<Map.Entry<String, B>> cursor;
+
+    private final LongAdder keyChars = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * State a bucket must expose to be expired or evicted.
+     */
+    interface Bucket {
+        /**
+         * @return the nanoTime at which the bucket is back to its initial state
+         */
+        long idleAt();
+
+        /**
+         * Atomically retires the bucket if it is idle at {@code now}.
+         *
+         * @return whether the bucket was retired
+         */
+        boolean retireIfIdle(long now);
+
+        /**
+         * Retires the bucket regardless of its state.
+         */
+        void retire();
+    }
+
+    BucketStore(int maxSize) {
+        this(maxSize, BYTES_PER_ENTRY);
+    }
+
+    /**
+     * @param bytesPerEntry approximate heap cost of an entry besides its key, for the stats
+     */
+    BucketStore(int maxSize, int bytesPerEntry) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1, was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.bytesPerEntry = bytesPerEntry;
+    }
+
+    B get(String key, Function<String, B> factory) {
+        B bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        B created = factory.apply(key);
+        bucket = buckets.putIfAbsent(key, created);
+        if (bucket != null) {
+            return bucket;
+        }
+        keyChars.add(key.length());
+        maintain(created);
+        return created;
+    }
+
+    /**
+     * @return the bucket of the key, or null if it has none
+     */
+    B find(String key) {
+        return buckets.get(key);
+    }
+
+    void put(String key, B bucket) {
+        B previous = buckets.put(key, bucket);
+        if (previous != null) {
+            previous.retire();
+        } else {
+            keyChars.add(key.length());
+            maintain(bucket);
+        }
+    }
+
+    /**
+     * Removes a bucket that was found retired, unless it has already been replaced.
+     */
+    void remove(String key, B bucket) {
+        if (buckets.remove(key, bucket)) {
+            keyChars.add(-key.length());
+        }
+    }
+
+    /**
+     * Visits every entry without locking the store. Entries added or removed meanwhile may or
+     * may not be visited.
+     */
+    void forEach(BiConsumer<String, B> action) {
+        buckets.forEach(action);
+    }
+
+    BucketStoreStats getStats() {
+        long size = buckets.size();
+        return BucketStoreStats.builder()
+            .size(size)
+            .maxSize(maxSize)
+            .expired(expired.sum())
+            .evicted(evicted.sum())
+            .estimatedBytes(size * (bytesPerEntry + BYTES_PER_KEY) + keyChars.sum())
+            .build();
+    }
+
+    /**
+     * Sweeps a few entries for idle buckets and evicts down to {@code maxSize}. The sweep is
+     * skipped when another thread is already maintaining the store, but an insert that took
+     * the store over its bound waits its turn to evict, so the size only exceeds the bound by
+     * the number of threads inserting concurrently. The bucket just inserted is
+     * spared: it is still in its initial state, and retiring it would only make the caller
+     * insert it again.
+     */
+    private void maintain(B inserted) {
+        if (buckets.size() > maxSize) {
+            maintenance.lock();
+        } else if (!maintenance.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < SWEEP_STEP; i++) {
+                Map.Entry<String, B> entry = next();
+                if (entry != null && entry.getValue() != inserted && entry.getValue().retireIfIdle(now)) {
+                    drop(entry, expired);
+                }
+            }
+            while (buckets.size() > maxSize) {
+                evictOne(now, inserted);
+            }
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    private void evictOne(long now, B inserted) {
+        Map.Entry<String, B> victim = null;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            Map.Entry<String, B> entry = next();
+            if (entry == null || entry.getValue() == inserted) {
+                continue;
+            }
+            if (entry.getValue().retireIfIdle(now)) {
+                drop(entry, expired);
+                return;
+            }
+            if (victim == null || entry.getValue().idleAt() - victim.getValue().idleAt() < 0) {
+                victim = entry;
+            }
+        }
+        if (victim != null) {
+            victim.getValue().retire();
+            drop(victim, evicted);
+        }
+    }
+
+    private void drop(Map.Entry<String, B> entry, LongAdder counter) {
+        if (buckets.remove(entry.getKey(), entry.getValue())) {
+            keyChars.add(-entry.getKey().length());
+            counter.increment();
+        }
+    }
+
+    /**
+     * @return the next entry at the cursor, wrapping around at the end of the map
+     */
+    private Map.Entry<String, B> next() {
+        if (cursor == null || !cursor.hasNext()) {
+            cursor = buckets.entrySet().iterator();
+            if (!cursor.hasNext()) {
+                return null;
+            }
+        }
+        return cursor.next();
+    }
+}
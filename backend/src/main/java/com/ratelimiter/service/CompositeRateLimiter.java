@@ -0,0 +1,172 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.service.RateLimitRuleSet.Limits;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Token buckets at several nested levels, e.g. per client, per organization and global,
+ * enforced together: a request is debited from every level or from none.
+ *
+ * Every level is first checked without writing, so a rejection changes nothing. The levels
+ * are then debited in order, one CAS each; if a concurrent request emptied a level since the
+ * check, the levels already debited are refunded and the decision is taken again. The denial
+ * names the innermost level that rejected the request.
+ */
+public class CompositeRateLimiter implements RateLimiter {
+    private static final int DEFAULT_MAX_BUCKETS = 1_000_000;
+
+    private final Level[] levels;
+
+    /**
+     * A level of a composite limit: how a client maps to its bucket, and that bucket's limits.
+     */
+    public static final class Level {
+        private final String name;
+        private final Function<String, String> keyOf;
+        private final RateLimitRuleSet rules;
+        private final BucketStore<TokenBucket> buckets = new BucketStore<>(DEFAULT_MAX_BUCKETS);
+        private final Function<String, TokenBucket> bucketFactory = this::newBucket;
+
+        /**
+         * @param keyOf maps a client id to the bucket of this level, e.g. its organization
+         * @param rules resolves the limits of each bucket from its key
+         */
+        public Level(String name, Function<String, String> keyOf, RateLimitRuleSet rules) {
+            this.name = name;
+            this.keyOf = keyOf;
+            this.rules = rules;
+        }
+
+        public static Level perClient(String name, int capacity, int refillRate) {
+            return new Level(name, Function.identity(), RateLimitRuleSet.defaults(capacity, refillRate));
+        }
+
+        public static Level grouped(String name, Function<String, String> groupOf, int capacity, int refillRate) {
+            return new Level(name, groupOf, RateLimitRuleSet.defaults(capacity, refillRate));
+        }
+
+        public static Level global(String name, int capacity, int refillRate) {
+            return new Level(name, clientId -> name, RateLimitRuleSet.defaults(capacity, refillRate));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private TokenBucket bucket(String key) {
+            return buckets.get(key, bucketFactory);
+        }
+
+        private TokenBucket replace(String key, TokenBucket retired) {
+            buckets.remove(key, retired);
+            return bucket(key);
+        }
+
+        private TokenBucket newBucket(String key) {
+            return new TokenBucket(rules.resolve(key), rules);
+        }
+    }
+
+    /**
+     * @param levels the levels to enforce, innermost first
+     */
+    public CompositeRateLimiter(List<Level> levels) {
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("At least one level is required");
+        }
+        this.levels = levels.toArray(new Level[0]);
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        int n = levels.length;
+        String[] keys = new String[n];
+        TokenBucket[] buckets = new TokenBucket[n];
+        Limits[] limits = new Limits[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = levels[i].keyOf.apply(clientId);
+            buckets[i] = levels[i].bucket(keys[i]);
+            limits[i] = buckets[i].limits(keys[i], levels[i].rules);
+            if (permits < 1 || permits > limits[i].getCapacity()) {
+                throw new IllegalArgumentException("permits must be between 1 and the capacity "
+                    + limits[i].getCapacity() + " of level " + levels[i].name + ", was " + permits);
+            }
+        }
+
+        while (true) {
+            long now = System.nanoTime();
+            int rejected = -1;
+            long rejectedZeroAt = 0;
+            long latestZeroAt = now;
+            boolean retired = false;
+            for (int i = 0; i < n; i++) {
+                long zeroAt = buckets[i].peek(permits, now, limits[i]);
+                if (zeroAt == TokenBucket.RETIRED) {
+                    // Expired or evicted under us; a new bucket is equivalent
+                    buckets[i] = levels[i].replace(keys[i], buckets[i]);
+                    retired = true;
+                } else if (!TokenBucket.isAllowed(zeroAt, now)) {
+                    if (rejected < 0) {
+                        rejected = i;
+                        rejectedZeroAt = zeroAt;
+                    }
+                    if (zeroAt - latestZeroAt > 0) {
+                        latestZeroAt = zeroAt;
+                    }
+                }
+            }
+            if (retired) {
+                continue;
+            }
+            if (rejected >= 0) {
+                // Every level has to allow it, so retry once the slowest one would
+                return response(false, levels[rejected].name, TokenBucket.tokensAfter(rejectedZeroAt, permits, now, limits[rejected]),
+                    limits[rejected], TokenBucket.retryAfterMs(latestZeroAt, now));
+            }
+
+            int debited = 0;
+            int fewestLevel = 0;
+            int fewestTokens = Integer.MAX_VALUE;
+            while (debited < n) {
+                long zeroAt = buckets[debited].tryConsume(permits, now, limits[debited]);
+                if (zeroAt == TokenBucket.RETIRED || !TokenBucket.isAllowed(zeroAt, now)) {
+                    break;
+                }
+                int tokens = TokenBucket.tokensAfter(zeroAt, permits, now, limits[debited]);
+                if (tokens < fewestTokens) {
+                    fewestTokens = tokens;
+                    fewestLevel = debited;
+                }
+                debited++;
+            }
+            if (debited == n) {
+                return response(true, null, fewestTokens, limits[fewestLevel], 0);
+            }
+            // Lost a race for the level after the debited ones: undo and decide again
+            for (int i = 0; i < debited; i++) {
+                buckets[i].refund(permits, limits[i]);
+            }
+        }
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.TOKEN_BUCKET;
+    }
+
+    private static RateLimiterResponse response(boolean allowed, String rejectedLevel, int tokens,
+                                                Limits limits, long retryAfterMs) {
+        return RateLimiterResponse.builder()
+            .allowed(allowed)
+            .currentTokens(tokens)
+            .capacity(limits.getCapacity())
+            .refillRate(limits.getRefillRate())
+            .retryAfterMs(retryAfterMs)
+            .rejectedLevel(rejectedLevel)
+            .build();
+    }
+}
@@ -0,0 +1,51 @@
+package com.ratelimiter.service;
+
+import java.util.List;
+
+/**
+ * What a node consumed per key since its previous sync. Each entry carries the node's running
+ * total for the key, a grow-only counter, as well as the delta: a receiver that saw an earlier
+ * total applies the difference, which makes redelivery harmless, and one that did not, e.g.
+ * after its bucket expired, applies the delta.
+ */
+public final class ConsumptionDeltas {
+    private final String origin;
+    private final List<Entry> entries;
+
+    public ConsumptionDeltas(String origin, List<Entry> entries) {
+        this.origin = origin;
+        this.entries = List.copyOf(entries);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public static final class Entry {
+        private final String key;
+        private final long total;
+        private final long delta;
+
+        public Entry(String key, long total, long delta) {
+            this.key = key;
+            this.total = total;
+            this.delta = delta;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getDelta() {
+            return delta;
+        }
+    }
+}
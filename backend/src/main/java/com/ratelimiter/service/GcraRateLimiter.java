@@ -0,0 +1,118 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Leaky bucket as a meter, implemented with the generic cell rate algorithm (GCRA).
+ *
+ * Requests are spaced by an emission interval of {@code 1 / rate}; the only state per client
+ * is the theoretical arrival time (TAT) of the next request. A request is admitted if, after
+ * adding its cost to the TAT, the TAT is no further ahead of now than {@code burst} intervals.
+ * Admission is equivalent to a token bucket with capacity {@code burst}, but needs a single
+ * value per client and a decision is one CAS. A TAT in the past is the same as no TAT, so such
+ * clients are dropped from the store, and past {@code maxClients} the ones whose TAT is
+ * closest are evicted.
+ */
+public class GcraRateLimiter implements RateLimiter {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int DEFAULT_MAX_CLIENTS = 1_000_000;
+    /** Approximate heap cost of an entry besides its key: map node, table slot and TAT. */
+    private static final int BYTES_PER_ENTRY = 80;
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final BucketStore<TheoreticalArrival> arrivals;
+    private final int burst;
+    private final int rate;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    public GcraRateLimiter(int burst, int rate) {
+        this(burst, rate, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * @param maxClients the number of clients tracked before the least recently active are evicted
+     */
+    public GcraRateLimiter(int burst, int rate, int maxClients) {
+        this.burst = burst;
+        this.rate = rate;
+        this.intervalNanos = NANOS_PER_SECOND / rate;
+        this.toleranceNanos = burst * intervalNanos;
+        this.arrivals = new BucketStore<>(maxClients, BYTES_PER_ENTRY);
+    }
+
+    /**
+     * The TAT of a client, or {@link #RETIRED} once it was removed from the store.
+     */
+    private static class TheoreticalArrival extends AtomicLong implements BucketStore.Bucket {
+        TheoreticalArrival() {
+            super(System.nanoTime());
+        }
+
+        @Override
+        public long idleAt() {
+            return get();
+        }
+
+        @Override
+        public boolean retireIfIdle(long now) {
+            long tat = get();
+            return tat != RETIRED && now - tat >= 0 && compareAndSet(tat, RETIRED);
+        }
+
+        @Override
+        public void retire() {
+            set(RETIRED);
+        }
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > burst) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the burst " + burst + ", was " + permits);
+        }
+        TheoreticalArrival arrival = arrivals.get(clientId, k -> new TheoreticalArrival());
+
+        long now = System.nanoTime();
+        long cost = permits * intervalNanos;
+        long tat;
+        long newTat;
+        do {
+            tat = arrival.get();
+            while (tat == RETIRED) {
+                // Expired or evicted under us; an expired TAT was in the past, so a new one is equivalent
+                arrivals.remove(clientId, arrival);
+                arrival = arrivals.get(clientId, k -> new TheoreticalArrival());
+                now = System.nanoTime();
+                tat = arrival.get();
+            }
+            newTat = (tat - now < 0 ? now : tat) + cost;
+        } while (newTat - toleranceNanos - now <= 0 && !arrival.compareAndSet(tat, newTat));
+
+        boolean allowed = newTat - toleranceNanos - now <= 0;
+        long ahead = allowed ? newTat - now : newTat - cost - now;
+        long retryAfterNanos = allowed ? 0 : newTat - toleranceNanos - now;
+
+        return RateLimiterResponse.builder()
+            .allowed(allowed)
+            .currentTokens((int) ((toleranceNanos - ahead) / intervalNanos))
+            .capacity(burst)
+            .refillRate(rate)
+            .retryAfterMs((retryAfterNanos + 999_999) / 1_000_000)
+            .build();
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.LEAKY_BUCKET;
+    }
+
+    public BucketStoreStats getStoreStats() {
+        return arrivals.getStats();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ratelimiter.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Delivers deltas between nodes of the same JVM, synchronously on the broadcasting thread.
+ * Meant for tests and simulations of a cluster.
+ */
+public class InJvmPeerTransport implements PeerTransport {
+    private final Map<String, Consumer<ConsumptionDeltas>> nodes = new ConcurrentHashMap<>();
+
+    @Override
+    public void join(String nodeId, Consumer<ConsumptionDeltas> receiver) {
+        if (nodes.putIfAbsent(nodeId, receiver) != null) {
+            throw new IllegalArgumentException("Node " + nodeId + " has already joined");
+        }
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        nodes.remove(nodeId);
+    }
+
+    @Override
+    public void broadcast(ConsumptionDeltas deltas) {
+        nodes.forEach((nodeId, receiver) -> {
+            if (!nodeId.equals(deltas.getOrigin())) {
+                receiver.accept(deltas);
+            }
+        });
+    }
+
+    @Override
+    public int nodeCount() {
+        return Math.max(1, nodes.size());
+    }
+}
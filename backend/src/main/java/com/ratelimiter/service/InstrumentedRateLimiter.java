@@ -0,0 +1,85 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.model.Storage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the decisions of an engine in Micrometer, tagged with its algorithm and storage.
+ *
+ * Meters are looked up once when the engine is wrapped, so a decision costs a few counter
+ * increments and a histogram update and allocates nothing. Each check of a Redis-backed engine
+ * is a single script call, so it is also counted as one Redis round trip.
+ */
+public class InstrumentedRateLimiter implements RateLimiter {
+    private final RateLimiter delegate;
+    private final Counter allowed;
+    private final Counter denied;
+    private final Counter errors;
+    private final Counter redisRoundTrips;
+    private final Timer latency;
+
+    public InstrumentedRateLimiter(RateLimiter delegate, Storage storage, MeterRegistry registry) {
+        this.delegate = delegate;
+        Tags tags = Tags.of("algorithm", delegate.getAlgorithm().name(), "storage", storage.name());
+        this.allowed = registry.counter("ratelimiter.decisions", tags.and("outcome", "allowed"));
+        this.denied = registry.counter("ratelimiter.decisions", tags.and("outcome", "denied"));
+        this.errors = registry.counter("ratelimiter.errors", tags);
+        this.redisRoundTrips = storage == Storage.REDIS ? registry.counter("ratelimiter.redis.round.trips", tags) : null;
+        this.latency = Timer.builder("ratelimiter.decision.latency")
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        return record(clientId, permits, null);
+    }
+
+    @Override
+    public RateLimiterResponse reserve(String clientId, int permits, Duration maxWait) {
+        return record(clientId, permits, maxWait);
+    }
+
+    private RateLimiterResponse record(String clientId, int permits, Duration maxWait) {
+        long start = System.nanoTime();
+        RateLimiterResponse response;
+        try {
+            response = maxWait == null ? delegate.check(clientId, permits) : delegate.reserve(clientId, permits, maxWait);
+        } catch (IllegalArgumentException e) {
+            // An invalid request never reached the engine's storage
+            throw e;
+        } catch (RuntimeException e) {
+            errors.increment();
+            throw e;
+        }
+        latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        (response.isAllowed() ? allowed : denied).increment();
+        if (redisRoundTrips != null) {
+            redisRoundTrips.increment();
+        }
+        return response;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return delegate.isBlocking();
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return delegate.getAlgorithm();
+    }
+
+    public RateLimiter getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,226 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.KeyDistribution;
+import com.ratelimiter.model.RateLimiterRequest;
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.model.RateLimiterStats;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: requests are scheduled at evenly spaced instants at the target
+ * rate, whether or not earlier requests have completed, the way independent users arrive.
+ *
+ * Each worker thread owns every {@code threads}-th slot of the schedule. A worker that falls
+ * behind sends its overdue requests back to back, and latency is measured from the instant a
+ * request was scheduled rather than from when it was sent, so time spent queued behind a slow
+ * decision is reported instead of silently lowering the offered load (coordinated omission).
+ */
+public class LoadGenerator {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long MAX_TRACKABLE_MICROS = 60_000_000L;
+    private static final int MAX_THREADS = 256;
+
+    /**
+     * Receives every decision on the worker thread that made it, so implementations must be
+     * cheap and thread-safe.
+     */
+    @FunctionalInterface
+    public interface DecisionListener {
+        void onDecision(RateLimiterResponse response, long latencyNanos);
+    }
+
+    private final RateLimiter target;
+    private final int tps;
+    private final int threads;
+    private final String[] clientIds;
+    private final KeyDistribution distribution;
+    private final double hotKeyShare;
+    private final double[] zipfCdf;
+    private final DecisionListener listener;
+
+    // Workers record wait-free; readers swap out what was recorded and add it to the total
+    private final Recorder recorder = new Recorder(MAX_TRACKABLE_MICROS, 3);
+    private final Histogram latencies = new Histogram(MAX_TRACKABLE_MICROS, 3);
+    private Histogram interval;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile RateLimiterResponse last;
+    private volatile boolean running;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+
+    public LoadGenerator(RateLimiter target, RateLimiterRequest profile, DecisionListener listener) {
+        if (profile.getTps() < 1) {
+            throw new IllegalArgumentException("tps must be at least 1, was " + profile.getTps());
+        }
+        if (profile.getThreads() < 1 || profile.getThreads() > MAX_THREADS) {
+            throw new IllegalArgumentException(
+                "threads must be between 1 and " + MAX_THREADS + ", was " + profile.getThreads());
+        }
+        if (profile.getClientCount() < 1) {
+            throw new IllegalArgumentException("clientCount must be at least 1, was " + profile.getClientCount());
+        }
+        if (profile.getHotKeyShare() < 0 || profile.getHotKeyShare() > 1) {
+            throw new IllegalArgumentException("hotKeyShare must be between 0 and 1, was " + profile.getHotKeyShare());
+        }
+        if (profile.getZipfExponent() <= 0) {
+            throw new IllegalArgumentException("zipfExponent must be positive, was " + profile.getZipfExponent());
+        }
+        this.target = target;
+        this.tps = profile.getTps();
+        this.threads = Math.min(profile.getThreads(), profile.getTps());
+        this.distribution = profile.getDistribution() != null ? profile.getDistribution() : KeyDistribution.UNIFORM;
+        this.hotKeyShare = profile.getHotKeyShare();
+        this.listener = listener;
+
+        // Ids are built up front so that choosing a client allocates nothing
+        String prefix = profile.getClientId() != null ? profile.getClientId() : "test-client";
+        int clientCount = profile.getClientCount();
+        this.clientIds = new String[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clientIds[i] = clientCount == 1 ? prefix : prefix + "-" + i;
+        }
+        this.zipfCdf = distribution == KeyDistribution.ZIPF ? zipfCdf(clientCount, profile.getZipfExponent()) : null;
+    }
+
+    static double[] zipfCdf(int clients, double exponent) {
+        double[] cdf = new double[clients];
+        double sum = 0;
+        for (int i = 0; i < clients; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < clients; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    public synchronized void start() {
+        if (running || !workers.isEmpty()) {
+            throw new IllegalStateException("A load generator can only be started once");
+        }
+        running = true;
+        startNanos = System.nanoTime();
+        for (int w = 0; w < threads; w++) {
+            int worker = w;
+            Thread thread = new Thread(() -> run(worker), "load-generator-" + w);
+            thread.setDaemon(true);
+            workers.add(thread);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        stopNanos = System.nanoTime();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run(int worker) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long slot = worker; running; slot += threads) {
+            long intended = startNanos + slot * NANOS_PER_SECOND / tps;
+            long wait;
+            while (running && (wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                return;
+            }
+
+            RateLimiterResponse response;
+            try {
+                response = target.check(clientIds[nextClient(random)]);
+            } catch (RuntimeException e) {
+                errors.increment();
+                continue;
+            }
+            long latencyNanos = System.nanoTime() - intended;
+            recorder.recordValue(Math.min(latencyNanos / 1_000, MAX_TRACKABLE_MICROS));
+            requests.increment();
+            if (response.isAllowed()) {
+                allowed.increment();
+            }
+            last = response;
+            if (listener != null) {
+                listener.onDecision(response, latencyNanos);
+            }
+        }
+    }
+
+    int nextClient(ThreadLocalRandom random) {
+        int clients = clientIds.length;
+        switch (distribution) {
+            case ZIPF:
+                int index = Arrays.binarySearch(zipfCdf, random.nextDouble());
+                return Math.min(index >= 0 ? index : -index - 1, clients - 1);
+            case HOT_KEY:
+                if (clients == 1 || random.nextDouble() < hotKeyShare) {
+                    return 0;
+                }
+                return 1 + random.nextInt(clients - 1);
+            default:
+                return random.nextInt(clients);
+        }
+    }
+
+    public synchronized RateLimiterStats getStats() {
+        interval = recorder.getIntervalHistogram(interval);
+        latencies.add(interval);
+
+        long end = running ? System.nanoTime() : stopNanos;
+        long elapsedNanos = Math.max(0, end - startNanos);
+        long requestCount = requests.sum();
+        long allowedCount = allowed.sum();
+        RateLimiterResponse latest = last;
+
+        RateLimiterStats stats = new RateLimiterStats();
+        stats.setRequestCount(requestCount);
+        stats.setAllowedCount(allowedCount);
+        stats.setErrorCount(errors.sum());
+        stats.setSuccessRate(requestCount > 0 ? (double) allowedCount / requestCount : 0);
+        if (latest != null) {
+            stats.setCurrentTokens(latest.getCurrentTokens());
+            stats.setCapacity(latest.getCapacity());
+            stats.setRefillRate(latest.getRefillRate());
+        }
+        stats.setTargetTps(tps);
+        stats.setElapsedMs(elapsedNanos / 1_000_000);
+        stats.setAchievedTps(elapsedNanos > 0 ? requestCount * (double) NANOS_PER_SECOND / elapsedNanos : 0);
+        stats.setMeanLatencyMicros(latencies.getMean());
+        stats.setP50LatencyMicros(latencies.getValueAtPercentile(50));
+        stats.setP90LatencyMicros(latencies.getValueAtPercentile(90));
+        stats.setP99LatencyMicros(latencies.getValueAtPercentile(99));
+        stats.setP999LatencyMicros(latencies.getValueAtPercentile(99.9));
+        stats.setMaxLatencyMicros(latencies.getMaxValue());
+        return stats;
+    }
+}
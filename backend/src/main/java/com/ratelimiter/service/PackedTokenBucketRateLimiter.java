@@ -0,0 +1,229 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket limiter for very large numbers of clients, holding every bucket in two
+ * preallocated {@code long[]} tables instead of a map of objects.
+ *
+ * A client is identified by a 64-bit hash of its id, and each bucket is one packed long: a
+ * 16-bit tag taken from the hash and the instant at which the bucket holds zero tokens, in
+ * microseconds since the limiter started plus the capacity. The 48 bits hold about 8.9
+ * years; a capacity that would leave less than {@link #MIN_UPTIME_MICROS} of them is
+ * rejected, since the time would otherwise overflow into the tag. A
+ * bucket costs 16 bytes and nothing is allocated per client or per decision, so the tables
+ * add no work for the garbage collector.
+ *
+ * The tables are set-associative: a client can only live in one of {@link #WAYS} adjacent
+ * slots chosen by its hash, so lookups read at most one cache line of keys. Decisions are a
+ * CAS on the packed state and take no lock. Placing a new client takes the lock of its stripe
+ * and reuses, in order, an empty slot, a bucket that has refilled to capacity, or the bucket
+ * that will be full soonest. Replacing a bucket usually changes the tag, so a thread that found
+ * the old client's key fails its CAS instead of charging the new client. The two clients'
+ * 16-bit tags are equal 1 time in 65,536, and a decision racing such a replacement charges the
+ * new client instead.
+ *
+ * Every client shares the same capacity and refill rate. A token is a whole number of
+ * microseconds, so the refill rate must divide 1,000,000. Two ids with the same 64-bit hash
+ * share a bucket; with 50 million clients the chance of any such pair is below 1 in 10,000.
+ */
+public class PackedTokenBucketRateLimiter implements RateLimiter {
+    static final int WAYS = 8;
+    private static final int STRIPES = 1024;
+    private static final int TAG_SHIFT = 48;
+    private static final long TIME_MASK = (1L << TAG_SHIFT) - 1;
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final long EMPTY = 0;
+    /** Uptime the time field must cover on top of the capacity: four years. */
+    static final long MIN_UPTIME_MICROS = 4 * 365 * 24 * 3600 * MICROS_PER_SECOND;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray states;
+    private final Object[] stripes = new Object[STRIPES];
+    private final int setMask;
+    private final int capacity;
+    private final int refillRate;
+    private final long microsPerToken;
+    private final long capacityMicros;
+    private final long epochNanos;
+
+    private final LongAdder occupied = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param maxBuckets the number of slots, rounded up so that the number of sets is a power
+     *                   of two; allow some headroom over the live clients, since a set that
+     *                   overflows evicts even when other sets have room
+     */
+    public PackedTokenBucketRateLimiter(int capacity, int refillRate, int maxBuckets) {
+        if (refillRate < 1 || MICROS_PER_SECOND % refillRate != 0) {
+            throw new IllegalArgumentException("refillRate must divide 1000000, was " + refillRate);
+        }
+        long maxCapacity = (TIME_MASK - MIN_UPTIME_MICROS) / (MICROS_PER_SECOND / refillRate);
+        if (capacity < 1 || capacity > maxCapacity) {
+            throw new IllegalArgumentException(
+                "capacity must be between 1 and " + maxCapacity + " at refillRate " + refillRate + ", was " + capacity);
+        }
+        if (maxBuckets < 1 || maxBuckets > (1 << 30)) {
+            throw new IllegalArgumentException("maxBuckets must be between 1 and 2^30, was " + maxBuckets);
+        }
+        int needed = (maxBuckets + WAYS - 1) / WAYS;
+        int sets = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.keys = new AtomicLongArray(sets * WAYS);
+        this.states = new AtomicLongArray(sets * WAYS);
+        this.setMask = sets - 1;
+        this.capacity = capacity;
+        this.refillRate = refillRate;
+        this.microsPerToken = MICROS_PER_SECOND / refillRate;
+        this.capacityMicros = capacity * microsPerToken;
+        this.epochNanos = System.nanoTime();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > capacity) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the capacity " + capacity + ", was " + permits);
+        }
+        long hash = hash(clientId);
+        int set = (int) hash & setMask;
+        long tag = hash >>> TAG_SHIFT;
+        long cost = permits * microsPerToken;
+
+        int slot = find(hash, set);
+        if (slot < 0) {
+            slot = place(hash, set, tag);
+        }
+        while (true) {
+            long state = states.get(slot);
+            if (state >>> TAG_SHIFT != tag) {
+                // The slot was handed to another client after we found it
+                slot = place(hash, set, tag);
+                continue;
+            }
+            long now = now();
+            long zeroAt = Math.max(state & TIME_MASK, now - capacityMicros);
+            long next = zeroAt + cost;
+            if (next > now) {
+                return response(false, (now - zeroAt) / microsPerToken, next - now);
+            }
+            if (states.compareAndSet(slot, state, tag << TAG_SHIFT | next)) {
+                return response(true, (now - next) / microsPerToken, 0);
+            }
+        }
+    }
+
+    private int find(long hash, int set) {
+        int base = set * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys.get(i) == hash) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds or claims the slot of a client under the lock of its stripe. The state is written
+     * before the key, so a lock-free reader that sees the new key also sees the new tag.
+     */
+    private int place(long hash, int set, long tag) {
+        synchronized (stripes[set & (STRIPES - 1)]) {
+            int found = find(hash, set);
+            if (found >= 0) {
+                return found;
+            }
+            int base = set * WAYS;
+            while (true) {
+                long now = now();
+                int victim = -1;
+                long victimState = 0;
+                for (int i = base; i < base + WAYS; i++) {
+                    long state = states.get(i);
+                    if (keys.get(i) == EMPTY) {
+                        victim = i;
+                        victimState = state;
+                        break;
+                    }
+                    if (victim < 0 || (state & TIME_MASK) < (victimState & TIME_MASK)) {
+                        victim = i;
+                        victimState = state;
+                    }
+                }
+                boolean empty = keys.get(victim) == EMPTY;
+                // A zero time is a full bucket, so the new client starts with its whole burst
+                if (!states.compareAndSet(victim, victimState, tag << TAG_SHIFT)) {
+                    continue;
+                }
+                if (empty) {
+                    occupied.increment();
+                } else if ((victimState & TIME_MASK) + capacityMicros <= now) {
+                    expired.increment();
+                } else {
+                    evicted.increment();
+                }
+                keys.set(victim, hash);
+                return victim;
+            }
+        }
+    }
+
+    /**
+     * @return microseconds since the limiter started, offset by the capacity so that a zero
+     *         state always reads as a full bucket
+     */
+    private long now() {
+        return (System.nanoTime() - epochNanos) / 1_000 + capacityMicros;
+    }
+
+    private RateLimiterResponse response(boolean allowed, long tokens, long waitMicros) {
+        return RateLimiterResponse.builder()
+            .allowed(allowed)
+            .currentTokens((int) Math.min(capacity, tokens))
+            .capacity(capacity)
+            .refillRate(refillRate)
+            .retryAfterMs((waitMicros + 999) / 1_000)
+            .build();
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finished with the MurmurHash3 mixer so that both
+     * the set index in the low bits and the tag in the high bits are well distributed.
+     */
+    static long hash(String clientId) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < clientId.length(); i++) {
+            h = (h ^ clientId.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1 : h;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.TOKEN_BUCKET;
+    }
+
+    public BucketStoreStats getStoreStats() {
+        return BucketStoreStats.builder()
+            .size(occupied.sum())
+            .maxSize(keys.length())
+            .expired(expired.sum())
+            .evicted(evicted.sum())
+            .estimatedBytes(2L * Long.BYTES * keys.length())
+            .build();
+    }
+}
@@ -0,0 +1,353 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.PeerSyncStats;
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.service.RateLimitRuleSet.Limits;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Token buckets limiting each client across several nodes, without shared storage: every
+ * decision is made in memory, and the nodes exchange what they consumed every sync interval.
+ *
+ * Each node keeps its view of the global bucket of a client, debited by its own requests and,
+ * at each sync, by the deltas of its peers. Between syncs the view misses what the peers
+ * grant, so a node also limits itself to its share of the view: the tokens in it plus the
+ * refill of an interval, times the node's part of the client's traffic in the previous
+ * interval. A node that saw no traffic for a client gets 1 / nodes. The shares of all nodes
+ * add up to the view, so the limit is only overshot when the nodes disagree on it, e.g. when
+ * deltas are late or lost. A share smaller than one request would deny the client forever,
+ * so the first request of an interval is only limited by the view: every node may grant one
+ * request per interval beyond its share, which overshoots the limit if the view was short of
+ * the requests of all nodes together. {@link PeerSyncStats#getOvershootTokens()} counts the
+ * overshoot as seen once the deltas arrive.
+ *
+ * A shorter sync interval keeps the views closer and the shares closer to the traffic, at the
+ * cost of more messages. A longer one lets shares lag: a client moving to another node is
+ * limited to that node's old share until the next sync.
+ */
+public class PeerSyncedRateLimiter implements RateLimiter, MeterBinder, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PeerSyncedRateLimiter.class);
+    private static final int DEFAULT_MAX_BUCKETS = 1_000_000;
+
+    private final String nodeId;
+    private final PeerTransport transport;
+    private final RateLimitRuleSet rules;
+    private final Limits limits;
+    private final long syncIntervalNanos;
+    private final BucketStore<PeerBucket> buckets = new BucketStore<>(DEFAULT_MAX_BUCKETS);
+    private final Function<String, PeerBucket> bucketFactory = this::newBucket;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private volatile long epoch;
+    private volatile long epochStartedAt = System.nanoTime();
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder deltasSent = new LongAdder();
+    private final LongAdder deltasApplied = new LongAdder();
+    private final DoubleAdder overshootTokens = new DoubleAdder();
+    private final LongAdder shareDenials = new LongAdder();
+
+    /**
+     * @param capacity the global burst of each client, across the nodes
+     * @param refillRate the global rate of each client per second, across the nodes
+     * @param syncInterval how often the nodes exchange their consumption, see {@link #start()}
+     */
+    public PeerSyncedRateLimiter(String nodeId, PeerTransport transport, int capacity, int refillRate,
+                                 Duration syncInterval) {
+        if (syncInterval.isNegative() || syncInterval.isZero()) {
+            throw new IllegalArgumentException("syncInterval must be positive, was " + syncInterval);
+        }
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.rules = RateLimitRuleSet.defaults(capacity, refillRate);
+        this.limits = rules.getDefaults();
+        this.syncIntervalNanos = syncInterval.toNanos();
+        transport.join(nodeId, this::receive);
+    }
+
+    /**
+     * Syncs with the peers every sync interval, on a thread of its own.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "peer-sync-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (RuntimeException e) {
+                log.warn("Peer sync of node {} failed: {}", nodeId, e.getMessage());
+            }
+        }, syncIntervalNanos, syncIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > limits.getCapacity()) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the capacity " + limits.getCapacity() + ", was " + permits);
+        }
+        while (true) {
+            PeerBucket bucket = buckets.get(clientId, bucketFactory);
+            synchronized (bucket) {
+                RateLimiterResponse response = consume(clientId, bucket, permits);
+                if (response != null) {
+                    return response;
+                }
+            }
+            // Expired or evicted under us; an expired bucket was full, so a new one is equivalent
+            buckets.remove(clientId, bucket);
+        }
+    }
+
+    private RateLimiterResponse consume(String clientId, PeerBucket bucket, int permits) {
+        long now = System.nanoTime();
+        long current = bucket.view.peek(0, now, limits);
+        if (current == TokenBucket.RETIRED) {
+            return null;
+        }
+        long epoch = this.epoch;
+        if (bucket.budgetEpoch != epoch) {
+            double weight = bucket.weightEpoch == epoch ? bucket.weight : 1.0 / transport.nodeCount();
+            double tokens = Math.max(0, now - current) / (double) limits.nanosPerToken;
+            double refill = syncIntervalNanos / (double) limits.nanosPerToken;
+            bucket.budget = weight * Math.min(limits.getCapacity(), tokens + refill);
+            bucket.used = 0;
+            bucket.budgetEpoch = epoch;
+        }
+        // The first request of the interval is granted if the view has the tokens, however small the share
+        if (bucket.used > 0 && bucket.used + permits > bucket.budget) {
+            shareDenials.increment();
+            // The share is recomputed at the next sync, and the view has to have the tokens too
+            long waitNanos = Math.max(epochStartedAt + syncIntervalNanos - now, current + permits * limits.nanosPerToken - now);
+            return response(false, TokenBucket.tokensAfter(current, 0, now, limits),
+                Math.max(1, TokenBucket.retryAfterMs(now + waitNanos, now)));
+        }
+
+        long zeroAt = bucket.view.tryConsume(permits, now, limits);
+        if (zeroAt == TokenBucket.RETIRED) {
+            return null;
+        }
+        if (!TokenBucket.isAllowed(zeroAt, now)) {
+            return response(false, TokenBucket.tokensAfter(zeroAt, permits, now, limits), TokenBucket.retryAfterMs(zeroAt, now));
+        }
+        bucket.used += permits;
+        bucket.localTotal += permits;
+        bucket.recentLocal += permits;
+        dirty.add(clientId);
+        return response(true, TokenBucket.tokensAfter(zeroAt, permits, now, limits), 0);
+    }
+
+    /**
+     * Sends this node's consumption since the previous sync to the peers and recomputes the
+     * shares of the clients that saw traffic, from this node's and the peers' consumption.
+     */
+    public synchronized void sync() {
+        long next = epoch + 1;
+        int nodes = transport.nodeCount();
+        List<ConsumptionDeltas.Entry> entries = new ArrayList<>();
+        for (Iterator<String> keys = dirty.iterator(); keys.hasNext(); ) {
+            String key = keys.next();
+            keys.remove();
+            PeerBucket bucket = buckets.find(key);
+            if (bucket == null) {
+                continue;
+            }
+            synchronized (bucket) {
+                long delta = bucket.localTotal - bucket.sentTotal;
+                if (delta > 0) {
+                    entries.add(new ConsumptionDeltas.Entry(key, bucket.localTotal, delta));
+                    bucket.sentTotal = bucket.localTotal;
+                }
+                // Smoothed so that the shares of all nodes still add up to one
+                bucket.weight = (bucket.recentLocal + 1.0) / (bucket.recentLocal + bucket.recentPeers + nodes);
+                bucket.weightEpoch = next;
+                bucket.recentLocal = 0;
+                bucket.recentPeers = 0;
+            }
+        }
+        epochStartedAt = System.nanoTime();
+        epoch = next;
+        syncs.increment();
+        if (!entries.isEmpty()) {
+            deltasSent.add(entries.size());
+            transport.broadcast(new ConsumptionDeltas(nodeId, entries));
+        }
+    }
+
+    private void receive(ConsumptionDeltas deltas) {
+        for (ConsumptionDeltas.Entry entry : deltas.getEntries()) {
+            while (true) {
+                PeerBucket bucket = buckets.get(entry.getKey(), bucketFactory);
+                synchronized (bucket) {
+                    if (apply(deltas.getOrigin(), entry, bucket)) {
+                        break;
+                    }
+                }
+                buckets.remove(entry.getKey(), bucket);
+            }
+        }
+    }
+
+    /**
+     * @return false if the bucket was retired
+     */
+    private boolean apply(String origin, ConsumptionDeltas.Entry entry, PeerBucket bucket) {
+        long now = System.nanoTime();
+        long before = bucket.view.peek(0, now, limits);
+        if (before == TokenBucket.RETIRED) {
+            return false;
+        }
+        Long seen = bucket.seen.get(origin);
+        long delta = seen == null ? entry.getDelta() : entry.getTotal() - seen;
+        if (seen == null || entry.getTotal() > seen) {
+            bucket.seen.put(origin, entry.getTotal());
+        }
+        if (delta <= 0) {
+            return true;
+        }
+        // Granted already, so taken even if the bucket goes below zero
+        long after = bucket.view.tryConsume((int) Math.min(delta, Integer.MAX_VALUE), now, limits, Long.MAX_VALUE);
+        if (after == TokenBucket.RETIRED) {
+            return false;
+        }
+        long deficit = Math.max(0, after - now) - Math.max(0, before - now);
+        if (deficit > 0) {
+            overshootTokens.add(deficit / (double) limits.nanosPerToken);
+        }
+        bucket.recentPeers += delta;
+        dirty.add(entry.getKey());
+        deltasApplied.increment();
+        return true;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.TOKEN_BUCKET;
+    }
+
+    public PeerSyncStats getStats() {
+        return PeerSyncStats.builder()
+            .nodeId(nodeId)
+            .nodes(transport.nodeCount())
+            .syncs(syncs.sum())
+            .deltasSent(deltasSent.sum())
+            .deltasApplied(deltasApplied.sum())
+            .overshootTokens(overshootTokens.sum())
+            .shareDenials(shareDenials.sum())
+            .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ratelimiter.peers.overshoot", this, r -> r.overshootTokens.sum())
+            .description("Tokens granted beyond the limit across the nodes, seen once the peers' deltas arrive")
+            .baseUnit("tokens")
+            .tags("node", nodeId)
+            .register(registry);
+        FunctionCounter.builder("ratelimiter.peers.share.denials", this, r -> r.shareDenials.sum())
+            .description("Requests denied by this node's share although its view of the bucket had the tokens")
+            .tags("node", nodeId)
+            .register(registry);
+        FunctionCounter.builder("ratelimiter.peers.deltas.sent", this, r -> r.deltasSent.sum())
+            .tags("node", nodeId)
+            .register(registry);
+        FunctionCounter.builder("ratelimiter.peers.deltas.applied", this, r -> r.deltasApplied.sum())
+            .tags("node", nodeId)
+            .register(registry);
+    }
+
+    /**
+     * Sends what is left to send and leaves the peers.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+        sync();
+        transport.leave(nodeId);
+    }
+
+    private PeerBucket newBucket(String clientId) {
+        return new PeerBucket(new TokenBucket(limits, rules));
+    }
+
+    private RateLimiterResponse response(boolean allowed, int tokens, long retryAfterMs) {
+        return RateLimiterResponse.builder()
+            .allowed(allowed)
+            .currentTokens(Math.max(0, tokens))
+            .capacity(limits.getCapacity())
+            .refillRate(limits.getRefillRate())
+            .retryAfterMs(retryAfterMs)
+            .build();
+    }
+
+    /**
+     * A client's view of the global bucket and its bookkeeping, guarded by its monitor.
+     */
+    private static final class PeerBucket implements BucketStore.Bucket {
+        private final TokenBucket view;
+        // Running total of this node's consumption, and how much of it the peers were sent
+        private long localTotal;
+        private long sentTotal;
+        // Latest running total applied per peer
+        private final Map<String, Long> seen = new HashMap<>();
+        private long recentLocal;
+        private long recentPeers;
+        private double weight;
+        private long weightEpoch = -1;
+        private double budget;
+        private long used;
+        private long budgetEpoch = -1;
+
+        private PeerBucket(TokenBucket view) {
+            this.view = view;
+        }
+
+        @Override
+        public long idleAt() {
+            return view.idleAt();
+        }
+
+        /**
+         * Keeps a bucket whose consumption the peers were not sent yet.
+         */
+        @Override
+        public synchronized boolean retireIfIdle(long now) {
+            return localTotal == sentTotal && view.retireIfIdle(now);
+        }
+
+        @Override
+        public void retire() {
+            view.retire();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ratelimiter.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries consumption deltas between the nodes of a {@link PeerSyncedRateLimiter}. Delivery
+ * may be late, duplicated or out of order: deltas carry running totals, so applying one twice
+ * or after a newer one changes nothing. A lost delta is made up for by the next one of the
+ * same key, which carries the total, if the receiver had applied an earlier total of that key.
+ */
+public interface PeerTransport {
+
+    /**
+     * Registers a node, which receives the deltas broadcast by every other node.
+     */
+    void join(String nodeId, Consumer<ConsumptionDeltas> receiver);
+
+    void leave(String nodeId);
+
+    /**
+     * Sends the deltas to every node but their origin.
+     */
+    void broadcast(ConsumptionDeltas deltas);
+
+    /**
+     * @return the number of nodes sharing the limits, this one included
+     */
+    int nodeCount();
+}
@@ -0,0 +1,75 @@
+package com.ratelimiter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.model.RateLimitRules;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Feeds the shared {@link TokenBucketRateLimiter} its rules: the configured defaults, the
+ * rules file when one is set, and rules pushed through the API. The file is polled and read
+ * again only when its modification time changes; a file that fails to parse keeps the
+ * current rules.
+ */
+@Component
+public class RateLimitRuleLoader {
+    private static final Logger log = LoggerFactory.getLogger(RateLimitRuleLoader.class);
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final Path rulesFile;
+    private final int defaultCapacity;
+    private final int defaultRefillRate;
+    private long loadedModifiedAt = Long.MIN_VALUE;
+
+    public RateLimitRuleLoader(TokenBucketRateLimiter rateLimiter, ObjectMapper objectMapper,
+                               @Value("${rate.limiter.rules.file:}") String rulesFile,
+                               @Value("${rate.limiter.capacity:10}") int defaultCapacity,
+                               @Value("${rate.limiter.refill-rate:2}") int defaultRefillRate) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.rulesFile = rulesFile.isBlank() ? null : Path.of(rulesFile);
+        this.defaultCapacity = defaultCapacity;
+        this.defaultRefillRate = defaultRefillRate;
+    }
+
+    @PostConstruct
+    public void init() {
+        apply(new RateLimitRules());
+        reloadIfChanged();
+    }
+
+    @Scheduled(fixedDelayString = "${rate.limiter.rules.reload-interval-ms:5000}")
+    public synchronized void reloadIfChanged() {
+        if (rulesFile == null || !Files.isRegularFile(rulesFile)) {
+            return;
+        }
+        try {
+            long modifiedAt = Files.getLastModifiedTime(rulesFile).toMillis();
+            if (modifiedAt == loadedModifiedAt) {
+                return;
+            }
+            apply(objectMapper.readValue(rulesFile.toFile(), RateLimitRules.class));
+            loadedModifiedAt = modifiedAt;
+            log.info("Loaded rate limit rules from {}", rulesFile);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Keeping the current rate limit rules, {} could not be loaded: {}", rulesFile, e.getMessage());
+        }
+    }
+
+    public void apply(RateLimitRules rules) {
+        rateLimiter.applyRules(RateLimitRuleSet.compile(rules, defaultCapacity, defaultRefillRate));
+    }
+
+    public RateLimitRules current() {
+        return rateLimiter.getRules().getSource();
+    }
+}
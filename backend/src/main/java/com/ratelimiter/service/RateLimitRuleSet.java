@@ -0,0 +1,137 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimitRule;
+import com.ratelimiter.model.RateLimitRules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled, immutable form of {@link RateLimitRules}. A client id that a rule names exactly
+ * resolves in one map read; otherwise the patterns are tried in order, then the defaults.
+ *
+ * Every rule compiles to one {@link Limits} shared by all the clients it matches. Buckets keep
+ * the limits they resolved together with the rule set they came from, so a client is resolved
+ * once per rule set rather than on every call.
+ */
+public final class RateLimitRuleSet {
+    private final RateLimitRules source;
+    private final Limits defaults;
+    private final Map<String, Limits> exact = new HashMap<>();
+    private final List<CompiledRule> patterns = new ArrayList<>();
+    private final Map<String, String> tiers;
+
+    private RateLimitRuleSet(RateLimitRules source, Limits defaults) {
+        this.source = source;
+        this.defaults = defaults;
+        this.tiers = Map.copyOf(source.getTiers());
+        for (RateLimitRule rule : source.getRules()) {
+            Limits limits = new Limits(rule.getCapacity(), rule.getRefillRate());
+            String pattern = rule.getPattern();
+            if (rule.getTier() == null && pattern != null && !isGlob(pattern)) {
+                exact.putIfAbsent(pattern, limits);
+            } else {
+                patterns.add(new CompiledRule(pattern == null ? null : toRegex(pattern), rule.getTier(), limits));
+            }
+        }
+    }
+
+    public static RateLimitRuleSet compile(RateLimitRules rules, int defaultCapacity, int defaultRefillRate) {
+        return new RateLimitRuleSet(rules, new Limits(defaultCapacity, defaultRefillRate));
+    }
+
+    public static RateLimitRuleSet defaults(int capacity, int refillRate) {
+        return compile(new RateLimitRules(), capacity, refillRate);
+    }
+
+    public Limits resolve(String clientId) {
+        Limits limits = exact.get(clientId);
+        if (limits != null) {
+            return limits;
+        }
+        String tier = tiers.get(clientId);
+        for (CompiledRule rule : patterns) {
+            if (rule.matches(clientId, tier)) {
+                return rule.limits;
+            }
+        }
+        return defaults;
+    }
+
+    public Limits getDefaults() {
+        return defaults;
+    }
+
+    public RateLimitRules getSource() {
+        return source;
+    }
+
+    private static boolean isGlob(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (!literal.isEmpty()) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty()) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private record CompiledRule(Pattern pattern, String tier, Limits limits) {
+        boolean matches(String clientId, String clientTier) {
+            return (tier == null || tier.equals(clientTier))
+                && (pattern == null || pattern.matcher(clientId).matches());
+        }
+    }
+
+    /**
+     * Capacity and refill rate of a token bucket, with the derived durations the decision path uses.
+     */
+    public static final class Limits {
+        private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+        private final int capacity;
+        private final int refillRate;
+        final long nanosPerToken;
+        final long capacityNanos;
+
+        public Limits(int capacity, int refillRate) {
+            if (capacity < 1 || refillRate < 1) {
+                throw new IllegalArgumentException(
+                    "capacity and refillRate must be positive, were " + capacity + " and " + refillRate);
+            }
+            this.capacity = capacity;
+            this.refillRate = refillRate;
+            this.nanosPerToken = NANOS_PER_SECOND / refillRate;
+            this.capacityNanos = capacity * nanosPerToken;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getRefillRate() {
+            return refillRate;
+        }
+
+        boolean sameAs(Limits other) {
+            return capacity == other.capacity && refillRate == other.refillRate;
+        }
+    }
+}
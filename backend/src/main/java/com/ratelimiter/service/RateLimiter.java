@@ -0,0 +1,82 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.RateLimiterResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common API of every rate limiting engine, so the algorithm and storage can be chosen per route.
+ * For window-based engines {@code currentTokens} is the number of requests left in the window,
+ * {@code capacity} the limit per window and {@code refillRate} the limit expressed per second.
+ */
+public interface RateLimiter {
+
+    RateLimiterResponse check(String clientId, int permits);
+
+    default RateLimiterResponse check(String clientId) {
+        return check(clientId, 1);
+    }
+
+    /**
+     * In-memory engines decide on the calling thread; blocking engines run the check on a
+     * virtual thread, so a request waiting on Redis holds no platform thread.
+     */
+    default CompletableFuture<RateLimiterResponse> checkAsync(String clientId, int permits) {
+        if (isBlocking()) {
+            return CompletableFuture.supplyAsync(() -> check(clientId, permits), Thread::startVirtualThread);
+        }
+        try {
+            return CompletableFuture.completedFuture(check(clientId, permits));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Like {@link #check}, but also grants tokens that will be refilled within {@code maxWait}.
+     * They are taken at once, ahead of later requests, and the allowed response's
+     * {@code retryAfterMs} is how long to wait before using them. Engines that cannot reserve
+     * answer as {@link #check}.
+     */
+    default RateLimiterResponse reserve(String clientId, int permits, Duration maxWait) {
+        return check(clientId, permits);
+    }
+
+    /**
+     * Waits up to {@code maxWait} for the permits: a single reservation and a sleep with engines
+     * that reserve, otherwise a new check after each denial's retry-after time. Meant for virtual
+     * threads, whose sleep holds no platform thread.
+     *
+     * @return whether the permits were acquired; reserved permits are kept if interrupted
+     */
+    default boolean acquire(String clientId, int permits, Duration maxWait) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (true) {
+            Duration remaining = Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+            RateLimiterResponse response = reserve(clientId, permits, remaining);
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(response.getRetryAfterMs());
+            if (response.isAllowed()) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                return true;
+            }
+            // Some denials carry no retry-after time; do not spin on them
+            waitNanos = Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1));
+            if (waitNanos > deadline - System.nanoTime()) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @return true if {@link #check} waits on I/O, such as a Redis round trip
+     */
+    default boolean isBlocking() {
+        return false;
+    }
+
+    Algorithm getAlgorithm();
+}
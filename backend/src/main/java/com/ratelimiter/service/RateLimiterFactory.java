@@ -0,0 +1,59 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimiterConfig;
+import com.ratelimiter.model.Storage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the engine described by a {@link RateLimiterConfig}, so each route can pick its
+ * algorithm and storage. Window-based engines use {@code capacity} as the limit per
+ * {@code windowSizeMs}; the token and leaky buckets use {@code capacity} as the burst and
+ * {@code refillRate} as the sustained rate per second. Every engine is instrumented, see
+ * {@link InstrumentedRateLimiter}.
+ */
+@Component
+public class RateLimiterFactory {
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    public RateLimiterFactory(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public RateLimiter create(RateLimiterConfig config) {
+        return instrument(createEngine(config), config.getStorage());
+    }
+
+    public RateLimiter instrument(RateLimiter engine, Storage storage) {
+        return new InstrumentedRateLimiter(engine, storage, meterRegistry);
+    }
+
+    private RateLimiter createEngine(RateLimiterConfig config) {
+        boolean redis = config.getStorage() == Storage.REDIS;
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> {
+                if (redis) {
+                    throw unsupported(config);
+                }
+                yield new TokenBucketRateLimiter(config.getCapacity(), config.getRefillRate());
+            }
+            case SLIDING_WINDOW -> redis
+                ? new RedisSlidingWindowCounterRateLimiter(redisTemplate, config.getCapacity(), config.getWindowSizeMs())
+                : new SlidingWindowCounterRateLimiter(config.getCapacity(), config.getWindowSizeMs());
+            case SLIDING_WINDOW_LOG -> redis
+                ? new RedisSlidingWindowLogRateLimiter(redisTemplate, config.getCapacity(), config.getWindowSizeMs())
+                : new SlidingWindowLogRateLimiter(config.getCapacity(), config.getWindowSizeMs());
+            case LEAKY_BUCKET -> redis
+                ? new RedisGcraRateLimiter(redisTemplate, config.getCapacity(), config.getRefillRate())
+                : new GcraRateLimiter(config.getCapacity(), config.getRefillRate());
+        };
+    }
+
+    private static IllegalArgumentException unsupported(RateLimiterConfig config) {
+        return new IllegalArgumentException(
+            config.getAlgorithm() + " is not available with " + config.getStorage() + " storage");
+    }
+}
@@ -0,0 +1,64 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.RateLimiterResponse;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * Redis-backed leaky bucket using the generic cell rate algorithm, see {@link GcraRateLimiter}.
+ *
+ * Each client costs a single string key holding the theoretical arrival time, written once per
+ * admitted request; denied requests write nothing. The key expires as soon as the client is
+ * back to a full burst.
+ */
+public class RedisGcraRateLimiter implements RateLimiter {
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT =
+        RedisScript.of(new ClassPathResource("scripts/gcra.lua"), List.class);
+    private static final String KEY_PREFIX = "rate_limiter:gcra:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final int burst;
+    private final int rate;
+
+    public RedisGcraRateLimiter(StringRedisTemplate redisTemplate, int burst, int rate) {
+        this.redisTemplate = redisTemplate;
+        this.burst = burst;
+        this.rate = rate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > burst) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the burst " + burst + ", was " + permits);
+        }
+        List<Long> result = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + clientId),
+            String.valueOf(burst),
+            String.valueOf(rate),
+            String.valueOf(permits));
+
+        return RateLimiterResponse.builder()
+            .allowed(result.get(0) == 1L)
+            .currentTokens(result.get(1).intValue())
+            .capacity(burst)
+            .refillRate(rate)
+            .retryAfterMs(result.get(2))
+            .build();
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.LEAKY_BUCKET;
+    }
+}
@@ -0,0 +1,65 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.RateLimiterResponse;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * Redis-backed approximate sliding window, one small hash per client holding the window index
+ * and the counts of the current and previous window, updated in one atomic script on Redis time.
+ *
+ * Memory per client is constant, a three-field hash of about 100 bytes regardless of the limit;
+ * the key expires after two idle windows. A decision is one round trip running HMGET, plus
+ * HSET and PEXPIRE when allowed.
+ */
+public class RedisSlidingWindowCounterRateLimiter implements RateLimiter {
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT =
+        RedisScript.of(new ClassPathResource("scripts/sliding_window_counter.lua"), List.class);
+    private static final String KEY_PREFIX = "rate_limiter:sliding_counter:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final int limit;
+    private final long windowSizeMs;
+
+    public RedisSlidingWindowCounterRateLimiter(StringRedisTemplate redisTemplate, int limit, long windowSizeMs) {
+        this.redisTemplate = redisTemplate;
+        this.limit = limit;
+        this.windowSizeMs = windowSizeMs;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > limit) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the limit " + limit + ", was " + permits);
+        }
+        List<Long> result = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + clientId),
+            String.valueOf(limit),
+            String.valueOf(windowSizeMs),
+            String.valueOf(permits));
+
+        return RateLimiterResponse.builder()
+            .allowed(result.get(0) == 1L)
+            .currentTokens(result.get(1).intValue())
+            .capacity(limit)
+            .refillRate((int) (limit * 1000L / windowSizeMs))
+            .retryAfterMs(result.get(2))
+            .build();
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.SLIDING_WINDOW;
+    }
+}
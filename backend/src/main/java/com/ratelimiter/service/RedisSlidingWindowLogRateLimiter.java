@@ -0,0 +1,71 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.RateLimiterResponse;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis-backed exact sliding window, one sorted set per client holding a member per admitted
+ * request. The set is trimmed, counted and appended to in one atomic script on Redis time.
+ *
+ * Memory per client is about 50-70 bytes per request admitted in the window (sorted set entry
+ * with an id member), so it grows with the limit; the key expires after one idle window.
+ * A decision is one round trip running ZREMRANGEBYSCORE, ZCARD, then ZADD per permit and
+ * PEXPIRE when allowed, or ZRANGE when denied.
+ */
+public class RedisSlidingWindowLogRateLimiter implements RateLimiter {
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT =
+        RedisScript.of(new ClassPathResource("scripts/sliding_window_log.lua"), List.class);
+    private static final String KEY_PREFIX = "rate_limiter:sliding_log:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final int limit;
+    private final long windowSizeMs;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public RedisSlidingWindowLogRateLimiter(StringRedisTemplate redisTemplate, int limit, long windowSizeMs) {
+        this.redisTemplate = redisTemplate;
+        this.limit = limit;
+        this.windowSizeMs = windowSizeMs;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > limit) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the limit " + limit + ", was " + permits);
+        }
+        List<Long> result = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + clientId),
+            String.valueOf(limit),
+            String.valueOf(windowSizeMs),
+            String.valueOf(permits),
+            nodeId + ":" + sequence.incrementAndGet());
+
+        return RateLimiterResponse.builder()
+            .allowed(result.get(0) == 1L)
+            .currentTokens(result.get(1).intValue())
+            .capacity(limit)
+            .refillRate((int) (limit * 1000L / windowSizeMs))
+            .retryAfterMs(result.get(2))
+            .build();
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.SLIDING_WINDOW_LOG;
+    }
+}
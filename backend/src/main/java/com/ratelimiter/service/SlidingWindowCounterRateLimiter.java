@@ -0,0 +1,148 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+
+/**
+ * Approximate sliding window: keeps request counts for the current and the previous fixed window
+ * and estimates the requests in the last window as
+ * {@code previous * (1 - elapsedInCurrent / window) + current}, assuming the previous window's
+ * requests were spread evenly.
+ *
+ * Memory per client is constant, two counters and a window index (about 40 bytes plus map
+ * overhead) regardless of the limit. A counter is dropped from the store once both of its
+ * windows are over, and past {@code maxClients} the counters that will be empty soonest are
+ * evicted. A decision is O(1) under the client's lock.
+ */
+public class SlidingWindowCounterRateLimiter implements RateLimiter {
+    private static final int DEFAULT_MAX_CLIENTS = 1_000_000;
+    private static final long RETIRED = -1;
+
+    private final BucketStore<WindowCounter> counters;
+    private final int limit;
+    private final long windowSizeMs;
+
+    public SlidingWindowCounterRateLimiter(int limit, long windowSizeMs) {
+        this(limit, windowSizeMs, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * @param maxClients the number of clients tracked before the least recently active are evicted
+     */
+    public SlidingWindowCounterRateLimiter(int limit, long windowSizeMs, int maxClients) {
+        this.limit = limit;
+        this.windowSizeMs = windowSizeMs;
+        this.counters = new BucketStore<>(maxClients);
+    }
+
+    private static class WindowCounter implements BucketStore.Bucket {
+        private long window;
+        private long current;
+        private long previous;
+        private boolean retired;
+        /** nanoTime at which the window of the last admitted request stops counting. */
+        private volatile long idleAt = System.nanoTime();
+
+        /**
+         * @return 0 if the permits were admitted, otherwise the milliseconds until they would be
+         */
+        synchronized long tryAcquire(int permits, long now, long windowSizeMs, int limit) {
+            if (retired) {
+                return RETIRED;
+            }
+            roll(now / windowSizeMs);
+            long elapsed = now % windowSizeMs;
+            double estimate = previous * (1 - (double) elapsed / windowSizeMs) + current;
+            if (estimate + permits <= limit) {
+                current += permits;
+                // The count weighs on the estimate until the end of the next window
+                idleAt = System.nanoTime() + (2 * windowSizeMs - elapsed) * 1_000_000;
+                return 0;
+            }
+            return Math.max(1, retryAfter(permits, elapsed, windowSizeMs, limit));
+        }
+
+        /**
+         * Time until the estimate leaves room for the permits, assuming no other requests arrive.
+         */
+        private long retryAfter(int permits, long elapsed, long windowSizeMs, int limit) {
+            if (current + permits <= limit && previous > 0) {
+                // Room appears within this window as the previous window's weight decays
+                double weight = (double) (limit - current - permits) / previous;
+                return (long) Math.ceil(windowSizeMs * (1 - weight)) - elapsed;
+            }
+            // Only once the current window has become the previous one
+            double weight = current > 0 ? (double) (limit - permits) / current : 1;
+            return windowSizeMs - elapsed + (long) Math.ceil(windowSizeMs * (1 - weight));
+        }
+
+        synchronized int remaining(long now, long windowSizeMs, int limit) {
+            roll(now / windowSizeMs);
+            double estimate = previous * (1 - (double) (now % windowSizeMs) / windowSizeMs) + current;
+            return (int) Math.max(0, limit - Math.ceil(estimate));
+        }
+
+        private void roll(long nowWindow) {
+            if (nowWindow != window) {
+                previous = nowWindow == window + 1 ? current : 0;
+                current = 0;
+                window = nowWindow;
+            }
+        }
+
+        @Override
+        public long idleAt() {
+            return idleAt;
+        }
+
+        @Override
+        public synchronized boolean retireIfIdle(long now) {
+            if (retired || now - idleAt < 0) {
+                return false;
+            }
+            retired = true;
+            return true;
+        }
+
+        @Override
+        public synchronized void retire() {
+            retired = true;
+        }
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > limit) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the limit " + limit + ", was " + permits);
+        }
+        WindowCounter counter = counters.get(clientId, k -> new WindowCounter());
+        long now = System.currentTimeMillis();
+        long retryAfterMs = counter.tryAcquire(permits, now, windowSizeMs, limit);
+        while (retryAfterMs == RETIRED) {
+            // Expired or evicted under us; an expired counter was empty, so a new one is equivalent
+            counters.remove(clientId, counter);
+            counter = counters.get(clientId, k -> new WindowCounter());
+            now = System.currentTimeMillis();
+            retryAfterMs = counter.tryAcquire(permits, now, windowSizeMs, limit);
+        }
+
+        return RateLimiterResponse.builder()
+            .allowed(retryAfterMs == 0)
+            .currentTokens(counter.remaining(now, windowSizeMs, limit))
+            .capacity(limit)
+            .refillRate((int) (limit * 1000L / windowSizeMs))
+            .retryAfterMs(retryAfterMs)
+            .build();
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.SLIDING_WINDOW;
+    }
+
+    public BucketStoreStats getStoreStats() {
+        return counters.getStats();
+    }
+}
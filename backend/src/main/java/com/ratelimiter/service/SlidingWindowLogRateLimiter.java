@@ -0,0 +1,166 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Exact sliding window: remembers the timestamp of every request admitted in the last window
+ * and admits a request only if fewer than {@code limit} remain after expiring older ones.
+ *
+ * Memory per client is one ring buffer of longs, about 100 bytes of object and map overhead
+ * plus 8 bytes per slot. The buffer starts with {@value #INITIAL_LOG_SIZE} slots and doubles
+ * when the requests in the window outgrow it, up to {@code limit} slots, so a client that sent
+ * one request costs the same whatever the limit. A log whose newest entry has left the window
+ * is dropped from the store, and past {@code maxClients} the logs that will empty soonest are
+ * evicted. A decision expires old entries and appends new ones under the client's lock,
+ * amortized O(permits).
+ */
+public class SlidingWindowLogRateLimiter implements RateLimiter {
+    private static final int DEFAULT_MAX_CLIENTS = 1_000_000;
+    private static final long RETIRED = -1;
+    private static final int INITIAL_LOG_SIZE = 8;
+
+    private final BucketStore<WindowLog> logs;
+    /** Bytes of the buffers of live logs beyond their initial size. */
+    private final LongAdder grownBytes = new LongAdder();
+    private final int limit;
+    private final long windowSizeMs;
+    /** Created once, since a lambda reading fields allocates each time it is evaluated. */
+    private final Function<String, WindowLog> logFactory;
+
+    public SlidingWindowLogRateLimiter(int limit, long windowSizeMs) {
+        this(limit, windowSizeMs, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * @param maxClients the number of clients tracked before the least recently active are evicted
+     */
+    public SlidingWindowLogRateLimiter(int limit, long windowSizeMs, int maxClients) {
+        this.limit = limit;
+        this.windowSizeMs = windowSizeMs;
+        this.logs = new BucketStore<>(maxClients, 100 + 8 * Math.min(limit, INITIAL_LOG_SIZE));
+        this.logFactory = clientId -> new WindowLog(limit, grownBytes);
+    }
+
+    private static class WindowLog implements BucketStore.Bucket {
+        private final int limit;
+        private final LongAdder grownBytes;
+        private long[] timestamps;
+        private int head;
+        private int size;
+        private boolean retired;
+        /** nanoTime at which the newest entry leaves the window. */
+        private volatile long idleAt;
+
+        WindowLog(int limit, LongAdder grownBytes) {
+            this.limit = limit;
+            this.grownBytes = grownBytes;
+            this.timestamps = new long[Math.min(limit, INITIAL_LOG_SIZE)];
+            this.idleAt = System.nanoTime();
+        }
+
+        /**
+         * @return 0 if the permits were admitted, otherwise the milliseconds until they would be
+         */
+        synchronized long tryAcquire(int permits, long now, long windowSizeMs) {
+            if (retired) {
+                return RETIRED;
+            }
+            while (size > 0 && timestamps[head] <= now - windowSizeMs) {
+                head = (head + 1) % timestamps.length;
+                size--;
+            }
+            int excess = size + permits - limit;
+            if (excess > 0) {
+                // The oldest entries have to expire before there is room for the permits
+                long expiresAt = timestamps[(head + excess - 1) % timestamps.length] + windowSizeMs;
+                return Math.max(1, expiresAt - now);
+            }
+            if (size + permits > timestamps.length) {
+                grow(size + permits);
+            }
+            for (int i = 0; i < permits; i++) {
+                timestamps[(head + size) % timestamps.length] = now;
+                size++;
+            }
+            idleAt = System.nanoTime() + windowSizeMs * 1_000_000;
+            return 0;
+        }
+
+        private void grow(int needed) {
+            int length = Math.min(limit, Math.max(needed, timestamps.length * 2));
+            long[] grown = new long[length];
+            for (int i = 0; i < size; i++) {
+                grown[i] = timestamps[(head + i) % timestamps.length];
+            }
+            grownBytes.add(8L * (length - timestamps.length));
+            timestamps = grown;
+            head = 0;
+        }
+
+        synchronized int remaining() {
+            return limit - size;
+        }
+
+        @Override
+        public long idleAt() {
+            return idleAt;
+        }
+
+        @Override
+        public synchronized boolean retireIfIdle(long now) {
+            if (retired || now - idleAt < 0) {
+                return false;
+            }
+            retire();
+            return true;
+        }
+
+        @Override
+        public synchronized void retire() {
+            if (!retired) {
+                retired = true;
+                grownBytes.add(-8L * (timestamps.length - Math.min(limit, INITIAL_LOG_SIZE)));
+            }
+        }
+    }
+
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        if (permits < 1 || permits > limit) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the limit " + limit + ", was " + permits);
+        }
+        WindowLog log = logs.get(clientId, logFactory);
+        long retryAfterMs = log.tryAcquire(permits, System.currentTimeMillis(), windowSizeMs);
+        while (retryAfterMs == RETIRED) {
+            // Expired or evicted under us; an expired log was empty, so a new one is equivalent
+            logs.remove(clientId, log);
+            log = logs.get(clientId, logFactory);
+            retryAfterMs = log.tryAcquire(permits, System.currentTimeMillis(), windowSizeMs);
+        }
+
+        return RateLimiterResponse.builder()
+            .allowed(retryAfterMs == 0)
+            .currentTokens(log.remaining())
+            .capacity(limit)
+            .refillRate((int) (limit * 1000L / windowSizeMs))
+            .retryAfterMs(retryAfterMs)
+            .build();
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.SLIDING_WINDOW_LOG;
+    }
+
+    public BucketStoreStats getStoreStats() {
+        BucketStoreStats stats = logs.getStats();
+        stats.setEstimatedBytes(stats.getEstimatedBytes() + grownBytes.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.model.TelemetrySnapshot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates decisions into per-interval snapshots, so that telemetry costs one message per
+ * interval instead of one per decision. Recording is a few uncontended increments and
+ * allocates nothing; {@link #snapshot()} drains the counters and starts the next interval.
+ *
+ * Latencies go into power-of-two microsecond buckets, from under 1 microsecond up to about
+ * 17 minutes, which keeps percentiles within a factor of two at a fixed size.
+ */
+public class TelemetryAggregator {
+    static final int LATENCY_BUCKETS = 31;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    private volatile RateLimiterResponse last;
+    private long intervalStart = System.currentTimeMillis();
+
+    public void record(RateLimiterResponse response, long latencyNanos) {
+        (response.isAllowed() ? allowed : denied).increment();
+        latencies.incrementAndGet(bucket(latencyNanos / 1_000));
+        maxLatencyNanos.accumulate(latencyNanos);
+        last = response;
+    }
+
+    static int bucket(long micros) {
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Returns the decisions recorded since the previous snapshot. Decisions recorded while
+     * the snapshot is taken land in this interval or the next one, but are never lost.
+     */
+    public synchronized TelemetrySnapshot snapshot() {
+        long now = System.currentTimeMillis();
+        long[] histogram = new long[LATENCY_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            histogram[i] = latencies.getAndSet(i, 0);
+            total += histogram[i];
+        }
+        RateLimiterResponse latest = last;
+        TelemetrySnapshot snapshot = TelemetrySnapshot.builder()
+            .timestamp(now)
+            .intervalMs(now - intervalStart)
+            .allowed(allowed.sumThenReset())
+            .denied(denied.sumThenReset())
+            .currentTokens(latest != null ? latest.getCurrentTokens() : 0)
+            .capacity(latest != null ? latest.getCapacity() : 0)
+            .refillRate(latest != null ? latest.getRefillRate() : 0)
+            .latencyHistogram(histogram)
+            .p50LatencyMicros(percentile(histogram, total, 0.50))
+            .p99LatencyMicros(percentile(histogram, total, 0.99))
+            .maxLatencyMicros(maxLatencyNanos.getThenReset() / 1_000)
+            .build();
+        intervalStart = now;
+        return snapshot;
+    }
+
+    private static long percentile(long[] histogram, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (histogram.length - 1);
+    }
+}
@@ -0,0 +1,196 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.service.RateLimitRuleSet.Limits;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free token bucket whose whole state is a single long: the nanoTime at which the
+ * bucket would hold zero tokens. The token count at any instant is derived from it, so
+ * refill is continuous and a decision is one CAS with no allocation.
+ *
+ * The limits are not part of that state. When the rules change, the bucket resolves its
+ * limits again on its next decision and moves its timestamp so that it holds the same number
+ * of tokens at the new rate, up to the new capacity, rather than being reset. The limits and
+ * the rules they were resolved from are swapped together as one immutable pair.
+ */
+final class TokenBucket implements BucketStore.Bucket {
+    /** Marks a bucket removed from the store; no real nanoTime takes this value. */
+    static final long RETIRED = Long.MIN_VALUE;
+
+    private final AtomicLong zeroTokensAt;
+    private final AtomicReference<Resolved> resolved;
+
+    /**
+     * Limits and the rule set they were resolved from; null when pinned by resetBucket, which
+     * also makes the bucket differ from a missing one once full.
+     */
+    private static final class Resolved {
+        private final Limits limits;
+        private final RateLimitRuleSet from;
+
+        private Resolved(Limits limits, RateLimitRuleSet from) {
+            this.limits = limits;
+            this.from = from;
+        }
+    }
+
+    public TokenBucket(Limits limits, RateLimitRuleSet resolvedFrom) {
+        this(limits, resolvedFrom, System.nanoTime() - limits.capacityNanos);
+    }
+
+    /**
+     * @param zeroTokensAt the state of the bucket, e.g. restored from a snapshot
+     */
+    public TokenBucket(Limits limits, RateLimitRuleSet resolvedFrom, long zeroTokensAt) {
+        this.resolved = new AtomicReference<>(new Resolved(limits, resolvedFrom));
+        this.zeroTokensAt = new AtomicLong(zeroTokensAt);
+    }
+
+    /**
+     * @return the limits to decide with under {@code rules}, resolved again if the rules changed
+     */
+    public Limits limits(String clientId, RateLimitRuleSet rules) {
+        Resolved current = resolved.get();
+        if (current.from == rules || current.from == null) {
+            return current.limits;
+        }
+        Resolved next = new Resolved(rules.resolve(clientId), rules);
+        if (!resolved.compareAndSet(current, next)) {
+            // Resolved by a racing thread, which also carried the tokens over
+            return resolved.get().limits;
+        }
+        if (!next.limits.sameAs(current.limits)) {
+            keepTokens(current.limits, next.limits);
+        }
+        return next.limits;
+    }
+
+    /**
+     * Moves the zero instant so that the bucket holds as many tokens at the new rate as it
+     * did at the old one. A decision racing the switch may still be charged at the old rate.
+     */
+    private void keepTokens(Limits from, Limits to) {
+        while (true) {
+            long current = zeroTokensAt.get();
+            if (current == RETIRED) {
+                return;
+            }
+            long now = System.nanoTime();
+            double tokens = (double) Math.min(now - current, from.capacityNanos) / from.nanosPerToken;
+            if (zeroTokensAt.compareAndSet(current, now - (long) (tokens * to.nanosPerToken))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Consumes the given number of tokens, all or nothing.
+     *
+     * @return the instant at which the bucket holds zero tokens once the permits are taken;
+     *         the permits were consumed if it is not after {@code now}, otherwise nothing changed.
+     *         {@link #RETIRED} if the bucket was removed from the store
+     */
+    public long tryConsume(int permits, long now, Limits limits) {
+        return tryConsume(permits, now, limits, 0);
+    }
+
+    /**
+     * Consumes the given number of tokens, including tokens refilled within {@code maxWaitNanos}.
+     * Reserving them moves the zero instant past {@code now}, so later requests wait behind them.
+     *
+     * @return as {@link #tryConsume(int, long, Limits)}; the permits were consumed if it is at most
+     *         {@code maxWaitNanos} after {@code now}
+     */
+    public long tryConsume(int permits, long now, Limits limits, long maxWaitNanos) {
+        long cost = permits * limits.nanosPerToken;
+        long full = now - limits.capacityNanos;
+        while (true) {
+            long current = zeroTokensAt.get();
+            if (current == RETIRED) {
+                return RETIRED;
+            }
+            long next = (current - full < 0 ? full : current) + cost;
+            if (next - now > maxWaitNanos || zeroTokensAt.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return what {@link #tryConsume} would return at {@code now}, without consuming anything
+     */
+    public long peek(int permits, long now, Limits limits) {
+        long current = zeroTokensAt.get();
+        if (current == RETIRED) {
+            return RETIRED;
+        }
+        long full = now - limits.capacityNanos;
+        return (current - full < 0 ? full : current) + permits * limits.nanosPerToken;
+    }
+
+    /**
+     * Gives back permits taken by {@link #tryConsume}. A refund that overfills the bucket is
+     * harmless, since consuming clamps the state to a full bucket.
+     */
+    public void refund(int permits, Limits limits) {
+        long cost = permits * limits.nanosPerToken;
+        while (true) {
+            long current = zeroTokensAt.get();
+            if (current == RETIRED || zeroTokensAt.compareAndSet(current, current - cost)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the state of the bucket, or {@link #RETIRED}
+     */
+    public long zeroTokensAt() {
+        return zeroTokensAt.get();
+    }
+
+    /**
+     * @return the limits last decided with, which a pinned bucket keeps whatever the rules
+     */
+    public Limits currentLimits() {
+        return resolved.get().limits;
+    }
+
+    public boolean isPinned() {
+        return resolved.get().from == null;
+    }
+
+    public static int tokensAfter(long zeroAt, int permits, long now, Limits limits) {
+        long available = isAllowed(zeroAt, now) ? now - zeroAt : now - zeroAt + permits * limits.nanosPerToken;
+        return (int) Math.min(limits.getCapacity(), available / limits.nanosPerToken);
+    }
+
+    public static boolean isAllowed(long zeroAt, long now) {
+        return zeroAt - now <= 0;
+    }
+
+    public static long retryAfterMs(long zeroAt, long now) {
+        long waitNanos = zeroAt - now;
+        return waitNanos <= 0 ? 0 : (waitNanos + 999_999) / 1_000_000;
+    }
+
+    @Override
+    public long idleAt() {
+        return zeroTokensAt.get() + resolved.get().limits.capacityNanos;
+    }
+
+    @Override
+    public boolean retireIfIdle(long now) {
+        Resolved current = resolved.get();
+        long zeroAt = zeroTokensAt.get();
+        return current.from != null && zeroAt != RETIRED && now - (zeroAt + current.limits.capacityNanos) >= 0
+            && zeroTokensAt.compareAndSet(zeroAt, RETIRED);
+    }
+
+    @Override
+    public void retire() {
+        zeroTokensAt.set(RETIRED);
+    }
+}
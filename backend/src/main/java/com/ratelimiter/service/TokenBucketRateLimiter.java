@@ -1,83 +1,174 @@
 package com.ratelimiter.service;
 
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.BucketStoreStats;
 import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.service.RateLimitRuleSet.Limits;
 import org.springframework.stereotype.Service;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Function;
 
 @Service
-public class TokenBucketRateLimiter {
-    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+public class TokenBucketRateLimiter implements RateLimiter {
     private static final int DEFAULT_CAPACITY = 10;
     private static final int DEFAULT_REFILL_RATE = 2;
+    private static final int DEFAULT_MAX_BUCKETS = 1_000_000;
+    private final BucketStore<TokenBucket> buckets;
+    /** Bound once, since a method reference allocates each time it is evaluated. */
+    private final Function<String, TokenBucket> bucketFactory = this::newBucket;
+    private volatile RateLimitRuleSet rules;
 
-    private static class TokenBucket {
-        private final AtomicInteger tokens;
-        private final int capacity;
-        private final int refillRate;
-        private long lastRefillTimestamp;
-
-        public TokenBucket(int capacity, int refillRate) {
-            this.capacity = capacity;
-            this.refillRate = refillRate;
-            this.tokens = new AtomicInteger(capacity);
-            this.lastRefillTimestamp = System.currentTimeMillis();
-        }
+    public TokenBucketRateLimiter() {
+        this(DEFAULT_CAPACITY, DEFAULT_REFILL_RATE);
+    }
 
-        public synchronized boolean tryConsume() {
-            refill();
-            if (tokens.get() > 0) {
-                tokens.decrementAndGet();
-                return true;
-            }
-            return false;
-        }
+    public TokenBucketRateLimiter(int defaultCapacity, int defaultRefillRate) {
+        this(defaultCapacity, defaultRefillRate, DEFAULT_MAX_BUCKETS);
+    }
 
-        private void refill() {
-            long now = System.currentTimeMillis();
-            long timePassed = now - lastRefillTimestamp;
-            if (timePassed < 1000) { // Less than 1 second passed
-                return;
-            }
+    /**
+     * @param maxBuckets the number of clients tracked before the least recently active are evicted
+     */
+    public TokenBucketRateLimiter(int defaultCapacity, int defaultRefillRate, int maxBuckets) {
+        this.rules = RateLimitRuleSet.defaults(defaultCapacity, defaultRefillRate);
+        this.buckets = new BucketStore<>(maxBuckets);
+    }
 
-            int tokensToAdd = (int) (timePassed / 1000) * refillRate;
-            if (tokensToAdd > 0) {
-                int newTokens = Math.min(capacity, tokens.get() + tokensToAdd);
-                tokens.set(newTokens);
-                lastRefillTimestamp = now;
-            }
-        }
+    @Override
+    public RateLimiterResponse check(String clientId, int permits) {
+        return consume(clientId, permits, 0);
+    }
 
-        public int getCurrentTokens() {
-            refill();
-            return tokens.get();
-        }
+    /**
+     * Reserves tokens refilled within {@code maxWait} in the same single CAS as a check.
+     */
+    @Override
+    public RateLimiterResponse reserve(String clientId, int permits, Duration maxWait) {
+        return consume(clientId, permits, maxWait.toNanos());
+    }
 
-        public int getCapacity() {
-            return capacity;
+    private RateLimiterResponse consume(String clientId, int permits, long maxWaitNanos) {
+        RateLimitRuleSet rules = this.rules;
+        TokenBucket bucket = buckets.get(clientId, bucketFactory);
+        Limits limits = bucket.limits(clientId, rules);
+        if (permits < 1 || permits > limits.getCapacity()) {
+            throw new IllegalArgumentException(
+                "permits must be between 1 and the capacity " + limits.getCapacity() + ", was " + permits);
         }
 
-        public int getRefillRate() {
-            return refillRate;
+        long now = System.nanoTime();
+        long zeroAt = bucket.tryConsume(permits, now, limits, maxWaitNanos);
+        while (zeroAt == TokenBucket.RETIRED) {
+            // Expired or evicted under us; an expired bucket was full, so a new one is equivalent
+            buckets.remove(clientId, bucket);
+            bucket = buckets.get(clientId, bucketFactory);
+            limits = bucket.limits(clientId, rules);
+            now = System.nanoTime();
+            zeroAt = bucket.tryConsume(permits, now, limits, maxWaitNanos);
         }
-    }
 
-    public RateLimiterResponse check(String clientId) {
-        TokenBucket bucket = buckets.computeIfAbsent(clientId,
-            k -> new TokenBucket(DEFAULT_CAPACITY, DEFAULT_REFILL_RATE));
-
-        boolean allowed = bucket.tryConsume();
-        
+        boolean consumed = zeroAt - now <= maxWaitNanos;
+        boolean reserved = consumed && !TokenBucket.isAllowed(zeroAt, now);
         return RateLimiterResponse.builder()
-            .allowed(allowed)
-            .currentTokens(bucket.getCurrentTokens())
-            .capacity(bucket.getCapacity())
-            .refillRate(bucket.getRefillRate())
+            .allowed(consumed)
+            .currentTokens(reserved ? 0 : TokenBucket.tokensAfter(zeroAt, permits, now, limits))
+            .capacity(limits.getCapacity())
+            .refillRate(limits.getRefillRate())
+            .retryAfterMs(TokenBucket.retryAfterMs(zeroAt, now))
             .build();
     }
 
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithm.TOKEN_BUCKET;
+    }
+
+    /**
+     * Pins a client to the given limits regardless of the rules and refills its bucket.
+     * Limits equal to what the rules resolve for the client leave it following the rules.
+     */
     public void resetBucket(String clientId, int capacity, int refillRate) {
-        buckets.put(clientId, new TokenBucket(capacity, refillRate));
+        RateLimitRuleSet rules = this.rules;
+        Limits limits = new Limits(capacity, refillRate);
+        Limits resolved = rules.resolve(clientId);
+        buckets.put(clientId, limits.sameAs(resolved) ? new TokenBucket(resolved, rules) : new TokenBucket(limits, null));
+    }
+
+    /**
+     * Replaces the rules. Existing buckets take their new limits on their next decision and keep
+     * their tokens, so no bucket is reset and the swap itself is a single write.
+     */
+    public void applyRules(RateLimitRuleSet rules) {
+        this.rules = rules;
+    }
+
+    public RateLimitRuleSet getRules() {
+        return rules;
+    }
+
+    /**
+     * Saves the state of every bucket that is not full, without pausing decisions: each bucket
+     * is read with a single volatile load while requests keep updating the others.
+     *
+     * @return the number of buckets saved
+     */
+    public int saveSnapshot(Path file) throws IOException {
+        try (BucketSnapshotFile.Writer writer = new BucketSnapshotFile.Writer(file)) {
+            long now = System.nanoTime();
+            buckets.forEach((clientId, bucket) -> {
+                long zeroAt = bucket.zeroTokensAt();
+                Limits limits = bucket.currentLimits();
+                // A full bucket is the same as a missing one, unless it is pinned
+                if (zeroAt == TokenBucket.RETIRED || !bucket.isPinned() && now - (zeroAt + limits.capacityNanos) >= 0) {
+                    return;
+                }
+                try {
+                    writer.add(clientId, zeroAt, bucket.isPinned() ? limits.getCapacity() : 0,
+                        bucket.isPinned() ? limits.getRefillRate() : 0);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return writer.commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Restores the buckets of a snapshot, refilled for the time elapsed since it was saved.
+     * Clients that already have a bucket keep it, and buckets that would be full by now are
+     * skipped.
+     *
+     * @return the number of buckets restored
+     */
+    public int restoreSnapshot(Path file) throws IOException {
+        RateLimitRuleSet rules = this.rules;
+        long now = System.nanoTime();
+        int[] restored = new int[1];
+        BucketSnapshotFile.read(file, (clientId, zeroAt, capacity, refillRate) -> {
+            Limits limits = capacity > 0 ? new Limits(capacity, refillRate) : rules.resolve(clientId);
+            if (capacity == 0 && now - (zeroAt + limits.capacityNanos) >= 0) {
+                return;
+            }
+            TokenBucket bucket = new TokenBucket(limits, capacity > 0 ? null : rules, zeroAt);
+            if (buckets.get(clientId, key -> bucket) == bucket) {
+                restored[0]++;
+            }
+        });
+        return restored[0];
+    }
+
+    public BucketStoreStats getStoreStats() {
+        return buckets.getStats();
+    }
+
+    private TokenBucket newBucket(String clientId) {
+        RateLimitRuleSet rules = this.rules;
+        return new TokenBucket(rules.resolve(clientId), rules);
     }
 }
- 
\ No newline at end of file
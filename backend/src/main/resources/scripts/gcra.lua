@@ -0,0 +1,36 @@
+-- Generic cell rate algorithm: the only state is the theoretical arrival time (TAT) of the
+-- next request, in microseconds of Redis time, stored in a single key.
+--
+-- KEYS[1]  theoretical arrival time
+-- ARGV[1]  burst, the number of requests that may arrive back to back
+-- ARGV[2]  rate in requests per second
+-- ARGV[3]  number of requests to admit
+--
+-- Returns {allowed (1 or 0), requests that could still be admitted now, milliseconds until the call would succeed}
+
+local burst = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local interval = 1000000 / rate
+local tolerance = burst * interval
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < now then
+    tat = now
+end
+
+local new_tat = tat + permits * interval
+local allow_at = new_tat - tolerance
+if allow_at > now then
+    local available = math.floor((now - (tat - tolerance)) / interval)
+    return {0, math.max(0, available), math.ceil((allow_at - now) / 1000)}
+end
+
+-- Once the TAT has passed the key carries no information, so let it expire then
+local ttl = math.max(1, math.ceil((new_tat - now) / 1000))
+redis.call('SET', KEYS[1], string.format('%.0f', new_tat), 'PX', ttl)
+
+return {1, math.floor((tolerance - (new_tat - now)) / interval), 0}
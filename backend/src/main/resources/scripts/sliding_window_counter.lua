@@ -0,0 +1,56 @@
+-- Approximate sliding window from the counts of the current and previous fixed windows,
+-- kept in one hash per client.
+--
+-- KEYS[1]  hash with fields window, current and previous
+-- ARGV[1]  maximum requests per window
+-- ARGV[2]  window size in milliseconds
+-- ARGV[3]  number of requests to admit
+--
+-- Returns {allowed (1 or 0), requests left in the window, milliseconds until the call would succeed}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+
+-- Server time, so nodes with skewed clocks share one timeline
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local now_window = math.floor(now / window)
+local elapsed = now % window
+
+local state = redis.call('HMGET', KEYS[1], 'window', 'current', 'previous')
+local stored_window = tonumber(state[1])
+local current = tonumber(state[2]) or 0
+local previous = tonumber(state[3]) or 0
+
+if stored_window ~= now_window then
+    if stored_window == now_window - 1 then
+        previous = current
+    else
+        previous = 0
+    end
+    current = 0
+end
+
+local estimate = previous * (1 - elapsed / window) + current
+if estimate + permits <= limit then
+    current = current + permits
+    redis.call('HSET', KEYS[1], 'window', now_window, 'current', current, 'previous', previous)
+    redis.call('PEXPIRE', KEYS[1], window * 2)
+    return {1, math.max(0, limit - math.ceil(estimate + permits)), 0}
+end
+
+-- Time until the estimate leaves room for the permits, assuming no other requests arrive
+local retry_after
+if current + permits <= limit and previous > 0 then
+    local weight = (limit - current - permits) / previous
+    retry_after = math.ceil(window * (1 - weight)) - elapsed
+else
+    local weight = 1
+    if current > 0 then
+        weight = (limit - permits) / current
+    end
+    retry_after = window - elapsed + math.ceil(window * (1 - weight))
+end
+
+return {0, math.max(0, limit - math.ceil(estimate)), math.max(1, retry_after)}
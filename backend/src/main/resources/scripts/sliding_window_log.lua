@@ -0,0 +1,34 @@
+-- Exact sliding window over a sorted set of request timestamps, trimmed and updated atomically.
+--
+-- KEYS[1]  sorted set of admitted requests, scored by time in milliseconds
+-- ARGV[1]  maximum requests per window
+-- ARGV[2]  window size in milliseconds
+-- ARGV[3]  number of requests to admit
+-- ARGV[4]  unique id of this call, used to build distinct members
+--
+-- Returns {allowed (1 or 0), requests left in the window, milliseconds until the call would succeed}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+
+-- Server time, so nodes with skewed clocks share one timeline
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+local count = redis.call('ZCARD', KEYS[1])
+
+local excess = count + permits - limit
+if excess > 0 then
+    -- The oldest entries have to expire before there is room for the permits
+    local oldest = redis.call('ZRANGE', KEYS[1], excess - 1, excess - 1, 'WITHSCORES')
+    return {0, limit - count, math.max(1, tonumber(oldest[2]) + window - now)}
+end
+
+for i = 1, permits do
+    redis.call('ZADD', KEYS[1], now, ARGV[4] .. ':' .. i)
+end
+redis.call('PEXPIRE', KEYS[1], window)
+
+return {1, limit - count - permits, 0}
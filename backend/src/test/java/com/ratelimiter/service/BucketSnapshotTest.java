@@ -0,0 +1,139 @@
+package com.ratelimiter.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BucketSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoredBucketsShouldKeepTheirTokens() throws IOException {
+        TokenBucketRateLimiter before = new TokenBucketRateLimiter(10, 1);
+        for (int i = 0; i < 10; i++) {
+            before.check("drained");
+        }
+        for (int i = 0; i < 4; i++) {
+            before.check("half");
+        }
+        before.check("full-again");
+        Path file = dir.resolve("buckets.snapshot");
+        assertThat(before.saveSnapshot(file)).isEqualTo(3);
+
+        TokenBucketRateLimiter after = new TokenBucketRateLimiter(10, 1);
+        assertThat(after.restoreSnapshot(file)).isEqualTo(3);
+
+        assertThat(after.check("drained").isAllowed()).isFalse();
+        assertThat(after.check("half").getCurrentTokens()).isEqualTo(5);
+        assertThat(after.check("unknown").getCurrentTokens()).isEqualTo(9);
+    }
+
+    @Test
+    void fullBucketsShouldNotBeSaved() throws IOException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1000);
+        rateLimiter.check("client");
+        sleep(20);
+
+        assertThat(rateLimiter.saveSnapshot(dir.resolve("buckets.snapshot"))).isZero();
+    }
+
+    @Test
+    void restoreShouldRefillForTheTimeElapsed() throws IOException {
+        TokenBucketRateLimiter before = new TokenBucketRateLimiter(2, 20);
+        before.check("client");
+        before.check("client");
+        Path file = dir.resolve("buckets.snapshot");
+        before.saveSnapshot(file);
+        sleep(150);
+
+        TokenBucketRateLimiter after = new TokenBucketRateLimiter(2, 20);
+        assertThat(after.restoreSnapshot(file)).isZero();
+        assertThat(after.check("client").getCurrentTokens()).isEqualTo(1);
+    }
+
+    @Test
+    void pinnedBucketsShouldKeepTheirLimits() throws IOException {
+        TokenBucketRateLimiter before = new TokenBucketRateLimiter(10, 1);
+        before.resetBucket("vip", 100, 50);
+        Path file = dir.resolve("buckets.snapshot");
+        assertThat(before.saveSnapshot(file)).isEqualTo(1);
+
+        TokenBucketRateLimiter after = new TokenBucketRateLimiter(10, 1);
+        after.restoreSnapshot(file);
+        assertThat(after.check("vip").getCapacity()).isEqualTo(100);
+    }
+
+    @Test
+    void aSnapshotShouldReplaceThePreviousOne() throws IOException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1);
+        Path file = dir.resolve("buckets.snapshot");
+        for (int i = 0; i < 10_000; i++) {
+            rateLimiter.check("client-" + i);
+        }
+        assertThat(rateLimiter.saveSnapshot(file)).isEqualTo(10_000);
+        long large = Files.size(file);
+
+        TokenBucketRateLimiter small = new TokenBucketRateLimiter(10, 1);
+        small.check("client");
+        assertThat(small.saveSnapshot(file)).isEqualTo(1);
+
+        assertThat(Files.size(file)).isLessThan(large);
+        assertThat(Files.exists(dir.resolve("buckets.snapshot.tmp"))).isFalse();
+    }
+
+    @Test
+    void aCorruptSnapshotShouldBeRejected() throws IOException {
+        Path file = dir.resolve("buckets.snapshot");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21});
+
+        assertThatThrownBy(() -> new TokenBucketRateLimiter(10, 1).restoreSnapshot(file))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void aTruncatedSnapshotShouldBeRejected() throws IOException {
+        TokenBucketRateLimiter before = new TokenBucketRateLimiter(10, 1);
+        before.check("first");
+        before.check("second");
+        Path file = dir.resolve("buckets.snapshot");
+        before.saveSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+
+        assertThatThrownBy(() -> new TokenBucketRateLimiter(10, 1).restoreSnapshot(file))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void aSnapshotWithInvalidLimitsShouldBeRejected() throws IOException {
+        TokenBucketRateLimiter before = new TokenBucketRateLimiter(10, 1);
+        before.resetBucket("vip", 100, 50);
+        Path file = dir.resolve("buckets.snapshot");
+        before.saveSnapshot(file);
+        // Header, key length, "vip", zero instant and capacity, then the refill rate
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        bytes.putInt(20 + 2 + 3 + 8 + 4, 0);
+        Files.write(file, bytes.array());
+
+        assertThatThrownBy(() -> new TokenBucketRateLimiter(10, 1).restoreSnapshot(file))
+            .isInstanceOf(IOException.class);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
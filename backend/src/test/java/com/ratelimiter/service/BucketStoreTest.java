@@ -0,0 +1,53 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.BucketStoreStats;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BucketStoreTest {
+
+    @Test
+    void shouldEvictActiveBucketsBeyondMaxSize() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1, 100);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(rateLimiter.check("client-" + i).isAllowed()).isTrue();
+        }
+
+        BucketStoreStats stats = rateLimiter.getStoreStats();
+        assertThat(stats.getSize()).isEqualTo(100);
+        assertThat(stats.getEvicted() + stats.getExpired()).isEqualTo(900);
+        assertThat(stats.getEstimatedBytes()).isPositive();
+    }
+
+    @Test
+    void shouldExpireBucketsThatRefilledToCapacity() throws InterruptedException {
+        // A single token refills in a millisecond, so every bucket is idle after the sleep
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1, 1000, 10_000);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.check("old-" + i);
+        }
+        Thread.sleep(10);
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.check("new-" + i);
+        }
+
+        BucketStoreStats stats = rateLimiter.getStoreStats();
+        assertThat(stats.getExpired()).isPositive();
+        assertThat(stats.getEvicted()).isZero();
+        assertThat(stats.getSize()).isLessThan(200);
+    }
+
+    @Test
+    void evictedClientShouldStartOverWithAFreshBucket() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(2, 1, 1);
+
+        assertThat(rateLimiter.check("a").getCurrentTokens()).isEqualTo(1);
+        assertThat(rateLimiter.check("b").getCurrentTokens()).isEqualTo(1);
+
+        assertThat(rateLimiter.getStoreStats().getEvicted()).isEqualTo(1);
+        assertThat(rateLimiter.check("a").getCurrentTokens()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimiterResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompositeRateLimiterTest {
+
+    // Clients are named <org>-<user>
+    private final CompositeRateLimiter rateLimiter = new CompositeRateLimiter(List.of(
+        CompositeRateLimiter.Level.perClient("client", 3, 1),
+        CompositeRateLimiter.Level.grouped("org", clientId -> clientId.substring(0, clientId.indexOf('-')), 5, 1),
+        CompositeRateLimiter.Level.global("global", 100, 1)));
+
+    @Test
+    void shouldReportTheRejectingLevel() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.check("acme-alice").isAllowed()).isTrue();
+        }
+        RateLimiterResponse clientDenied = rateLimiter.check("acme-alice");
+        assertThat(clientDenied.isAllowed()).isFalse();
+        assertThat(clientDenied.getRejectedLevel()).isEqualTo("client");
+
+        assertThat(rateLimiter.check("acme-bob", 2).isAllowed()).isTrue();
+        RateLimiterResponse orgDenied = rateLimiter.check("acme-bob");
+        assertThat(orgDenied.isAllowed()).isFalse();
+        assertThat(orgDenied.getRejectedLevel()).isEqualTo("org");
+        assertThat(orgDenied.getRetryAfterMs()).isGreaterThan(0);
+    }
+
+    @Test
+    void rejectionShouldConsumeFromNoLevel() {
+        CompositeRateLimiter limiter = new CompositeRateLimiter(List.of(
+            CompositeRateLimiter.Level.grouped("org", clientId -> clientId.substring(0, clientId.indexOf('-')), 5, 1),
+            CompositeRateLimiter.Level.global("global", 6, 1)));
+        assertThat(limiter.check("acme-alice", 5).isAllowed()).isTrue();
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.check("acme-bob").getRejectedLevel()).isEqualTo("org");
+        }
+
+        // Had the denials been debited from the global level, it would be empty by now
+        RateLimiterResponse other = limiter.check("other-carol");
+        assertThat(other.isAllowed()).isTrue();
+        assertThat(other.getCurrentTokens()).isEqualTo(0);
+        assertThat(limiter.check("other-dave").getRejectedLevel()).isEqualTo("global");
+    }
+
+    @Test
+    void concurrentRequestsShouldNeverOvershootAnyLevel() throws Exception {
+        CompositeRateLimiter shared = new CompositeRateLimiter(List.of(
+            CompositeRateLimiter.Level.perClient("client", 50, 1),
+            CompositeRateLimiter.Level.global("global", 60, 1)));
+        AtomicInteger allowed = new AtomicInteger();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String clientId = "client-" + (t % 2);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        if (shared.check(clientId).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertThat(allowed.get()).isBetween(60, 61);
+    }
+}
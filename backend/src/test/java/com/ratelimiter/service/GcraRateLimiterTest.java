@@ -0,0 +1,88 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GcraRateLimiterTest {
+
+    @Test
+    void shouldAllowBurstThenSpaceRequests() throws InterruptedException {
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(5, 10);
+        String clientId = "test-client";
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.check(clientId).isAllowed())
+                .as("Request %d should be allowed", i + 1)
+                .isTrue();
+        }
+
+        RateLimiterResponse denied = rateLimiter.check(clientId);
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getCurrentTokens()).isZero();
+        // One request leaks out every 100ms at 10 requests per second
+        assertThat(denied.getRetryAfterMs()).isBetween(1L, 100L);
+
+        Thread.sleep(denied.getRetryAfterMs());
+        assertThat(rateLimiter.check(clientId).isAllowed()).isTrue();
+        assertThat(rateLimiter.check(clientId).isAllowed()).isFalse();
+    }
+
+    @Test
+    void weightedRequestsShouldBeAllOrNothing() {
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(5, 1);
+        String clientId = "test-client";
+
+        assertThat(rateLimiter.check(clientId, 3).getCurrentTokens()).isEqualTo(2);
+        assertThat(rateLimiter.check(clientId, 3).isAllowed()).isFalse();
+        assertThat(rateLimiter.check(clientId, 2).isAllowed()).isTrue();
+    }
+
+    @Test
+    void asyncCheckShouldCompleteWithoutSwitchingThreads() {
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(5, 1);
+
+        CompletableFuture<RateLimiterResponse> allowed = rateLimiter.checkAsync("test-client", 5);
+        assertThat(allowed).isDone();
+        assertThat(allowed.join().isAllowed()).isTrue();
+
+        CompletableFuture<RateLimiterResponse> invalid = rateLimiter.checkAsync("test-client", 6);
+        assertThat(invalid).isCompletedExceptionally();
+        assertThatThrownBy(invalid::join).hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void clientsWhoseArrivalTimeHasPassedShouldExpire() throws InterruptedException {
+        // A single request leaks out in a millisecond, so every TAT is in the past after the sleep
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(1, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.check("old-" + i);
+        }
+        Thread.sleep(10);
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.check("new-" + i);
+        }
+
+        BucketStoreStats stats = rateLimiter.getStoreStats();
+        assertThat(stats.getExpired()).isPositive();
+        assertThat(stats.getEvicted()).isZero();
+        assertThat(stats.getSize()).isLessThan(200);
+    }
+
+    @Test
+    void evictedClientShouldStartOverWithAFullBurst() {
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(2, 1, 1);
+
+        assertThat(rateLimiter.check("a", 2).isAllowed()).isTrue();
+        assertThat(rateLimiter.check("b").isAllowed()).isTrue();
+
+        assertThat(rateLimiter.getStoreStats().getEvicted()).isEqualTo(1);
+        assertThat(rateLimiter.check("a", 2).isAllowed()).isTrue();
+    }
+}
@@ -0,0 +1,30 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Storage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InstrumentedRateLimiterTest {
+
+    @Test
+    void shouldCountDecisionsAndRecordLatencyPerAlgorithm() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimiter rateLimiter = new InstrumentedRateLimiter(new GcraRateLimiter(3, 1), Storage.LOCAL, registry);
+
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.check("test-client");
+        }
+        assertThatThrownBy(() -> rateLimiter.check("test-client", 4)).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(registry.get("ratelimiter.decisions")
+            .tags("algorithm", "LEAKY_BUCKET", "storage", "LOCAL", "outcome", "allowed")
+            .counter().count()).isEqualTo(3);
+        assertThat(registry.get("ratelimiter.decisions").tag("outcome", "denied").counter().count()).isEqualTo(2);
+        assertThat(registry.get("ratelimiter.decision.latency").timer().count()).isEqualTo(5);
+        assertThat(registry.get("ratelimiter.errors").counter().count()).isZero();
+        assertThat(registry.find("ratelimiter.redis.round.trips").counter()).isNull();
+    }
+}
@@ -0,0 +1,105 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.Algorithm;
+import com.ratelimiter.model.KeyDistribution;
+import com.ratelimiter.model.RateLimiterRequest;
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.model.RateLimiterStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoadGeneratorTest {
+
+    @Test
+    void shouldPaceRequestsEvenlyAtTheTargetRate() throws InterruptedException {
+        RateLimiterRequest profile = profile(200, 4);
+        LoadGenerator generator = new LoadGenerator(new TokenBucketRateLimiter(1_000, 1_000), profile, null);
+
+        generator.start();
+        Thread.sleep(1_000);
+        generator.stop();
+
+        RateLimiterStats stats = generator.getStats();
+        // A burst loop would send everything at once; paced arrivals track the elapsed time
+        assertThat(stats.getRequestCount()).isBetween(150L, 250L);
+        assertThat(stats.getAchievedTps()).isBetween(150.0, 250.0);
+        assertThat(stats.getAllowedCount()).isEqualTo(stats.getRequestCount());
+    }
+
+    @Test
+    void latencyShouldIncludeTimeQueuedBehindSlowDecisions() throws InterruptedException {
+        // Each decision takes 20ms but one is scheduled every 10ms, so the backlog keeps growing
+        RateLimiter slow = new RateLimiter() {
+            @Override
+            public RateLimiterResponse check(String clientId, int permits) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return RateLimiterResponse.builder().allowed(true).build();
+            }
+
+            @Override
+            public Algorithm getAlgorithm() {
+                return Algorithm.TOKEN_BUCKET;
+            }
+        };
+        LoadGenerator generator = new LoadGenerator(slow, profile(100, 1), null);
+
+        generator.start();
+        Thread.sleep(1_000);
+        generator.stop();
+
+        RateLimiterStats stats = generator.getStats();
+        assertThat(stats.getP50LatencyMicros()).isGreaterThan(100_000);
+        assertThat(stats.getMaxLatencyMicros()).isGreaterThan(300_000);
+    }
+
+    @Test
+    void zipfAndHotKeyShouldFavorTheFirstClients() {
+        RateLimiterRequest zipf = profile(1, 1);
+        zipf.setClientCount(100);
+        zipf.setDistribution(KeyDistribution.ZIPF);
+        int[] zipfCounts = sample(new LoadGenerator(new GcraRateLimiter(1, 1), zipf, null), 100, 100_000);
+        // With exponent 1 the first client is picked about 1 / H(100) = 19% of the time
+        assertThat(zipfCounts[0]).isBetween(17_000, 21_500);
+        assertThat(zipfCounts[0]).isGreaterThan(zipfCounts[1]).isGreaterThan(zipfCounts[9]);
+
+        RateLimiterRequest hotKey = profile(1, 1);
+        hotKey.setClientCount(100);
+        hotKey.setDistribution(KeyDistribution.HOT_KEY);
+        hotKey.setHotKeyShare(0.9);
+        int[] hotCounts = sample(new LoadGenerator(new GcraRateLimiter(1, 1), hotKey, null), 100, 100_000);
+        assertThat(hotCounts[0]).isBetween(89_000, 91_000);
+    }
+
+    @Test
+    void shouldRejectInvalidProfiles() {
+        assertThatThrownBy(() -> new LoadGenerator(new GcraRateLimiter(1, 1), profile(0, 1), null))
+            .isInstanceOf(IllegalArgumentException.class);
+        RateLimiterRequest hotKey = profile(10, 1);
+        hotKey.setHotKeyShare(1.5);
+        assertThatThrownBy(() -> new LoadGenerator(new GcraRateLimiter(1, 1), hotKey, null))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int[] sample(LoadGenerator generator, int clients, int samples) {
+        int[] counts = new int[clients];
+        for (int i = 0; i < samples; i++) {
+            counts[generator.nextClient(ThreadLocalRandom.current())]++;
+        }
+        return counts;
+    }
+
+    private static RateLimiterRequest profile(int tps, int threads) {
+        RateLimiterRequest profile = new RateLimiterRequest();
+        profile.setTps(tps);
+        profile.setThreads(threads);
+        return profile;
+    }
+}
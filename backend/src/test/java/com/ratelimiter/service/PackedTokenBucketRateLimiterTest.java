@@ -0,0 +1,82 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PackedTokenBucketRateLimiterTest {
+
+    @Test
+    void shouldAllowBurstThenDeny() {
+        PackedTokenBucketRateLimiter rateLimiter = new PackedTokenBucketRateLimiter(5, 1, 1000);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.check("test-client").getCurrentTokens()).isEqualTo(4 - i);
+        }
+
+        RateLimiterResponse denied = rateLimiter.check("test-client");
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterMs()).isBetween(1L, 1000L);
+        assertThat(rateLimiter.check("other-client").isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldEvictWhenASetIsFull() {
+        // A single set of WAYS slots, so the extra client must replace one of the others
+        PackedTokenBucketRateLimiter rateLimiter =
+            new PackedTokenBucketRateLimiter(10, 1, PackedTokenBucketRateLimiter.WAYS);
+
+        for (int i = 0; i <= PackedTokenBucketRateLimiter.WAYS; i++) {
+            assertThat(rateLimiter.check("client-" + i).isAllowed()).isTrue();
+        }
+
+        BucketStoreStats stats = rateLimiter.getStoreStats();
+        assertThat(stats.getSize()).isEqualTo(PackedTokenBucketRateLimiter.WAYS);
+        assertThat(stats.getEvicted()).isEqualTo(1);
+        assertThat(stats.getEstimatedBytes()).isEqualTo(16L * PackedTokenBucketRateLimiter.WAYS);
+    }
+
+    @Test
+    void shouldReuseBucketsThatRefilledToCapacity() throws InterruptedException {
+        PackedTokenBucketRateLimiter rateLimiter =
+            new PackedTokenBucketRateLimiter(1, 1000, PackedTokenBucketRateLimiter.WAYS);
+
+        for (int i = 0; i < PackedTokenBucketRateLimiter.WAYS; i++) {
+            rateLimiter.check("old-" + i);
+        }
+        Thread.sleep(10);
+        assertThat(rateLimiter.check("new").isAllowed()).isTrue();
+
+        BucketStoreStats stats = rateLimiter.getStoreStats();
+        assertThat(stats.getExpired()).isEqualTo(1);
+        assertThat(stats.getEvicted()).isZero();
+    }
+
+    @Test
+    void shouldRejectRatesThatAreNotAWholeNumberOfMicrosPerToken() {
+        // 1,000,000 / 3 would truncate and refill about 3.000003 tokens per second
+        assertThatThrownBy(() -> new PackedTokenBucketRateLimiter(10, 3, 1000))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new PackedTokenBucketRateLimiter(10, 0, 1000))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(new PackedTokenBucketRateLimiter(10, 8, 1000).check("client").isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldRejectCapacitiesThatOverflowTheTimeField() {
+        long timeBits = (1L << 48) - 1;
+        int max = (int) ((timeBits - PackedTokenBucketRateLimiter.MIN_UPTIME_MICROS) / 1_000_000);
+
+        PackedTokenBucketRateLimiter largest = new PackedTokenBucketRateLimiter(max, 1, 1000);
+        assertThat(largest.check("client").getCurrentTokens()).isEqualTo(max - 1);
+        assertThat(largest.check("other").isAllowed()).isTrue();
+
+        assertThatThrownBy(() -> new PackedTokenBucketRateLimiter(max + 1, 1, 1000))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new PackedTokenBucketRateLimiter(0, 1, 1000))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,179 @@
+package com.ratelimiter.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeerSyncedRateLimiterTest {
+    private static final Duration INTERVAL = Duration.ofSeconds(1);
+
+    @Test
+    void aSingleNodeShouldEnforceTheWholeLimit() {
+        PeerSyncedRateLimiter node = new PeerSyncedRateLimiter("a", new InJvmPeerTransport(), 10, 1, INTERVAL);
+
+        assertThat(allowed(node, "client", 20)).isEqualTo(10);
+    }
+
+    @Test
+    void nodesShouldSplitTheLimitBeforeTheirFirstSync() {
+        InJvmPeerTransport transport = new InJvmPeerTransport();
+        PeerSyncedRateLimiter a = new PeerSyncedRateLimiter("a", transport, 100, 1, INTERVAL);
+        PeerSyncedRateLimiter b = new PeerSyncedRateLimiter("b", transport, 100, 1, INTERVAL);
+
+        assertThat(allowed(a, "client", 60)).isEqualTo(50);
+        assertThat(allowed(b, "client", 60)).isEqualTo(50);
+        a.sync();
+        b.sync();
+
+        assertThat(a.check("client").isAllowed()).isFalse();
+        assertThat(b.check("client").isAllowed()).isFalse();
+        assertThat(a.getStats().getOvershootTokens()).isZero();
+        assertThat(a.getStats().getDeltasApplied()).isEqualTo(1);
+    }
+
+    @Test
+    void aCapacityBelowTheNodeCountShouldStillBeGranted() {
+        InJvmPeerTransport transport = new InJvmPeerTransport();
+        PeerSyncedRateLimiter a = new PeerSyncedRateLimiter("a", transport, 1, 1, INTERVAL);
+        PeerSyncedRateLimiter b = new PeerSyncedRateLimiter("b", transport, 1, 1, INTERVAL);
+
+        // A share of half a token would deny every request
+        assertThat(a.check("client").isAllowed()).isTrue();
+        assertThat(b.check("client").isAllowed()).isTrue();
+        a.sync();
+        b.sync();
+
+        // Both nodes took the one token before hearing of the other
+        assertThat(a.getStats().getOvershootTokens()).isBetween(0.9, 1.0);
+        assertThat(b.getStats().getOvershootTokens()).isBetween(0.9, 1.0);
+        assertThat(a.check("client").isAllowed()).isFalse();
+        assertThat(a.getStats().getShareDenials()).isZero();
+    }
+
+    @Test
+    void sharesShouldFollowTheTraffic() {
+        InJvmPeerTransport transport = new InJvmPeerTransport();
+        PeerSyncedRateLimiter a = new PeerSyncedRateLimiter("a", transport, 100, 1, INTERVAL);
+        PeerSyncedRateLimiter b = new PeerSyncedRateLimiter("b", transport, 100, 1, INTERVAL);
+
+        int first = allowed(a, "client", 100);
+        a.sync();
+        b.sync();
+        int second = allowed(a, "client", 100);
+
+        assertThat(first).isEqualTo(50);
+        assertThat(first + second).isBetween(95, 101);
+        // One request per interval beyond the share, then the share applies
+        assertThat(b.check("client").isAllowed()).isTrue();
+        assertThat(b.check("client").isAllowed()).isFalse();
+        assertThat(b.getStats().getShareDenials()).isEqualTo(1);
+    }
+
+    @Test
+    void redeliveredDeltasShouldBeAppliedOnce() {
+        InJvmPeerTransport inJvm = new InJvmPeerTransport();
+        PeerTransport twice = new ForwardingTransport(inJvm) {
+            @Override
+            public void broadcast(ConsumptionDeltas deltas) {
+                inJvm.broadcast(deltas);
+                inJvm.broadcast(deltas);
+            }
+        };
+        PeerSyncedRateLimiter a = new PeerSyncedRateLimiter("a", twice, 100, 1, INTERVAL);
+        PeerSyncedRateLimiter b = new PeerSyncedRateLimiter("b", twice, 100, 1, INTERVAL);
+
+        allowed(a, "client", 10);
+        a.sync();
+        allowed(a, "client", 10);
+        a.sync();
+
+        assertThat(b.check("client").getCurrentTokens()).isEqualTo(79);
+        assertThat(b.getStats().getDeltasApplied()).isEqualTo(2);
+    }
+
+    @Test
+    void overshootShouldBeCountedWhenDeltasArriveLate() {
+        InJvmPeerTransport inJvm = new InJvmPeerTransport();
+        boolean[] partitioned = {true};
+        PeerTransport flaky = new ForwardingTransport(inJvm) {
+            @Override
+            public void broadcast(ConsumptionDeltas deltas) {
+                if (!partitioned[0]) {
+                    inJvm.broadcast(deltas);
+                }
+            }
+        };
+        PeerSyncedRateLimiter a = new PeerSyncedRateLimiter("a", flaky, 100, 1, INTERVAL);
+        PeerSyncedRateLimiter b = new PeerSyncedRateLimiter("b", flaky, 100, 1, INTERVAL);
+
+        // Cut off from each other, both nodes take over the whole limit after a sync
+        allowed(a, "client", 100);
+        allowed(b, "client", 100);
+        a.sync();
+        b.sync();
+        allowed(a, "client", 100);
+        allowed(b, "client", 100);
+
+        partitioned[0] = false;
+        a.sync();
+        b.sync();
+
+        assertThat(a.getStats().getOvershootTokens()).isBetween(40.0, 100.0);
+        assertThat(b.getStats().getOvershootTokens()).isBetween(40.0, 100.0);
+    }
+
+    @Test
+    void startedNodesShouldSyncInTheBackground() throws InterruptedException {
+        InJvmPeerTransport transport = new InJvmPeerTransport();
+        try (PeerSyncedRateLimiter a = new PeerSyncedRateLimiter("a", transport, 100, 1, Duration.ofMillis(10));
+             PeerSyncedRateLimiter b = new PeerSyncedRateLimiter("b", transport, 100, 1, Duration.ofMillis(10))) {
+            a.start();
+            b.start();
+            allowed(a, "client", 20);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+            while ((b.getStats().getDeltasApplied() == 0 || b.getStats().getSyncs() == 0)
+                && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(b.getStats().getDeltasApplied()).isEqualTo(1);
+            assertThat(b.getStats().getSyncs()).isPositive();
+        }
+    }
+
+    private static int allowed(RateLimiter rateLimiter, String clientId, int requests) {
+        int allowed = 0;
+        for (int i = 0; i < requests; i++) {
+            if (rateLimiter.check(clientId).isAllowed()) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    private abstract static class ForwardingTransport implements PeerTransport {
+        private final PeerTransport delegate;
+
+        ForwardingTransport(PeerTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void join(String nodeId, Consumer<ConsumptionDeltas> receiver) {
+            delegate.join(nodeId, receiver);
+        }
+
+        @Override
+        public void leave(String nodeId) {
+            delegate.leave(nodeId);
+        }
+
+        @Override
+        public int nodeCount() {
+            return delegate.nodeCount();
+        }
+    }
+}
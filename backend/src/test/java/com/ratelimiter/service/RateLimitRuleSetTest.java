@@ -0,0 +1,72 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimitRule;
+import com.ratelimiter.model.RateLimitRules;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitRuleSetTest {
+
+    @Test
+    void shouldResolveExactIdsBeforePatternsAndTiers() {
+        RateLimitRules rules = new RateLimitRules();
+        rules.getRules().add(rule("partner-*", null, 100, 50));
+        rules.getRules().add(rule(null, "gold", 40, 20));
+        rules.getRules().add(rule("partner-7", null, 5, 1));
+        rules.getTiers().put("acme", "gold");
+        RateLimitRuleSet ruleSet = RateLimitRuleSet.compile(rules, 10, 2);
+
+        assertThat(ruleSet.resolve("partner-1").getCapacity()).isEqualTo(100);
+        assertThat(ruleSet.resolve("partner-7").getCapacity()).isEqualTo(5);
+        assertThat(ruleSet.resolve("acme").getCapacity()).isEqualTo(40);
+        assertThat(ruleSet.resolve("someone").getCapacity()).isEqualTo(10);
+        // Clients of one rule share its limits
+        assertThat(ruleSet.resolve("partner-2")).isSameAs(ruleSet.resolve("partner-1"));
+    }
+
+    @Test
+    void newRulesShouldApplyToExistingBucketsWithoutResettingThem() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1);
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.check("client");
+        }
+        assertThat(rateLimiter.check("client").isAllowed()).isFalse();
+
+        RateLimitRules rules = new RateLimitRules();
+        rules.getRules().add(rule("client", null, 20, 1));
+        rateLimiter.applyRules(RateLimitRuleSet.compile(rules, 10, 1));
+
+        // Still empty, but bounded by the new capacity
+        assertThat(rateLimiter.check("client").isAllowed()).isFalse();
+        assertThat(rateLimiter.check("client").getCapacity()).isEqualTo(20);
+        assertThat(rateLimiter.check("other").getCapacity()).isEqualTo(10);
+    }
+
+    @Test
+    void aNewRefillRateShouldKeepTheTokensOfExistingBuckets() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 100);
+        rateLimiter.check("full");
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.check("half");
+        }
+
+        RateLimitRules rules = new RateLimitRules();
+        rules.getRules().add(rule("full", null, 10, 1));
+        rules.getRules().add(rule("half", null, 10, 1000));
+        rateLimiter.applyRules(RateLimitRuleSet.compile(rules, 10, 100));
+
+        // Re-read at the new rates, the same instant would hold 0 and 10 tokens
+        assertThat(rateLimiter.check("full").getCurrentTokens()).isBetween(8, 9);
+        assertThat(rateLimiter.check("half").getCurrentTokens()).isBetween(4, 6);
+    }
+
+    private static RateLimitRule rule(String pattern, String tier, int capacity, int refillRate) {
+        RateLimitRule rule = new RateLimitRule();
+        rule.setPattern(pattern);
+        rule.setTier(tier);
+        rule.setCapacity(capacity);
+        rule.setRefillRate(refillRate);
+        return rule;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimiterResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterAcquireTest {
+
+    @Test
+    void reservationsShouldQueueBehindEachOther() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1, 10);
+        assertThat(rateLimiter.check("client").isAllowed()).isTrue();
+
+        RateLimiterResponse first = rateLimiter.reserve("client", 1, Duration.ofSeconds(1));
+        RateLimiterResponse second = rateLimiter.reserve("client", 1, Duration.ofSeconds(1));
+        assertThat(first.isAllowed()).isTrue();
+        assertThat(second.isAllowed()).isTrue();
+        assertThat(first.getRetryAfterMs()).isBetween(1, 100);
+        assertThat(second.getRetryAfterMs()).isBetween(101, 200);
+
+        assertThat(rateLimiter.reserve("client", 1, Duration.ofMillis(100)).isAllowed()).isFalse();
+        assertThat(rateLimiter.check("client").isAllowed()).isFalse();
+    }
+
+    @Test
+    void acquireShouldWaitForTheNextToken() throws InterruptedException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1, 10);
+        assertThat(rateLimiter.check("client").isAllowed()).isTrue();
+
+        long start = System.nanoTime();
+        assertThat(rateLimiter.acquire("client", 1, Duration.ofSeconds(1))).isTrue();
+        assertThat((System.nanoTime() - start) / 1_000_000).isBetween(90, 500);
+        assertThat(rateLimiter.acquire("client", 1, Duration.ofMillis(10))).isFalse();
+    }
+
+    @Test
+    void acquireShouldRetryEnginesThatCannotReserve() throws InterruptedException {
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(1, 20);
+        assertThat(rateLimiter.check("client").isAllowed()).isTrue();
+
+        assertThat(rateLimiter.acquire("client", 1, Duration.ofSeconds(1))).isTrue();
+        assertThat(rateLimiter.acquire("client", 1, Duration.ofMillis(10))).isFalse();
+    }
+}
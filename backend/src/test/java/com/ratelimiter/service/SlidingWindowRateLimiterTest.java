@@ -0,0 +1,107 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.BucketStoreStats;
+import com.ratelimiter.model.RateLimiterResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingWindowRateLimiterTest {
+
+    @Test
+    void logShouldAllowLimitPerWindow() throws InterruptedException {
+        SlidingWindowLogRateLimiter rateLimiter = new SlidingWindowLogRateLimiter(5, 500);
+        String clientId = "test-client";
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.check(clientId).isAllowed())
+                .as("Request %d should be allowed", i + 1)
+                .isTrue();
+        }
+
+        RateLimiterResponse denied = rateLimiter.check(clientId);
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterMs()).isBetween(1L, 500L);
+
+        // Once the window has passed all entries have expired
+        Thread.sleep(denied.getRetryAfterMs() + 50);
+        assertThat(rateLimiter.check(clientId, 5).isAllowed()).isTrue();
+    }
+
+    @Test
+    void counterShouldAllowLimitPerWindow() {
+        SlidingWindowCounterRateLimiter rateLimiter = new SlidingWindowCounterRateLimiter(5, 60_000);
+        String clientId = "test-client";
+
+        assertThat(rateLimiter.check(clientId, 3).isAllowed()).isTrue();
+        assertThat(rateLimiter.check(clientId, 2).getCurrentTokens()).isZero();
+
+        RateLimiterResponse denied = rateLimiter.check(clientId);
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterMs()).isPositive();
+    }
+
+    @Test
+    void clientsShouldHaveSeparateWindows() {
+        SlidingWindowCounterRateLimiter counter = new SlidingWindowCounterRateLimiter(1, 60_000);
+        SlidingWindowLogRateLimiter log = new SlidingWindowLogRateLimiter(1, 60_000);
+
+        for (RateLimiter rateLimiter : new RateLimiter[] {counter, log}) {
+            assertThat(rateLimiter.check("client1").isAllowed()).isTrue();
+            assertThat(rateLimiter.check("client2").isAllowed()).isTrue();
+            assertThat(rateLimiter.check("client1").isAllowed()).isFalse();
+        }
+    }
+
+    @Test
+    void windowsShouldExpireOnceTheyAreOver() throws InterruptedException {
+        SlidingWindowCounterRateLimiter counter = new SlidingWindowCounterRateLimiter(1, 5);
+        SlidingWindowLogRateLimiter log = new SlidingWindowLogRateLimiter(1, 5);
+
+        for (int i = 0; i < 100; i++) {
+            counter.check("old-" + i);
+            log.check("old-" + i);
+        }
+        Thread.sleep(20);
+        for (int i = 0; i < 100; i++) {
+            counter.check("new-" + i);
+            log.check("new-" + i);
+        }
+
+        for (BucketStoreStats stats : new BucketStoreStats[] {counter.getStoreStats(), log.getStoreStats()}) {
+            assertThat(stats.getExpired()).isPositive();
+            assertThat(stats.getEvicted()).isZero();
+            assertThat(stats.getSize()).isLessThan(200);
+        }
+    }
+
+    @Test
+    void logsShouldBeEvictedBeyondMaxClients() {
+        SlidingWindowLogRateLimiter log = new SlidingWindowLogRateLimiter(1000, 60_000, 10);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(log.check("client-" + i).isAllowed()).isTrue();
+        }
+
+        BucketStoreStats stats = log.getStoreStats();
+        assertThat(stats.getSize()).isEqualTo(10);
+        assertThat(stats.getEvicted()).isEqualTo(90);
+        // A log that saw one request keeps its initial buffer, not one sized for the limit
+        assertThat(stats.getEstimatedBytes()).isLessThan(10 * 8 * 1000L);
+    }
+
+    @Test
+    void logShouldGrowToTheLimitAndStillEnforceIt() {
+        SlidingWindowLogRateLimiter log = new SlidingWindowLogRateLimiter(100, 60_000, 10);
+        long initialBytes = log.getStoreStats().getEstimatedBytes();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(log.check("busy").isAllowed()).isTrue();
+        }
+        RateLimiterResponse denied = log.check("busy");
+
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getCurrentTokens()).isZero();
+        assertThat(log.getStoreStats().getEstimatedBytes()).isGreaterThan(initialBytes + 8 * 90L);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.model.TelemetrySnapshot;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TelemetryAggregatorTest {
+
+    @Test
+    void snapshotShouldSummarizeAndResetTheInterval() {
+        TelemetryAggregator telemetry = new TelemetryAggregator();
+        for (int i = 0; i < 99; i++) {
+            telemetry.record(response(true, 5), 3_000);
+        }
+        telemetry.record(response(false, 0), 1_500_000);
+
+        TelemetrySnapshot snapshot = telemetry.snapshot();
+        assertThat(snapshot.getAllowed()).isEqualTo(99);
+        assertThat(snapshot.getDenied()).isEqualTo(1);
+        assertThat(snapshot.getCurrentTokens()).isZero();
+        // 3us falls in [2, 4), 1500us in [1024, 2048)
+        assertThat(snapshot.getLatencyHistogram()[2]).isEqualTo(99);
+        assertThat(snapshot.getLatencyHistogram()[11]).isEqualTo(1);
+        assertThat(snapshot.getP50LatencyMicros()).isEqualTo(4);
+        assertThat(snapshot.getP99LatencyMicros()).isEqualTo(4);
+        assertThat(snapshot.getMaxLatencyMicros()).isEqualTo(1_500);
+
+        TelemetrySnapshot next = telemetry.snapshot();
+        assertThat(next.getAllowed() + next.getDenied()).isZero();
+        assertThat(next.getLatencyHistogram()).containsOnly(0L);
+    }
+
+    @Test
+    void latencyBucketsShouldBePowersOfTwo() {
+        assertThat(TelemetryAggregator.bucket(0)).isZero();
+        assertThat(TelemetryAggregator.bucket(1)).isEqualTo(1);
+        assertThat(TelemetryAggregator.bucket(1023)).isEqualTo(10);
+        assertThat(TelemetryAggregator.bucket(1024)).isEqualTo(11);
+        assertThat(TelemetryAggregator.bucket(Long.MAX_VALUE)).isEqualTo(TelemetryAggregator.LATENCY_BUCKETS - 1);
+    }
+
+    private static RateLimiterResponse response(boolean allowed, int tokens) {
+        return RateLimiterResponse.builder()
+            .allowed(allowed)
+            .currentTokens(tokens)
+            .capacity(10)
+            .refillRate(2)
+            .build();
+    }
+}
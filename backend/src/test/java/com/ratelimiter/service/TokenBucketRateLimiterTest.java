@@ -1,71 +1,216 @@
 package com.ratelimiter.service;
 
-import org.junit.jupiter.api.BeforeEach;
+import com.ratelimiter.model.RateLimiterResponse;
+import com.ratelimiter.service.RateLimitRuleSet.Limits;
 import org.junit.jupiter.api.Test;
-import org.testcontainers.containers.GenericContainer;
-import org.testcontainers.junit.jupiter.Container;
-import org.testcontainers.junit.jupiter.Testcontainers;
-import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
-@Testcontainers
 class TokenBucketRateLimiterTest {
 
-    @Container
-    public static GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
-            .withExposedPorts(6379);
+    @Test
+    void shouldAllowRequestsWithinCapacity() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 2);
 
-    private TokenBucketRateLimiter rateLimiter;
+        for (int i = 0; i < 10; i++) {
+            RateLimiterResponse response = rateLimiter.check("client");
+            assertThat(response.isAllowed()).isTrue();
+            assertThat(response.getCurrentTokens()).isEqualTo(9 - i);
+        }
 
-    @BeforeEach
-    void setUp() {
-        rateLimiter = new TokenBucketRateLimiter(
-            redis.getHost(),
-            redis.getFirstMappedPort(),
-            10,
-            2
-        );
+        RateLimiterResponse denied = rateLimiter.check("client");
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterMs()).isBetween(1, 500);
     }
 
     @Test
-    void shouldAllowRequestsWithinCapacity() {
-        String clientId = "test-client";
-        
-        // Should allow first 10 requests
+    void shouldTakePermitsAllOrNothing() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1);
+
+        assertThat(rateLimiter.check("client", 7).isAllowed()).isTrue();
+        assertThat(rateLimiter.check("client", 4).isAllowed()).isFalse();
+        assertThat(rateLimiter.check("client", 3).isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldRejectPermitsOutsideTheCapacity() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1);
+
+        assertThatThrownBy(() -> rateLimiter.check("client", 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rateLimiter.check("client", 11)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRefillTokensContinuously() throws InterruptedException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(2, 20);
+        rateLimiter.check("client");
+        rateLimiter.check("client");
+        RateLimiterResponse denied = rateLimiter.check("client");
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterMs()).isBetween(1, 50);
+
+        // One token every 50 ms, not a batch per second
+        Thread.sleep(denied.getRetryAfterMs() + 5);
+        assertThat(rateLimiter.check("client").isAllowed()).isTrue();
+        assertThat(rateLimiter.check("client").isAllowed()).isFalse();
+    }
+
+    @Test
+    void shouldNotRefillPastTheCapacity() throws InterruptedException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(3, 100);
+        rateLimiter.check("client");
+
+        Thread.sleep(100);
+
+        assertThat(rateLimiter.check("client").getCurrentTokens()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReserveTokensWithinTheMaximumWait() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1, 10);
+        rateLimiter.check("client");
+
+        RateLimiterResponse reserved = rateLimiter.reserve("client", 1, Duration.ofMillis(200));
+        assertThat(reserved.isAllowed()).isTrue();
+        assertThat(reserved.getRetryAfterMs()).isBetween(1, 100);
+
+        assertThat(rateLimiter.reserve("client", 1, Duration.ofMillis(50)).isAllowed()).isFalse();
+    }
+
+    @Test
+    void resetBucketShouldRefillAndPinTheClient() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1);
         for (int i = 0; i < 10; i++) {
-            assertThat(rateLimiter.isAllowed(clientId))
-                .as("Request %d should be allowed", i + 1)
-                .isTrue();
+            rateLimiter.check("client");
         }
-        
-        // Should deny next request
-        assertThat(rateLimiter.isAllowed(clientId))
-            .as("Request exceeding capacity should be denied")
-            .isFalse();
+
+        rateLimiter.resetBucket("client", 20, 5);
+        rateLimiter.applyRules(RateLimitRuleSet.defaults(3, 1));
+
+        RateLimiterResponse response = rateLimiter.check("client");
+        assertThat(response.isAllowed()).isTrue();
+        assertThat(response.getCapacity()).isEqualTo(20);
+        assertThat(response.getCurrentTokens()).isEqualTo(19);
+        assertThat(rateLimiter.check("other").getCapacity()).isEqualTo(3);
     }
 
     @Test
-    void shouldRefillTokens() throws InterruptedException {
-        String clientId = "test-client";
-        
-        // Use all tokens
-        for (int i = 0; i < 10; i++) {
-            rateLimiter.isAllowed(clientId);
+    void resetBucketToTheRuleLimitsShouldKeepFollowingTheRules() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 1);
+
+        rateLimiter.resetBucket("client", 10, 1);
+        rateLimiter.applyRules(RateLimitRuleSet.defaults(3, 1));
+
+        assertThat(rateLimiter.check("client").getCapacity()).isEqualTo(3);
+    }
+
+    @Test
+    void evictedClientsShouldGetANewBucket() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(2, 1, 1);
+        rateLimiter.check("first");
+        rateLimiter.check("first");
+        assertThat(rateLimiter.check("first").isAllowed()).isFalse();
+
+        // Evicts the bucket of "first", which is retired and replaced on its next decision
+        rateLimiter.check("second");
+        assertThat(rateLimiter.getStoreStats().getEvicted()).isEqualTo(1);
+
+        assertThat(rateLimiter.check("first").isAllowed()).isTrue();
+    }
+
+    @Test
+    void retiredBucketsShouldRefuseEveryUpdate() {
+        Limits limits = new Limits(10, 1);
+        TokenBucket bucket = new TokenBucket(limits, RateLimitRuleSet.defaults(10, 1));
+        long now = System.nanoTime();
+
+        bucket.retire();
+
+        assertThat(bucket.tryConsume(1, now, limits)).isEqualTo(TokenBucket.RETIRED);
+        assertThat(bucket.peek(1, now, limits)).isEqualTo(TokenBucket.RETIRED);
+        assertThat(bucket.retireIfIdle(now)).isFalse();
+    }
+
+    @Test
+    void onlyIdleBucketsFollowingTheRulesShouldExpire() {
+        Limits limits = new Limits(10, 1);
+        TokenBucket full = new TokenBucket(limits, RateLimitRuleSet.defaults(10, 1));
+        TokenBucket pinned = new TokenBucket(limits, null);
+        TokenBucket used = new TokenBucket(limits, RateLimitRuleSet.defaults(10, 1));
+        long now = System.nanoTime();
+        used.tryConsume(1, now, limits);
+
+        assertThat(full.retireIfIdle(now)).isTrue();
+        assertThat(pinned.retireIfIdle(now)).isFalse();
+        assertThat(used.retireIfIdle(now)).isFalse();
+    }
+
+    @Test
+    void concurrentChecksShouldNeverGrantMoreThanTheBucketHolds() throws Exception {
+        int threads = 16;
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1000, 1);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    if (rateLimiter.check("hot").isAllowed()) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
         }
-        
-        // Wait for refill
-        Thread.sleep(1000);
-        
-        // Should have 2 new tokens (refill rate = 2)
-        assertThat(rateLimiter.isAllowed(clientId)).isTrue();
-        assertThat(rateLimiter.isAllowed(clientId)).isTrue();
-        assertThat(rateLimiter.isAllowed(clientId)).isFalse();
+        executor.shutdown();
+        long refilled = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - begin) + 1;
+
+        assertThat(allowed.get()).isBetween(1000, 1000 + refilled);
     }
 
     @Test
-    void healthChecksShouldWork() {
-        assertThat(rateLimiter.ping()).isTrue();
-        assertThat(rateLimiter.deepPing()).isTrue();
+    void concurrentChecksShouldSurviveBucketsRetiredUnderThem() throws Exception {
+        int threads = 8;
+        // Buckets refill within a millisecond and the store holds two, so they keep being retired
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1, 1000, 2);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 2000; i++) {
+                    RateLimiterResponse response = rateLimiter.check("client-" + (i + offset) % 4);
+                    assertThat(response.getCurrentTokens()).isBetween(0, 1);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(rateLimiter.getStoreStats().getSize()).isBetween(1, 2 + threads);
     }
-} 
\ No newline at end of file
+}
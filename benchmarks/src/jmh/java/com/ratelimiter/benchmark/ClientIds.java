@@ -0,0 +1,25 @@
+package com.ratelimiter.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A fixed set of client identifiers, created up front so key construction is not measured.
+ */
+final class ClientIds {
+    private final String[] ids;
+
+    ClientIds(int count) {
+        ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = "client-" + i;
+        }
+    }
+
+    String next() {
+        return ids.length == 1 ? ids[0] : ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    String[] all() {
+        return ids;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ratelimiter.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread counts of allowed and denied decisions, reported by JMH next to the primary
+ * result so every run shows the hit/deny ratio it actually measured.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class DecisionCounters {
+    public long allowed;
+    public long denied;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        allowed = 0;
+        denied = 0;
+    }
+
+    boolean record(boolean decision) {
+        if (decision) {
+            allowed++;
+        } else {
+            denied++;
+        }
+        return decision;
+    }
+}
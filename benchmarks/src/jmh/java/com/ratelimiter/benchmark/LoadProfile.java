@@ -0,0 +1,32 @@
+package com.ratelimiter.benchmark;
+
+/**
+ * Bucket settings that steer the share of allowed and denied decisions.
+ *
+ * The observed ratio depends on throughput and key cardinality, so every benchmark also
+ * reports the allowed and denied counts through {@link DecisionCounters}.
+ */
+public enum LoadProfile {
+    /** A bucket so large and fast that practically every decision is allowed. */
+    ALLOW(1_000_000_000, 1_000_000_000),
+    /** Mostly denied on a single hot key, mostly allowed when spread over many keys. */
+    MIXED(100, 1_000),
+    /** One token per second, so practically every decision after the first is denied. */
+    DENY(1, 1);
+
+    private final int capacity;
+    private final int refillRate;
+
+    LoadProfile(int capacity, int refillRate) {
+        this.capacity = capacity;
+        this.refillRate = refillRate;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRefillRate() {
+        return refillRate;
+    }
+}
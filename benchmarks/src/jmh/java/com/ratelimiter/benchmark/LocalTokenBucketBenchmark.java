@@ -0,0 +1,81 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.service.PackedTokenBucketRateLimiter;
+import com.ratelimiter.service.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Decisions of the in-process {@link TokenBucketRateLimiter} of the backend, compared with
+ * the synchronized bucket it replaced and with the {@link PackedTokenBucketRateLimiter}
+ * table, for one hot key versus a million keys and each {@link LoadProfile}.
+ */
+@State(Scope.Benchmark)
+public class LocalTokenBucketBenchmark {
+
+    public enum Engine {
+        SERVICE,
+        PACKED,
+        SYNCHRONIZED_BASELINE
+    }
+
+    @Param({"SERVICE", "PACKED", "SYNCHRONIZED_BASELINE"})
+    public Engine engine;
+
+    @Param({"1", "1000000"})
+    public int keys;
+
+    @Param({"ALLOW", "MIXED", "DENY"})
+    public LoadProfile profile;
+
+    private TokenBucketRateLimiter service;
+    private PackedTokenBucketRateLimiter packed;
+    private SynchronizedTokenBucketLimiter baseline;
+    private ClientIds clientIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        clientIds = new ClientIds(keys);
+        service = new TokenBucketRateLimiter();
+        baseline = new SynchronizedTokenBucketLimiter();
+        // The packed table counts time in microseconds, so its refill rate tops out at 1M/s
+        packed = new PackedTokenBucketRateLimiter(
+                profile.getCapacity(), Math.min(profile.getRefillRate(), 1_000_000), 2 * keys);
+        for (String clientId : clientIds.all()) {
+            service.resetBucket(clientId, profile.getCapacity(), profile.getRefillRate());
+            baseline.resetBucket(clientId, profile.getCapacity(), profile.getRefillRate());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean oneThread(DecisionCounters counters) {
+        return counters.record(decide());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean eightThreads(DecisionCounters counters) {
+        return counters.record(decide());
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean sixtyFourThreads(DecisionCounters counters) {
+        return counters.record(decide());
+    }
+
+    private boolean decide() {
+        String clientId = clientIds.next();
+        return switch (engine) {
+            case SERVICE -> service.check(clientId).isAllowed();
+            case PACKED -> packed.check(clientId).isAllowed();
+            case SYNCHRONIZED_BASELINE -> baseline.check(clientId).isAllowed();
+        };
+    }
+}
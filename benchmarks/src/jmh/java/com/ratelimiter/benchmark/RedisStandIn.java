@@ -0,0 +1,61 @@
+package com.ratelimiter.benchmark;
+
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The Redis server used by the benchmarks.
+ *
+ * By default an embedded Redis process is started on a free-standing port, so the suite runs
+ * without Docker or a preinstalled server. Pass {@code -Dredis.host} (and optionally
+ * {@code -Dredis.port}) to benchmark against an existing server instead.
+ */
+final class RedisStandIn implements AutoCloseable {
+    private static final int EMBEDDED_PORT = 16379;
+
+    private final String host;
+    private final int port;
+    private final RedisServer server;
+
+    private RedisStandIn(String host, int port, RedisServer server) {
+        this.host = host;
+        this.port = port;
+        this.server = server;
+    }
+
+    static RedisStandIn start() {
+        String host = System.getProperty("redis.host");
+        if (host != null) {
+            return new RedisStandIn(host, Integer.getInteger("redis.port", 6379), null);
+        }
+        try {
+            RedisServer server = new RedisServer(EMBEDDED_PORT);
+            server.start();
+            return new RedisStandIn("localhost", EMBEDDED_PORT, server);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start embedded Redis", e);
+        }
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.stop();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stop embedded Redis", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.PooledConnectionProvider;
+import com.ratelimiter.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+
+/**
+ * Decisions of the Redis-backed {@link TokenBucketRateLimiter} for both update strategies,
+ * one hot key versus a million keys, and each {@link LoadProfile}.
+ */
+@State(Scope.Benchmark)
+public class RedisTokenBucketBenchmark {
+    private static final int MAX_THREADS = 64;
+
+    @Param({"TRANSACTION", "SCRIPT"})
+    public TokenBucketRateLimiter.Strategy strategy;
+
+    @Param({"1", "1000000"})
+    public int keys;
+
+    @Param({"ALLOW", "MIXED", "DENY"})
+    public LoadProfile profile;
+
+    private RedisStandIn redis;
+    private PooledConnectionProvider pool;
+    private TokenBucketRateLimiter limiter;
+    private ClientIds clientIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = RedisStandIn.start();
+        pool = new PooledConnectionProvider(redis.getHost(), redis.getPort(), MAX_THREADS, MAX_THREADS, Duration.ofSeconds(5));
+        pool.execute(jedis -> jedis.flushAll());
+        limiter = new TokenBucketRateLimiter(pool, profile.getCapacity(), profile.getRefillRate(), strategy);
+        clientIds = new ClientIds(keys);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        redis.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean oneThread(DecisionCounters counters) {
+        return counters.record(limiter.isAllowed(clientIds.next()));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean eightThreads(DecisionCounters counters) {
+        return counters.record(limiter.isAllowed(clientIds.next()));
+    }
+
+    @Benchmark
+    @Threads(MAX_THREADS)
+    public boolean sixtyFourThreads(DecisionCounters counters) {
+        return counters.record(limiter.isAllowed(clientIds.next()));
+    }
+}
@@ -0,0 +1,70 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.model.RateLimiterResponse;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The synchronized, whole-second refill bucket the backend service used before it became
+ * lock-free, kept only as a baseline for {@link LocalTokenBucketBenchmark}.
+ */
+final class SynchronizedTokenBucketLimiter {
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private static final class TokenBucket {
+        private final AtomicInteger tokens;
+        private final int capacity;
+        private final int refillRate;
+        private long lastRefillTimestamp;
+
+        TokenBucket(int capacity, int refillRate) {
+            this.capacity = capacity;
+            this.refillRate = refillRate;
+            this.tokens = new AtomicInteger(capacity);
+            this.lastRefillTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized boolean tryConsume() {
+            refill();
+            if (tokens.get() > 0) {
+                tokens.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            long timePassed = now - lastRefillTimestamp;
+            if (timePassed < 1000) {
+                return;
+            }
+            int tokensToAdd = (int) (timePassed / 1000) * refillRate;
+            if (tokensToAdd > 0) {
+                tokens.set(Math.min(capacity, tokens.get() + tokensToAdd));
+                lastRefillTimestamp = now;
+            }
+        }
+
+        int getCurrentTokens() {
+            refill();
+            return tokens.get();
+        }
+    }
+
+    RateLimiterResponse check(String clientId) {
+        TokenBucket bucket = buckets.get(clientId);
+        boolean allowed = bucket.tryConsume();
+        return RateLimiterResponse.builder()
+                .allowed(allowed)
+                .currentTokens(bucket.getCurrentTokens())
+                .capacity(bucket.capacity)
+                .refillRate(bucket.refillRate)
+                .build();
+    }
+
+    void resetBucket(String clientId, int capacity, int refillRate) {
+        buckets.put(clientId, new TokenBucket(capacity, refillRate));
+    }
+}
@@ -3,6 +3,13 @@ export interface RateLimiterRequest {
     tps: number;
     capacity: number;
     refillRate: number;
+    /** Publish every nth simulated decision on /topic/rateLimiterUpdate; 0 or absent for snapshots only */
+    eventSampleInterval?: number;
+    threads?: number;
+    clientCount?: number;
+    distribution?: 'UNIFORM' | 'ZIPF' | 'HOT_KEY';
+    zipfExponent?: number;
+    hotKeyShare?: number;
 }
 
 /**
@@ -13,6 +20,26 @@ export interface RateLimiterResponse {
     currentTokens: number;
     capacity: number;
     refillRate: number;
+    retryAfterMs: number;
+    rejectedLevel?: string | null;
+}
+
+/**
+ * Decisions aggregated over one interval, published on /topic/rateLimiterSnapshot
+ */
+export interface TelemetrySnapshot {
+    timestamp: number;
+    intervalMs: number;
+    allowed: number;
+    denied: number;
+    currentTokens: number;
+    capacity: number;
+    refillRate: number;
+    /** Entry i counts decisions that took less than 2^i microseconds */
+    latencyHistogram: number[];
+    p50LatencyMicros: number;
+    p99LatencyMicros: number;
+    maxLatencyMicros: number;
 }
 
 /**
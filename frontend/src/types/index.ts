@@ -6,6 +6,17 @@ export interface RateLimiterStats {
     requestCount: number;
     allowedCount: number;
     successRate: number;
+    /** Load generator results, see GET /api/rate-limiter/stats */
+    errorCount?: number;
+    targetTps?: number;
+    achievedTps?: number;
+    elapsedMs?: number;
+    meanLatencyMicros?: number;
+    p50LatencyMicros?: number;
+    p90LatencyMicros?: number;
+    p99LatencyMicros?: number;
+    p999LatencyMicros?: number;
+    maxLatencyMicros?: number;
 }
 
 export interface DataPoint {
@@ -1,7 +1,8 @@
 import { Socket as IOSocket } from 'socket.io-client';
-import { RateLimiterResponse } from './api';
+import { RateLimiterResponse, TelemetrySnapshot } from './api';
 
 export interface ServerToClientEvents {
+  rateLimiterSnapshot: (data: TelemetrySnapshot) => void;
   rateLimiterUpdate: (data: RateLimiterResponse) => void;
 }
 
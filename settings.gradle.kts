@@ -6,3 +6,4 @@
 
 rootProject.name = "rate-limiter-distributed"
 include("backend")
+include("benchmarks")
@@ -0,0 +1,59 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The waiting behind {@link RateLimiter#acquire} and {@link RateLimiter#acquireAsync}.
+ *
+ * Each attempt is a {@link RateLimiter#reserve} with whatever is left of the wait. A granted
+ * reservation is waited out; a rejection is retried once its retry-after time has passed, or
+ * given up right away if that is beyond the deadline.
+ */
+final class Acquisition {
+    /** Lower bound on the wait before retrying, for rejections that carry no retry-after time. */
+    private static final long MIN_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Acquisition() {
+    }
+
+    static boolean await(RateLimiter limiter, String clientId, int permits, Duration maxWait) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (true) {
+            RateLimitDecision decision = limiter.reserve(clientId, permits, remaining(deadline));
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(decision.getRetryAfterMillis());
+            if (decision.isAllowed()) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                return true;
+            }
+            waitNanos = Math.max(waitNanos, MIN_RETRY_NANOS);
+            if (waitNanos > deadline - System.nanoTime()) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    static CompletableFuture<Boolean> schedule(RateLimiter limiter, String clientId, int permits,
+                                               long deadline, HashedTimerWheel timer) {
+        return CompletableFuture.supplyAsync(() -> limiter.reserve(clientId, permits, remaining(deadline)), Thread::startVirtualThread)
+                .thenCompose(decision -> {
+                    long waitNanos = TimeUnit.MILLISECONDS.toNanos(decision.getRetryAfterMillis());
+                    if (decision.isAllowed()) {
+                        return waitNanos > 0
+                                ? timer.delay(waitNanos).thenApply(done -> true)
+                                : CompletableFuture.completedFuture(true);
+                    }
+                    waitNanos = Math.max(waitNanos, MIN_RETRY_NANOS);
+                    if (waitNanos > deadline - System.nanoTime()) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return timer.delay(waitNanos).thenCompose(done -> schedule(limiter, clientId, permits, deadline, timer));
+                });
+    }
+
+    private static Duration remaining(long deadline) {
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+}
@@ -0,0 +1,123 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A circuit breaker that stops calls to Redis after consecutive failures.
+ *
+ * After {@code failureThreshold} failed or timed-out calls in a row the breaker opens, and
+ * calls are not attempted for {@code openDuration}. Then a single probe call is let through:
+ * if it succeeds the breaker closes, otherwise it opens again for another period.
+ */
+public final class CircuitBreaker {
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(1);
+
+    /**
+     * The state of a circuit breaker.
+     */
+    public enum State {
+        /** Calls go to Redis. */
+        CLOSED,
+        /** Calls are not attempted until the open period ends. */
+        OPEN,
+        /** A single probe call is in flight to decide whether to close again. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder opened = new LongAdder();
+    private volatile long openUntilNanos;
+
+    /**
+     * Constructs a new CircuitBreaker.
+     *
+     * @param failureThreshold The number of consecutive failures that opens the breaker
+     * @param openDuration How long the breaker stays open before probing again
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @return A breaker that opens after 5 consecutive failures and probes again after 1 second
+     */
+    public static CircuitBreaker withDefaults() {
+        return new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * Decides whether a call may be attempted. Once the open period is over, exactly one
+     * caller is let through as the probe.
+     *
+     * @return true if the call should be attempted
+     */
+    boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        return current == State.OPEN
+                && System.nanoTime() - openUntilNanos >= 0
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+        }
+    }
+
+    void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            consecutiveFailures.set(0);
+            openUntilNanos = System.nanoTime() + openNanos;
+            state.set(State.OPEN);
+            opened.increment();
+        }
+    }
+
+    /**
+     * Records a call that says nothing about the health of Redis. A probe ending this way
+     * hands the probe to the next caller.
+     */
+    void onIgnored() {
+        state.compareAndSet(State.HALF_OPEN, State.OPEN);
+    }
+
+    /**
+     * @return The number of milliseconds until the breaker lets a probe through, 0 if it is not open
+     */
+    long remainingOpenMillis() {
+        if (state.get() != State.OPEN) {
+            return 0;
+        }
+        long remaining = openUntilNanos - System.nanoTime();
+        return remaining > 0 ? (remaining + 999_999) / 1_000_000 : 0;
+    }
+
+    /**
+     * @return The current state of the breaker
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return The number of times the breaker has opened
+     */
+    public long getOpenCount() {
+        return opened.sum();
+    }
+}
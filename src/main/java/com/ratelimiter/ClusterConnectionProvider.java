@@ -0,0 +1,126 @@
+package com.ratelimiter;
+
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A connection provider for Redis Cluster, routing each call to the node that owns its key.
+ *
+ * It builds on the slot cache and per-node pools of Jedis' own cluster provider, the one
+ * behind {@code JedisCluster}, but hands out plain {@link Jedis} connections so that the
+ * limiter's WATCH/MULTI transactions and pipelines run unchanged on the owning node. Bucket
+ * keys are hash-tagged by the limiter, so all keys of one bucket live in one slot.
+ *
+ * It only implements the keyed calls of {@link JedisConnectionProvider}: a command that is
+ * not tied to a key has no single node to run on, so the provider cannot be used where a
+ * {@link StandaloneConnectionProvider} is expected.
+ *
+ * A call redirected because a slot moved is retried after refreshing the slot cache; Redis
+ * rejects a redirected command before running it, so a retry never applies a decision twice.
+ */
+public class ClusterConnectionProvider implements JedisConnectionProvider, AutoCloseable {
+    private static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 2000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final redis.clients.jedis.providers.ClusterConnectionProvider cluster;
+
+    /**
+     * Constructs a new ClusterConnectionProvider around an existing Jedis cluster provider.
+     *
+     * @param cluster The provider of connections to the cluster nodes
+     */
+    public ClusterConnectionProvider(redis.clients.jedis.providers.ClusterConnectionProvider cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Constructs a new ClusterConnectionProvider with a pool per cluster node.
+     *
+     * @param nodes Any reachable nodes of the cluster, used to discover the others
+     * @param maxTotalPerNode The maximum number of connections to each node
+     * @param borrowTimeout How long a caller waits for a free connection before failing
+     */
+    public ClusterConnectionProvider(Set<HostAndPort> nodes, int maxTotalPerNode, Duration borrowTimeout) {
+        this(nodes, DefaultJedisClientConfig.builder().socketTimeoutMillis(DEFAULT_SOCKET_TIMEOUT_MILLIS).build(),
+                maxTotalPerNode, borrowTimeout);
+    }
+
+    /**
+     * Constructs a new ClusterConnectionProvider with a pool per cluster node.
+     *
+     * @param nodes Any reachable nodes of the cluster, used to discover the others
+     * @param clientConfig The connection settings, e.g. a host and port mapper when the nodes
+     *                     announce addresses that are not reachable from this client
+     * @param maxTotalPerNode The maximum number of connections to each node
+     * @param borrowTimeout How long a caller waits for a free connection before failing
+     */
+    public ClusterConnectionProvider(Set<HostAndPort> nodes, JedisClientConfig clientConfig,
+                                     int maxTotalPerNode, Duration borrowTimeout) {
+        this(new redis.clients.jedis.providers.ClusterConnectionProvider(
+                nodes, clientConfig, poolConfig(maxTotalPerNode, borrowTimeout)));
+    }
+
+    private static ConnectionPoolConfig poolConfig(int maxTotal, Duration borrowTimeout) {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxTotal);
+        config.setBlockWhenExhausted(true);
+        config.setMaxWait(borrowTimeout);
+        config.setJmxEnabled(false);
+        return config;
+    }
+
+    @Override
+    public <T> T execute(String key, Function<Jedis, T> action) {
+        int slot = JedisClusterCRC16.getSlot(key);
+        for (int attempt = 1; ; attempt++) {
+            try (Jedis jedis = new Jedis(cluster.getConnectionFromSlot(slot))) {
+                return action.apply(jedis);
+            } catch (JedisRedirectionException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                cluster.renewSlotCache();
+            }
+        }
+    }
+
+    @Override
+    public List<List<Integer>> groupByServer(List<String> keys) {
+        Map<Object, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            int slot = JedisClusterCRC16.getSlot(keys.get(i));
+            HostAndPort node = cluster.getNode(slot);
+            // A slot missing from the cache is grouped on its own and routed when executed
+            Object group = node != null ? node : slot;
+            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    @Override
+    public boolean isCluster() {
+        return true;
+    }
+
+    /**
+     * Closes the connection pools of all cluster nodes.
+     */
+    @Override
+    public void close() {
+        cluster.close();
+    }
+}
@@ -0,0 +1,62 @@
+package com.ratelimiter;
+
+/**
+ * The outcome of a decision by a {@link CompositeRateLimiter}: whether the request was
+ * allowed by every level and, if not, the first level that rejected it.
+ */
+public final class CompositeDecision {
+    private final boolean allowed;
+    private final String rejectedLevel;
+    private final long remainingTokens;
+    private final long retryAfterMillis;
+
+    CompositeDecision(boolean allowed, String rejectedLevel, long remainingTokens, long retryAfterMillis) {
+        this.allowed = allowed;
+        this.rejectedLevel = rejectedLevel;
+        this.remainingTokens = remainingTokens;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return true if every level allowed the request, false if it should be rejected
+     */
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    /**
+     * @return The name of the innermost level that rejected the request, null if it was allowed
+     */
+    public String getRejectedLevel() {
+        return rejectedLevel;
+    }
+
+    /**
+     * @return The fewest tokens left over all levels if allowed, the tokens of the rejecting level otherwise
+     */
+    public long getRemainingTokens() {
+        return remainingTokens;
+    }
+
+    /**
+     * @return The number of milliseconds until every level would allow the request, 0 if it was allowed
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * @return The decision without the level, as returned by a single {@link RateLimiter}
+     */
+    public RateLimitDecision toDecision() {
+        return allowed ? RateLimitDecision.allowed(remainingTokens) : RateLimitDecision.denied(remainingTokens, retryAfterMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeDecision{allowed=" + allowed
+                + ", rejectedLevel=" + rejectedLevel
+                + ", remainingTokens=" + remainingTokens
+                + ", retryAfterMillis=" + retryAfterMillis + "}";
+    }
+}
@@ -0,0 +1,187 @@
+package com.ratelimiter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rate limiter enforcing several nested limits at once, for example per client, per
+ * organization and global.
+ *
+ * Composing {@link TokenBucketRateLimiter} calls costs a round trip per level and can debit
+ * an inner bucket even though an outer one then rejects the request. Here one script refills
+ * and checks the bucket of every level and consumes from all of them or none, so a decision
+ * costs a single round trip whatever the number of levels, and reports which level rejected.
+ *
+ * Each level has its own capacity and refill rate, and a request names one bucket per level.
+ * Buckets are stored like those of {@link TokenBucketRateLimiter}, under
+ * {@code rate_limiter:<level>:<id>}, and expire once refilled to capacity. On Redis Cluster
+ * every key of a request is hash-tagged with the id of the outermost level, so the script's
+ * keys share a slot; a global level therefore keeps all its chains on one node, which it
+ * would occupy anyway as a single key.
+ */
+public class CompositeRateLimiter {
+    private static final RedisScript COMPOSITE_SCRIPT = RedisScript.fromResource("composite_token_bucket.lua");
+
+    private final JedisConnectionProvider connections;
+    private final List<Level> levels;
+    private final int maxPermits;
+    private volatile RateLimiterListener listener = RateLimiterListener.NONE;
+
+    /**
+     * A level of a composite limit.
+     */
+    public static final class Level {
+        private final String name;
+        private final int capacity;
+        private final int refillRate;
+
+        /**
+         * Constructs a new Level.
+         *
+         * @param name The name of the level, part of its keys and reported when it rejects a request
+         * @param capacity The maximum number of tokens each bucket of the level can hold
+         * @param refillRate The number of tokens added to each bucket per second
+         */
+        public Level(String name, int capacity, int refillRate) {
+            if (capacity < 1 || refillRate < 1) {
+                throw new IllegalArgumentException("capacity and refillRate must be positive");
+            }
+            this.name = name;
+            this.capacity = capacity;
+            this.refillRate = refillRate;
+        }
+
+        /**
+         * @return The name of the level
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The maximum number of tokens each bucket of the level can hold
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * @return The number of tokens added to each bucket per second
+         */
+        public int getRefillRate() {
+            return refillRate;
+        }
+    }
+
+    /**
+     * Constructs a new CompositeRateLimiter.
+     *
+     * @param connections The provider of Redis connections, typically a {@link PooledConnectionProvider}
+     * @param levels The levels to enforce, innermost first, e.g. client, organization, global
+     */
+    public CompositeRateLimiter(JedisConnectionProvider connections, List<Level> levels) {
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("At least one level is required");
+        }
+        this.connections = connections;
+        this.levels = List.copyOf(levels);
+        this.maxPermits = this.levels.stream().mapToInt(Level::getCapacity).min().getAsInt();
+    }
+
+    /**
+     * Checks if a request is allowed by every level.
+     *
+     * @param ids The bucket of each level, in the order of the levels
+     * @return true if the request is allowed, false if it should be rejected
+     */
+    public boolean isAllowed(List<String> ids) {
+        return tryConsume(ids, 1).isAllowed();
+    }
+
+    /**
+     * Attempts to consume a single token from the bucket of every level.
+     *
+     * @param ids The bucket of each level, in the order of the levels
+     * @return The decision
+     */
+    public CompositeDecision tryConsume(List<String> ids) {
+        return tryConsume(ids, 1);
+    }
+
+    /**
+     * Attempts to consume the given number of tokens from the bucket of every level, all or
+     * nothing: a request rejected by any level consumes nothing from the others.
+     *
+     * @param ids The bucket of each level, in the order of the levels, e.g. the client id,
+     *            its organization id and a constant for a global level
+     * @param permits The number of tokens the request costs, between 1 and the smallest capacity
+     * @return The decision, naming the innermost level that rejected the request
+     * @throws IllegalArgumentException if there is not one id per level, or permits is out of range
+     */
+    public CompositeDecision tryConsume(List<String> ids, int permits) {
+        if (ids.size() != levels.size()) {
+            throw new IllegalArgumentException("Expected one id per level, " + levels.size() + ", got " + ids.size());
+        }
+        if (permits < 1 || permits > maxPermits) {
+            throw new IllegalArgumentException(
+                    "permits must be between 1 and the smallest capacity " + maxPermits + ", was " + permits);
+        }
+        List<String> keys = getKeys(ids);
+        List<String> args = new ArrayList<>(2 + 2 * levels.size());
+        args.add(String.valueOf(Instant.now().toEpochMilli()));
+        args.add(String.valueOf(permits));
+        for (Level level : levels) {
+            args.add(String.valueOf(level.capacity));
+            args.add(String.valueOf(level.refillRate));
+        }
+
+        long start = System.nanoTime();
+        Object reply = connections.execute(keys.get(0), jedis -> COMPOSITE_SCRIPT.eval(jedis, keys, args));
+        listener.onRoundTrip(1);
+        CompositeDecision decision = toDecision(reply);
+        listener.onDecision(ids.get(0), permits, decision.isAllowed(), System.nanoTime() - start);
+        return decision;
+    }
+
+    /**
+     * @return The levels enforced, innermost first
+     */
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Sets the listener notified of decisions and Redis round trips. Decisions are reported
+     * for the id of the innermost level.
+     *
+     * @param listener The listener, or {@link RateLimiterListener#NONE} to stop reporting
+     */
+    public void setListener(RateLimiterListener listener) {
+        this.listener = listener;
+    }
+
+    private List<String> getKeys(List<String> ids) {
+        String tag = connections.isCluster() ? "{" + ids.get(ids.size() - 1) + "}:" : "";
+        List<String> keys = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            keys.add("rate_limiter:" + tag + levels.get(i).name + ":" + ids.get(i));
+        }
+        return keys;
+    }
+
+    /**
+     * Converts the {allowed, rejecting level, remaining, retry after} reply of the composite script.
+     *
+     * @param reply The raw script reply
+     * @return The decision
+     */
+    private CompositeDecision toDecision(Object reply) {
+        List<?> result = (List<?>) reply;
+        boolean allowed = ((Long) result.get(0)) == 1L;
+        int rejected = ((Long) result.get(1)).intValue();
+        long remaining = (Long) result.get(2);
+        long retryAfter = (Long) result.get(3);
+        return new CompositeDecision(allowed, rejected > 0 ? levels.get(rejected - 1).name : null, remaining, retryAfter);
+    }
+}
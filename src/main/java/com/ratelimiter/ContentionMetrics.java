@@ -0,0 +1,172 @@
+package com.ratelimiter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing how contended the WATCH/MULTI transactions of a limiter are.
+ *
+ * An abort is a transaction that was discarded by Redis because a watched key changed,
+ * a retry is a new attempt after an abort and a give-up is a decision that was rejected
+ * because the retry budget was exhausted. Per-client counters are only created on the first
+ * abort, so uncontended clients cost nothing here.
+ *
+ * At most {@code maxClients} clients are tracked. A new client past that bound replaces the
+ * tracked client with the fewest aborts, whose counts then only remain in the totals, so the
+ * per-client counters keep the most contended clients in bounded memory.
+ */
+public final class ContentionMetrics {
+    private static final int DEFAULT_MAX_CLIENTS = 1000;
+
+    private final Counters totals = new Counters();
+    private final ConcurrentHashMap<String, Counters> perClient = new ConcurrentHashMap<>();
+    private final int maxClients;
+
+    public ContentionMetrics() {
+        this(DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * @param maxClients The number of clients with counters of their own
+     */
+    ContentionMetrics(int maxClients) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("maxClients must be positive");
+        }
+        this.maxClients = maxClients;
+    }
+
+    void recordAbort(String clientId) {
+        totals.aborts.increment();
+        countersFor(clientId).aborts.increment();
+    }
+
+    void recordRetry(String clientId) {
+        totals.retries.increment();
+        countersFor(clientId).retries.increment();
+    }
+
+    void recordGiveUp(String clientId) {
+        totals.giveUps.increment();
+        countersFor(clientId).giveUps.increment();
+    }
+
+    private Counters countersFor(String clientId) {
+        Counters counters = perClient.get(clientId);
+        if (counters != null) {
+            return counters;
+        }
+        // Only the first abort of a client takes the lock, and aborts are rare next to decisions
+        synchronized (perClient) {
+            counters = perClient.get(clientId);
+            if (counters == null) {
+                if (perClient.size() >= maxClients) {
+                    evictLeastContended();
+                }
+                counters = new Counters();
+                perClient.put(clientId, counters);
+            }
+            return counters;
+        }
+    }
+
+    private void evictLeastContended() {
+        String victim = null;
+        long fewest = Long.MAX_VALUE;
+        for (Map.Entry<String, Counters> entry : perClient.entrySet()) {
+            long aborts = entry.getValue().aborts.sum();
+            if (aborts < fewest) {
+                fewest = aborts;
+                victim = entry.getKey();
+            }
+        }
+        if (victim != null) {
+            perClient.remove(victim);
+        }
+    }
+
+    /**
+     * @return The counters summed over all clients
+     */
+    public Snapshot getTotals() {
+        return totals.snapshot();
+    }
+
+    /**
+     * @param clientId The client identifier
+     * @return The counters for the client, all zero if it never saw an aborted transaction or
+     *         was displaced by more contended clients
+     */
+    public Snapshot getClient(String clientId) {
+        Counters counters = perClient.get(clientId);
+        return counters != null ? counters.snapshot() : Snapshot.EMPTY;
+    }
+
+    /**
+     * @return The counters of the most contended clients, at most {@code maxClients} of them
+     */
+    public Map<String, Snapshot> getContendedClients() {
+        Map<String, Snapshot> result = new HashMap<>();
+        perClient.forEach((clientId, counters) -> result.put(clientId, counters.snapshot()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        synchronized (perClient) {
+            perClient.clear();
+        }
+        totals.aborts.reset();
+        totals.retries.reset();
+        totals.giveUps.reset();
+    }
+
+    private static final class Counters {
+        private final LongAdder aborts = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder giveUps = new LongAdder();
+
+        private Snapshot snapshot() {
+            return new Snapshot(aborts.sum(), retries.sum(), giveUps.sum());
+        }
+    }
+
+    /**
+     * A point-in-time copy of contention counters.
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, 0, 0);
+
+        private final long aborts;
+        private final long retries;
+        private final long giveUps;
+
+        private Snapshot(long aborts, long retries, long giveUps) {
+            this.aborts = aborts;
+            this.retries = retries;
+            this.giveUps = giveUps;
+        }
+
+        public long getAborts() {
+            return aborts;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getGiveUps() {
+            return giveUps;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{aborts=" + aborts + ", retries=" + retries + ", giveUps=" + giveUps + "}";
+        }
+    }
+}
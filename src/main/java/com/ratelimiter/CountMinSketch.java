@@ -0,0 +1,83 @@
+package com.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch: approximate per-key counts in a fixed amount of memory, whatever the
+ * number of keys.
+ *
+ * Each key is hashed into one counter per row. Adding increments those counters, and the
+ * estimate is the smallest of them, which never undercounts and overcounts only by what
+ * colliding keys added. Counters are atomic, so concurrent adds need no lock.
+ */
+final class CountMinSketch {
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param width The number of counters per row, rounded up to a power of two
+     * @param depth The number of rows, at most 4
+     */
+    CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("width must be positive and depth between 1 and " + SEEDS.length);
+        }
+        int size = 1;
+        while (size < width) {
+            size <<= 1;
+        }
+        this.depth = depth;
+        this.mask = size - 1;
+        this.counters = new AtomicLongArray(size * depth);
+    }
+
+    /**
+     * Adds one occurrence of the key.
+     *
+     * @param key The key
+     * @return The estimated count of the key, including this occurrence
+     */
+    long add(String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key The key
+     * @return The estimated count of the key
+     */
+    long estimate(String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves every counter, so that old occurrences weigh less than recent ones. Adds racing
+     * with the halving may be halved or not.
+     */
+    void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            long current;
+            do {
+                current = counters.get(i);
+            } while (current != 0 && !counters.compareAndSet(i, current, current >>> 1));
+        }
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B1;
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+}
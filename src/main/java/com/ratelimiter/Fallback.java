@@ -0,0 +1,67 @@
+package com.ratelimiter;
+
+/**
+ * How {@link ResilientRateLimiter} decides a request when Redis cannot: the call failed, ran
+ * past its deadline, or was not attempted because the circuit breaker is open.
+ */
+public final class Fallback {
+    private static final Fallback FAIL_OPEN = new Fallback(Mode.FAIL_OPEN, null);
+    private static final Fallback FAIL_CLOSED = new Fallback(Mode.FAIL_CLOSED, null);
+
+    private enum Mode {
+        FAIL_OPEN,
+        FAIL_CLOSED,
+        LOCAL
+    }
+
+    private final Mode mode;
+    private final LocalTokenBucketRateLimiter local;
+
+    private Fallback(Mode mode, LocalTokenBucketRateLimiter local) {
+        this.mode = mode;
+        this.local = local;
+    }
+
+    /**
+     * @return A fallback that allows every request, favouring availability over the limit
+     */
+    public static Fallback failOpen() {
+        return FAIL_OPEN;
+    }
+
+    /**
+     * @return A fallback that rejects every request, asking callers to retry once the
+     *         breaker lets a probe through
+     */
+    public static Fallback failClosed() {
+        return FAIL_CLOSED;
+    }
+
+    /**
+     * Creates a fallback that enforces an approximate limit in process. Its buckets are
+     * cleared when Redis recovers, so the next outage starts from full buckets.
+     *
+     * @param local The in-process limiter, usually sized to this instance's share of the limit
+     * @return The fallback
+     */
+    public static Fallback local(LocalTokenBucketRateLimiter local) {
+        return new Fallback(Mode.LOCAL, local);
+    }
+
+    RateLimitDecision decide(String clientId, int permits, long retryAfterMillis) {
+        switch (mode) {
+            case FAIL_OPEN:
+                return RateLimitDecision.allowed(0);
+            case FAIL_CLOSED:
+                return RateLimitDecision.denied(0, retryAfterMillis);
+            default:
+                return local.tryConsume(clientId, permits);
+        }
+    }
+
+    void onRecovered() {
+        if (local != null) {
+            local.reset();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel: completes many short delays with a single thread and constant work
+ * per timer, without a thread or a scheduled task per waiter.
+ *
+ * Time is cut into ticks. A timer is put in the slot of the tick it expires in, modulo the
+ * number of slots, with the number of whole turns of the wheel it still has to wait. The
+ * worker thread wakes once per tick and fires the timers of the current slot whose turns are
+ * over, so a timer fires at most one tick late and never early. The worker parks when no
+ * timer is pending.
+ *
+ * Timers are completed on the worker thread, so dependent stages attached with the non-async
+ * {@link CompletableFuture} methods run there too and must be short.
+ */
+public final class HashedTimerWheel implements AutoCloseable {
+    private static final Duration DEFAULT_TICK = Duration.ofMillis(1);
+    private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickNanos;
+    private final List<Timer>[] wheel;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private final Queue<Timer> added = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    // Only touched by the worker
+    private long tick;
+    private int scheduled;
+
+    /**
+     * Constructs a new HashedTimerWheel and starts its worker thread.
+     *
+     * @param tick The resolution of the timers, e.g. 1 millisecond
+     * @param ticksPerWheel The number of slots, rounded up to a power of two; delays up to
+     *                      {@code tick * ticksPerWheel} are found without a turn count
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(Duration tick, int ticksPerWheel) {
+        if (tick.toNanos() < 1 || ticksPerWheel < 1) {
+            throw new IllegalArgumentException("tick and ticksPerWheel must be positive");
+        }
+        this.tickNanos = tick.toNanos();
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, "rate-limiter-timer-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return The wheel shared by the limiters of this library, with a 1 millisecond tick
+     */
+    public static HashedTimerWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    private static final class Shared {
+        private static final HashedTimerWheel INSTANCE = new HashedTimerWheel(DEFAULT_TICK, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Returns a future completed once the given delay has elapsed.
+     *
+     * @param delayNanos The delay in nanoseconds
+     * @return The future, completed on the worker thread, or cancelled if the wheel is closed first
+     */
+    public CompletableFuture<Void> delay(long delayNanos) {
+        Timer timer = new Timer(System.nanoTime() - startNanos + Math.max(0, delayNanos));
+        if (!running) {
+            timer.cancel(true);
+            return timer;
+        }
+        added.add(timer);
+        LockSupport.unpark(worker);
+        if (!running && added.remove(timer)) {
+            // Closed concurrently, possibly after the worker cancelled what it found
+            timer.cancel(true);
+        }
+        return timer;
+    }
+
+    /**
+     * Stops the worker thread and cancels the pending timers.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            if (scheduled == 0 && added.isEmpty()) {
+                LockSupport.park(this);
+                // Nothing was due during the skipped ticks
+                tick = (System.nanoTime() - startNanos) / tickNanos;
+                continue;
+            }
+            long now = System.nanoTime() - startNanos;
+            // The slot of a tick fires once the tick is over
+            long end = (tick + 1) * tickNanos;
+            if (now < end) {
+                LockSupport.parkNanos(this, end - now);
+                continue;
+            }
+            transferAdded();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+        cancelAll();
+    }
+
+    private void transferAdded() {
+        Timer timer;
+        while ((timer = added.poll()) != null) {
+            long expiresAt = timer.deadline / tickNanos;
+            timer.remainingRounds = (expiresAt - tick) / wheel.length;
+            // A timer already due goes in the current slot
+            wheel[(int) (Math.max(expiresAt, tick) & mask)].add(timer);
+            scheduled++;
+        }
+    }
+
+    private void expire(List<Timer> slot) {
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timer timer = slot.get(i);
+            if (timer.remainingRounds <= 0) {
+                scheduled--;
+                timer.complete(null);
+            } else {
+                timer.remainingRounds--;
+                slot.set(kept++, timer);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private void cancelAll() {
+        Timer timer;
+        while ((timer = added.poll()) != null) {
+            timer.completeExceptionally(new CancellationException("Timer wheel closed"));
+        }
+        for (List<Timer> slot : wheel) {
+            for (Timer pending : slot) {
+                pending.completeExceptionally(new CancellationException("Timer wheel closed"));
+            }
+            slot.clear();
+        }
+    }
+
+    private static final class Timer extends CompletableFuture<Void> {
+        // Nanoseconds since the wheel started
+        private final long deadline;
+        private long remainingRounds;
+
+        private Timer(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
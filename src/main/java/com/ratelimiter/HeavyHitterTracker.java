@@ -0,0 +1,149 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the clients that are denied most often, in memory that does not grow with the number
+ * of clients.
+ *
+ * Every denial is added to a {@link CountMinSketch}. A client whose estimated count reaches
+ * {@code threshold} is a heavy hitter and enters a top-K table of at most {@code capacity}
+ * clients; when the table is full, the client with the smallest count makes room, as in the
+ * space-saving algorithm. Counts are halved every {@code decayInterval}, so a client that
+ * stops misbehaving drops out after a few intervals.
+ *
+ * Recording a denial is a few atomic increments. Only heavy hitters take the lock of the
+ * top-K table, and they are few by construction.
+ */
+public final class HeavyHitterTracker {
+    private static final int SKETCH_WIDTH = 4096;
+    private static final int SKETCH_DEPTH = 4;
+
+    private final long threshold;
+    private final int capacity;
+    private final long decayNanos;
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+    private final Map<String, Long> topK = new HashMap<>();
+    private final AtomicLong nextDecay;
+
+    /**
+     * A client in the top-K table.
+     */
+    public static final class HeavyHitter {
+        private final String clientId;
+        private final long estimatedDenials;
+
+        HeavyHitter(String clientId, long estimatedDenials) {
+            this.clientId = clientId;
+            this.estimatedDenials = estimatedDenials;
+        }
+
+        /**
+         * @return The client
+         */
+        public String getClientId() {
+            return clientId;
+        }
+
+        /**
+         * @return The estimated number of recent denials, with older intervals counting half as much each
+         */
+        public long getEstimatedDenials() {
+            return estimatedDenials;
+        }
+
+        @Override
+        public String toString() {
+            return clientId + "=" + estimatedDenials;
+        }
+    }
+
+    /**
+     * Constructs a new HeavyHitterTracker.
+     *
+     * @param threshold The estimated number of denials that makes a client a heavy hitter
+     * @param capacity The number of heavy hitters kept in the top-K table
+     * @param decayInterval How often counts are halved
+     */
+    public HeavyHitterTracker(long threshold, int capacity, Duration decayInterval) {
+        if (threshold < 1 || capacity < 1) {
+            throw new IllegalArgumentException("threshold and capacity must be positive");
+        }
+        this.threshold = threshold;
+        this.capacity = capacity;
+        this.decayNanos = decayInterval.toNanos();
+        this.nextDecay = new AtomicLong(System.nanoTime() + decayNanos);
+    }
+
+    /**
+     * Records a denial of the client.
+     *
+     * @param clientId The client that was denied
+     * @return true if the client is a heavy hitter
+     */
+    public boolean recordDenial(String clientId) {
+        decayIfDue();
+        long estimate = sketch.add(clientId);
+        if (estimate < threshold) {
+            return false;
+        }
+        synchronized (topK) {
+            if (topK.containsKey(clientId) || topK.size() < capacity) {
+                topK.put(clientId, estimate);
+                return true;
+            }
+            Map.Entry<String, Long> smallest = null;
+            for (Map.Entry<String, Long> entry : topK.entrySet()) {
+                if (smallest == null || entry.getValue() < smallest.getValue()) {
+                    smallest = entry;
+                }
+            }
+            if (smallest.getValue() < estimate) {
+                topK.remove(smallest.getKey());
+                topK.put(clientId, estimate);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param clientId The client
+     * @return The estimated number of recent denials of the client
+     */
+    public long estimateDenials(String clientId) {
+        return sketch.estimate(clientId);
+    }
+
+    /**
+     * @return The heavy hitters, most denied first
+     */
+    public List<HeavyHitter> getTopK() {
+        List<HeavyHitter> result = new ArrayList<>();
+        synchronized (topK) {
+            for (Map.Entry<String, Long> entry : topK.entrySet()) {
+                result.add(new HeavyHitter(entry.getKey(), entry.getValue()));
+            }
+        }
+        result.sort(Comparator.comparingLong(HeavyHitter::getEstimatedDenials).reversed());
+        return result;
+    }
+
+    private void decayIfDue() {
+        long due = nextDecay.get();
+        if (System.nanoTime() - due < 0 || !nextDecay.compareAndSet(due, due + decayNanos)) {
+            return;
+        }
+        sketch.halve();
+        synchronized (topK) {
+            // Clients whose halved count falls below the threshold are no longer heavy
+            topK.replaceAll((clientId, count) -> count >>> 1);
+            topK.values().removeIf(count -> count < threshold);
+        }
+    }
+}
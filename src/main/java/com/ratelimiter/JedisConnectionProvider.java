@@ -0,0 +1,53 @@
+package com.ratelimiter;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Supplies Redis connections to a rate limiter, chosen by the key they operate on.
+ *
+ * A {@link Jedis} connection is not thread-safe, so a provider hands a connection to exactly
+ * one caller at a time for the duration of {@link #execute(String, Function)}. A WATCH/MULTI
+ * transaction must run entirely within one call, because the watched keys are bound to the
+ * connection it was issued on. Providers of a single server, where any connection reaches
+ * every key, also implement {@link StandaloneConnectionProvider}.
+ */
+public interface JedisConnectionProvider {
+
+    /**
+     * Runs an action with exclusive use of a connection to the server that owns a key. Every
+     * key the action touches must hash to the same slot as this one.
+     *
+     * @param key A key the action operates on
+     * @param action The action to run; it must not keep a reference to the connection
+     * @param <T> The result type
+     * @return The result of the action
+     */
+    <T> T execute(String key, Function<Jedis, T> action);
+
+    /**
+     * Splits keys into groups that are served by the same server, so that a batch can be
+     * pipelined on one connection per group.
+     *
+     * @param keys The keys of a batch
+     * @return The indexes of the keys in each group; a single group for a standalone server
+     */
+    default List<List<Integer>> groupByServer(List<String> keys) {
+        List<Integer> all = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            all.add(i);
+        }
+        return List.of(all);
+    }
+
+    /**
+     * @return Whether keys are spread over the slots of a Redis Cluster, in which case the keys
+     *         of one bucket must share a hash tag
+     */
+    default boolean isCluster() {
+        return false;
+    }
+}
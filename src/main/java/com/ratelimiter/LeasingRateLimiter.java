@@ -0,0 +1,310 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A two-tier rate limiter that leases chunks of tokens from a Redis-backed
+ * {@link TokenBucketRateLimiter} and serves decisions from them in memory.
+ *
+ * Each node consumes {@code leaseSize} tokens from the shared bucket in one round trip and
+ * then answers requests locally with a lock-free decrement until the lease is used up or
+ * older than {@code maxStaleness}. Renewals are single-flight per client, so concurrent
+ * requests on one node never lease more than one chunk at a time.
+ *
+ * Because tokens are taken from the shared bucket before they are handed out, the global limit
+ * is never exceeded. The accuracy cost is in the other direction: tokens leased by one node
+ * cannot be used by another, and tokens still unused when a lease expires are lost. When the
+ * shared bucket holds less than a full lease, the refusal reports the tokens left: a request
+ * they cannot cover is denied without another round trip, and otherwise the node leases what
+ * is left. {@link LeaseMetrics} reports how many decisions were served locally and how many
+ * leased tokens went unused.
+ *
+ * Clients whose lease is used up or expired are dropped from the node every
+ * {@code maxStaleness}, so idle clients hold no memory.
+ */
+public class LeasingRateLimiter implements RateLimiter {
+    private final TokenBucketRateLimiter remote;
+    private final int leaseSize;
+    private final long maxStalenessNanos;
+    private final ConcurrentHashMap<String, LeaseHolder> leases = new ConcurrentHashMap<>();
+    private final LeaseMetrics metrics = new LeaseMetrics();
+    private final AtomicLong nextSweepNanos;
+
+    /**
+     * Constructs a new LeasingRateLimiter.
+     *
+     * @param remote The shared limiter to lease tokens from
+     * @param leaseSize The number of tokens taken from the shared bucket per lease, at most its capacity
+     * @param maxStaleness How long leased tokens may be served locally before they expire
+     */
+    public LeasingRateLimiter(TokenBucketRateLimiter remote, int leaseSize, Duration maxStaleness) {
+        if (leaseSize < 1 || leaseSize > remote.getCapacity()) {
+            throw new IllegalArgumentException(
+                    "leaseSize must be between 1 and the capacity " + remote.getCapacity() + ", was " + leaseSize);
+        }
+        this.remote = remote;
+        this.leaseSize = leaseSize;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.nextSweepNanos = new AtomicLong(System.nanoTime() + maxStalenessNanos);
+    }
+
+    @Override
+    public RateLimitDecision tryConsume(String clientId, int permits) {
+        LeaseHolder holder = holder(clientId);
+        RateLimitDecision local = tryLocal(holder, permits);
+        return local != null ? local : renewAndConsume(clientId, holder, permits);
+    }
+
+    /**
+     * Decisions served from a lease complete immediately on the calling thread; only renewals
+     * go to Redis on a virtual thread.
+     */
+    @Override
+    public CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId, int permits) {
+        LeaseHolder holder = holder(clientId);
+        RateLimitDecision local = tryLocal(holder, permits);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        return CompletableFuture.supplyAsync(() -> renewAndConsume(clientId, holder, permits), Thread::startVirtualThread);
+    }
+
+    private LeaseHolder holder(String clientId) {
+        LeaseHolder holder = leases.get(clientId);
+        if (holder == null) {
+            holder = leases.computeIfAbsent(clientId, k -> new LeaseHolder());
+        }
+        return holder;
+    }
+
+    /**
+     * @return The decision if the permits could be taken from the current lease, null otherwise
+     */
+    private RateLimitDecision tryLocal(LeaseHolder holder, int permits) {
+        long remaining = holder.current.tryTake(permits, System.nanoTime());
+        if (remaining < 0) {
+            return null;
+        }
+        metrics.localDecisions.increment();
+        return RateLimitDecision.allowed(remaining);
+    }
+
+    /**
+     * Leases a new chunk of tokens for the client and takes the permits from it. Only one
+     * thread per client renews at a time; the others re-check the lease it installed. A lock
+     * rather than a monitor is used, so a virtual thread waiting on Redis here does not pin
+     * its carrier thread.
+     */
+    private RateLimitDecision renewAndConsume(String clientId, LeaseHolder holder, int permits) {
+        long now = System.nanoTime();
+        if (now - nextSweepNanos.get() >= 0) {
+            evictIdleHolders(now);
+        }
+        holder.lock.lock();
+        try {
+            if (holder.evicted) {
+                // Dropped while this thread was waiting; renew into the client's current holder
+                return renewAndConsume(clientId, holder(clientId), permits);
+            }
+            now = System.nanoTime();
+            Lease previous = holder.current;
+            long remaining = previous.tryTake(permits, now);
+            if (remaining >= 0) {
+                metrics.localDecisions.increment();
+                return RateLimitDecision.allowed(remaining);
+            }
+
+            long carried = 0;
+            if (previous.isExpired(now)) {
+                metrics.tokensExpired.add(previous.drain());
+            } else {
+                // A live lease too small for this request is merged into the next one
+                carried = previous.drain();
+            }
+
+            long needed = permits - carried;
+            int size = (int) Math.min(Math.max(leaseSize, needed), remote.getCapacity());
+            metrics.remoteDecisions.increment();
+            RateLimitDecision lease = remote.tryConsume(clientId, size);
+            if (lease.isAllowed()) {
+                return install(holder, carried, size, permits, now);
+            }
+
+            // The shared bucket holds less than a lease; its refusal says how much it does hold
+            metrics.leaseDenials.increment();
+            long available = lease.getRemainingTokens();
+            if (size > needed && available >= needed) {
+                // Lease what is left, which covers this request unless another node took it meanwhile
+                size = (int) available;
+                metrics.remoteDecisions.increment();
+                lease = remote.tryConsume(clientId, size);
+                if (lease.isAllowed()) {
+                    return install(holder, carried, size, permits, now);
+                }
+            } else if (size > needed && lease.getRetryAfterMillis() > 0) {
+                // Denied without another round trip, retrying once the request's own tokens are in
+                long sooner = (size - needed) * 1000 / remote.getRefillRate();
+                lease = RateLimitDecision.denied(available, Math.max(1, lease.getRetryAfterMillis() - sooner));
+            }
+            holder.current = carried > 0 ? new Lease(carried, previous.expiresAtNanos) : Lease.EMPTY;
+            return lease;
+        } finally {
+            holder.lock.unlock();
+        }
+    }
+
+    private RateLimitDecision install(LeaseHolder holder, long carried, int size, int permits, long now) {
+        metrics.leases.increment();
+        metrics.tokensLeased.add(size);
+        long left = carried + size - permits;
+        holder.current = new Lease(left, now + maxStalenessNanos);
+        return RateLimitDecision.allowed(left);
+    }
+
+    /**
+     * Drops the clients whose lease is used up or expired. Expired tokens are counted as drift
+     * here, since no renewal will drain them. A holder being renewed is skipped, and one
+     * dropped under a waiting renewal is marked so that the renewal moves to a new holder.
+     */
+    private void evictIdleHolders(long now) {
+        long next = nextSweepNanos.get();
+        if (now - next < 0 || !nextSweepNanos.compareAndSet(next, now + maxStalenessNanos)) {
+            return;
+        }
+        leases.forEach((clientId, holder) -> {
+            if (!holder.lock.tryLock()) {
+                return;
+            }
+            try {
+                Lease lease = holder.current;
+                if (lease.isExpired(now) || lease.remaining.get() == 0) {
+                    holder.evicted = true;
+                    leases.remove(clientId, holder);
+                    if (lease != Lease.EMPTY) {
+                        metrics.tokensExpired.add(lease.drain());
+                    }
+                }
+            } finally {
+                holder.lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * @return The counters of local and remote decisions and of leased tokens
+     */
+    public LeaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static final class LeaseHolder {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Lease current = Lease.EMPTY;
+        /** Set under the lock once the holder was dropped from {@code leases}. */
+        private boolean evicted;
+    }
+
+    /**
+     * Tokens leased from the shared bucket, valid until their expiry.
+     */
+    private static final class Lease {
+        private static final Lease EMPTY = new Lease(0, Long.MIN_VALUE);
+
+        private final AtomicLong remaining;
+        private final long expiresAtNanos;
+
+        private Lease(long tokens, long expiresAtNanos) {
+            this.remaining = new AtomicLong(tokens);
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return this == EMPTY || now - expiresAtNanos >= 0;
+        }
+
+        /**
+         * @return The tokens left after taking the permits, or -1 if the lease is expired or too small
+         */
+        private long tryTake(int permits, long now) {
+            if (isExpired(now)) {
+                return -1;
+            }
+            while (true) {
+                long current = remaining.get();
+                if (current < permits) {
+                    return -1;
+                }
+                if (remaining.compareAndSet(current, current - permits)) {
+                    return current - permits;
+                }
+            }
+        }
+
+        private long drain() {
+            return remaining.getAndSet(0);
+        }
+    }
+
+    /**
+     * Counters describing how much work the local tier absorbs and how far it drifts from a
+     * perfectly shared bucket.
+     */
+    public static final class LeaseMetrics {
+        private final LongAdder localDecisions = new LongAdder();
+        private final LongAdder remoteDecisions = new LongAdder();
+        private final LongAdder leases = new LongAdder();
+        private final LongAdder leaseDenials = new LongAdder();
+        private final LongAdder tokensLeased = new LongAdder();
+        private final LongAdder tokensExpired = new LongAdder();
+
+        /**
+         * @return The number of decisions answered from a lease without contacting Redis
+         */
+        public long getLocalDecisions() {
+            return localDecisions.sum();
+        }
+
+        /**
+         * @return The number of calls made to Redis, for leases or direct decisions
+         */
+        public long getRemoteDecisions() {
+            return remoteDecisions.sum();
+        }
+
+        public long getLeases() {
+            return leases.sum();
+        }
+
+        /**
+         * @return The number of leases refused because the shared bucket held less than a lease
+         */
+        public long getLeaseDenials() {
+            return leaseDenials.sum();
+        }
+
+        public long getTokensLeased() {
+            return tokensLeased.sum();
+        }
+
+        /**
+         * @return The number of leased tokens that expired unused and were lost to every node
+         */
+        public long getTokensExpired() {
+            return tokensExpired.sum();
+        }
+
+        /**
+         * @return The fraction of leased tokens that expired unused, the under-admission drift
+         *         relative to a perfectly shared bucket
+         */
+        public double getDrift() {
+            long leased = tokensLeased.sum();
+            return leased > 0 ? (double) tokensExpired.sum() / leased : 0;
+        }
+    }
+}
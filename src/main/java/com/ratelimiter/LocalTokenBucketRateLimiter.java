@@ -0,0 +1,254 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-process token bucket limiter that needs no Redis, meant as a stand-in while Redis
+ * is unavailable.
+ *
+ * Each bucket is a single {@code long}: the instant at which it holds zero tokens. The tokens
+ * a bucket holds follow from how far that instant lies in the past, so a decision is one CAS
+ * and no refill timestamp has to be kept separately.
+ *
+ * Buckets are per process, so with several instances behind a load balancer the limit
+ * applies per instance. To approximate the shared limit, size the bucket to one instance's
+ * share, e.g. the shared capacity and refill rate divided by the number of instances.
+ *
+ * The limiter runs exactly while Redis is down, when every client id seen would otherwise stay
+ * in memory for good. A bucket that has refilled to capacity is the same as a missing one, so
+ * each new client sweeps a few buckets and drops the full ones. Beyond {@code maxBuckets},
+ * the bucket closest to full among a few sampled is evicted, and its client starts over with
+ * a full bucket.
+ */
+public class LocalTokenBucketRateLimiter implements RateLimiter {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int DEFAULT_MAX_BUCKETS = 1_000_000;
+    /** Marks a bucket dropped from the map; no real nanoTime takes this value. */
+    private static final long RETIRED = Long.MIN_VALUE;
+    /** Buckets examined for full ones on every new client. */
+    private static final int SWEEP_STEP = 4;
+    /** Buckets sampled to pick a victim when the limiter is full. */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final int capacity;
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final int maxBuckets;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final ReentrantLock maintenance = new ReentrantLock();
+    private Iterator<Map.Entry<String, AtomicLong>> cursor;
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * Constructs a new LocalTokenBucketRateLimiter holding up to 1,000,000 buckets.
+     *
+     * @param capacity The maximum number of tokens each bucket can hold
+     * @param refillRate The number of tokens added to each bucket per second
+     */
+    public LocalTokenBucketRateLimiter(int capacity, int refillRate) {
+        this(capacity, refillRate, DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Constructs a new LocalTokenBucketRateLimiter.
+     *
+     * @param capacity The maximum number of tokens each bucket can hold
+     * @param refillRate The number of tokens added to each bucket per second
+     * @param maxBuckets The number of clients tracked before the ones closest to a full bucket are evicted
+     */
+    public LocalTokenBucketRateLimiter(int capacity, int refillRate, int maxBuckets) {
+        if (capacity < 1 || refillRate < 1 || maxBuckets < 1) {
+            throw new IllegalArgumentException("capacity, refillRate and maxBuckets must be at least 1");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = NANOS_PER_SECOND / refillRate;
+        this.capacityNanos = capacity * nanosPerToken;
+        this.maxBuckets = maxBuckets;
+    }
+
+    @Override
+    public RateLimitDecision tryConsume(String clientId, int permits) {
+        return consume(clientId, permits, 0);
+    }
+
+    /**
+     * Reserves tokens refilled within {@code maxWait} by moving the bucket's zero instant
+     * into the future, so later requests wait behind the reservation.
+     */
+    @Override
+    public RateLimitDecision reserve(String clientId, int permits, Duration maxWait) {
+        return consume(clientId, permits, maxWait.toNanos());
+    }
+
+    private RateLimitDecision consume(String clientId, int permits, long maxWaitNanos) {
+        if (permits < 1 || permits > capacity) {
+            throw new IllegalArgumentException(
+                    "permits must be between 1 and the capacity " + capacity + ", was " + permits);
+        }
+        AtomicLong bucket = bucket(clientId);
+        long cost = permits * nanosPerToken;
+        while (true) {
+            long now = System.nanoTime();
+            long current = bucket.get();
+            if (current == RETIRED) {
+                // Dropped under us; a dropped bucket was full or evicted, so a new one is equivalent
+                buckets.remove(clientId, bucket);
+                bucket = bucket(clientId);
+                continue;
+            }
+            // A bucket that emptied longer ago than a full refill is simply full
+            long zeroAt = now - current > capacityNanos ? now - capacityNanos : current;
+            long next = zeroAt + cost;
+            long wait = next - now;
+            if (wait > 0 && wait > maxWaitNanos) {
+                return RateLimitDecision.denied(Math.max(0, now - zeroAt) / nanosPerToken, (wait + 999_999) / 1_000_000);
+            }
+            if (bucket.compareAndSet(current, next)) {
+                return wait > 0
+                        ? RateLimitDecision.reserved(0, (wait + 999_999) / 1_000_000)
+                        : RateLimitDecision.allowed((now - next) / nanosPerToken);
+            }
+        }
+    }
+
+    private AtomicLong bucket(String clientId) {
+        AtomicLong bucket = buckets.get(clientId);
+        if (bucket != null) {
+            return bucket;
+        }
+        AtomicLong created = new AtomicLong(System.nanoTime() - capacityNanos);
+        bucket = buckets.putIfAbsent(clientId, created);
+        if (bucket != null) {
+            return bucket;
+        }
+        maintain(created);
+        return created;
+    }
+
+    /**
+     * Drops a few full buckets and evicts down to {@code maxBuckets}. The sweep is skipped
+     * while another thread maintains the map, but an insert over the bound waits to evict, so
+     * the map only exceeds it by the number of threads inserting at once. The bucket just
+     * inserted is spared, since dropping it would only make its caller insert it again.
+     */
+    private void maintain(AtomicLong inserted) {
+        if (buckets.size() > maxBuckets) {
+            maintenance.lock();
+        } else if (!maintenance.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < SWEEP_STEP; i++) {
+                Map.Entry<String, AtomicLong> entry = next();
+                if (entry != null && entry.getValue() != inserted && retireIfFull(entry.getValue(), now)) {
+                    drop(entry, expired);
+                }
+            }
+            while (buckets.size() > maxBuckets) {
+                evictOne(now, inserted);
+            }
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    private void evictOne(long now, AtomicLong inserted) {
+        Map.Entry<String, AtomicLong> victim = null;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            Map.Entry<String, AtomicLong> entry = next();
+            if (entry == null || entry.getValue() == inserted) {
+                continue;
+            }
+            if (retireIfFull(entry.getValue(), now)) {
+                drop(entry, expired);
+                return;
+            }
+            // The earliest zero instant is the bucket that will be full soonest
+            if (victim == null || entry.getValue().get() - victim.getValue().get() < 0) {
+                victim = entry;
+            }
+        }
+        if (victim != null) {
+            victim.getValue().set(RETIRED);
+            drop(victim, evicted);
+        }
+    }
+
+    private boolean retireIfFull(AtomicLong bucket, long now) {
+        long current = bucket.get();
+        return current != RETIRED && now - current >= capacityNanos && bucket.compareAndSet(current, RETIRED);
+    }
+
+    private void drop(Map.Entry<String, AtomicLong> entry, LongAdder counter) {
+        if (buckets.remove(entry.getKey(), entry.getValue())) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * @return The next entry at the cursor, wrapping around at the end of the map
+     */
+    private Map.Entry<String, AtomicLong> next() {
+        if (cursor == null || !cursor.hasNext()) {
+            cursor = buckets.entrySet().iterator();
+            if (!cursor.hasNext()) {
+                return null;
+            }
+        }
+        return cursor.next();
+    }
+
+    /**
+     * Decides on the calling thread, since a decision never blocks.
+     */
+    @Override
+    public CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId, int permits) {
+        try {
+            return CompletableFuture.completedFuture(tryConsume(clientId, permits));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Forgets all buckets, so every client starts again with a full bucket.
+     */
+    public void reset() {
+        buckets.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of clients with a bucket
+     */
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * @return The number of buckets dropped after refilling to capacity, which loses no state
+     */
+    public long getExpiredBuckets() {
+        return expired.sum();
+    }
+
+    /**
+     * @return The number of buckets dropped to stay under {@code maxBuckets}; those clients
+     *         started over with a full bucket
+     */
+    public long getEvictedBuckets() {
+        return evicted.sum();
+    }
+}
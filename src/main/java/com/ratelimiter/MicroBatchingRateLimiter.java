@@ -0,0 +1,186 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A front-end for {@link TokenBucketRateLimiter} that coalesces concurrent single-client
+ * checks into pipelined batches.
+ *
+ * Callers enqueue their check and block until it is decided. A dispatcher thread collects
+ * the checks that arrive within a short window after the first one, up to a maximum batch
+ * size, and decides them all with {@link TokenBucketRateLimiter#tryConsumeAll(List)}. While a
+ * batch is in flight new checks queue up for the next one, so under load the number of Redis
+ * round trips grows with the number of batches instead of the number of checks.
+ *
+ * The window adds at most its own length to the latency of a check that arrives when the
+ * limiter is idle.
+ */
+public class MicroBatchingRateLimiter implements AutoCloseable {
+    private final TokenBucketRateLimiter delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingCheck> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a new MicroBatchingRateLimiter and starts its dispatcher thread.
+     *
+     * @param delegate The limiter that decides the batches
+     * @param window How long to wait for more checks after the first check of a batch, e.g. 200 microseconds
+     * @param maxBatchSize The maximum number of checks sent in one pipeline
+     */
+    public MicroBatchingRateLimiter(TokenBucketRateLimiter delegate, Duration window, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.delegate = delegate;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.dispatcher = new Thread(this::dispatchLoop, "rate-limiter-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Checks if a request from the specified client is allowed, blocking until the batch
+     * containing the check has been decided.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return true if the request is allowed, false if it should be rejected
+     */
+    public boolean isAllowed(String clientId) {
+        return tryConsume(clientId).isAllowed();
+    }
+
+    /**
+     * Attempts to consume a token for the specified client, blocking until the batch
+     * containing the check has been decided.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return The rate limiting decision
+     */
+    public RateLimitDecision tryConsume(String clientId) {
+        try {
+            return submit(clientId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Enqueues a check for the next batch without blocking.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return A future completed with the decision once the batch has been decided
+     */
+    public CompletableFuture<RateLimitDecision> submit(String clientId) {
+        if (!running) {
+            throw new IllegalStateException("Rate limiter is closed");
+        }
+        PendingCheck check = new PendingCheck(clientId);
+        queue.add(check);
+        // The dispatcher may have drained the queue for the last time while this check was added
+        if (!running && queue.remove(check)) {
+            check.result.completeExceptionally(new IllegalStateException("Rate limiter is closed"));
+        }
+        return check.result;
+    }
+
+    /**
+     * @return The number of batches sent to Redis so far
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return The average number of checks per batch so far
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count > 0 ? (double) checks.sum() / count : 0;
+    }
+
+    private void dispatchLoop() {
+        List<PendingCheck> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCheck first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCheck next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<PendingCheck> batch) {
+        List<String> clientIds = new ArrayList<>(batch.size());
+        for (PendingCheck check : batch) {
+            clientIds.add(check.clientId);
+        }
+        batches.increment();
+        checks.add(batch.size());
+        try {
+            List<RateLimitDecision> decisions = delegate.tryConsumeAll(clientIds);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(decisions.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (PendingCheck check : batch) {
+                check.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting checks, decides the checks already queued and stops the dispatcher.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class PendingCheck {
+        private final String clientId;
+        private final CompletableFuture<RateLimitDecision> result = new CompletableFuture<>();
+
+        private PendingCheck(String clientId) {
+            this.clientId = clientId;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.ratelimiter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A connection provider backed by a {@link JedisPool}, allowing a single rate limiter
+ * instance to serve many request threads concurrently.
+ *
+ * Each call borrows a connection for its duration and returns it afterwards. When all
+ * connections are in use, callers wait up to the configured borrow timeout and then fail
+ * with a {@link JedisException}; such failures are counted in the pool metrics.
+ */
+public class PooledConnectionProvider implements StandaloneConnectionProvider, AutoCloseable {
+    private static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 2000;
+
+    private final JedisPool pool;
+    private final int maxTotal;
+    private final LongAdder borrowFailures = new LongAdder();
+
+    /**
+     * Constructs a new PooledConnectionProvider around an existing pool.
+     *
+     * @param pool The pool to borrow connections from
+     * @param maxTotal The maximum number of connections of the pool, used to report utilization
+     */
+    public PooledConnectionProvider(JedisPool pool, int maxTotal) {
+        this.pool = pool;
+        this.maxTotal = maxTotal;
+    }
+
+    /**
+     * Constructs a new PooledConnectionProvider with its own pool.
+     *
+     * @param host The Redis host
+     * @param port The Redis port
+     * @param maxTotal The maximum number of connections in the pool
+     * @param minIdle The number of idle connections kept open for bursts
+     * @param borrowTimeout How long a caller waits for a free connection before failing
+     */
+    public PooledConnectionProvider(String host, int port, int maxTotal, int minIdle, Duration borrowTimeout) {
+        this(new JedisPool(poolConfig(maxTotal, minIdle, borrowTimeout), host, port, DEFAULT_SOCKET_TIMEOUT_MILLIS),
+                maxTotal);
+    }
+
+    private static JedisPoolConfig poolConfig(int maxTotal, int minIdle, Duration borrowTimeout) {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxTotal);
+        config.setMinIdle(minIdle);
+        config.setBlockWhenExhausted(true);
+        config.setMaxWait(borrowTimeout);
+        config.setJmxEnabled(false);
+        return config;
+    }
+
+    @Override
+    public <T> T execute(Function<Jedis, T> action) {
+        Jedis jedis;
+        try {
+            jedis = pool.getResource();
+        } catch (JedisException e) {
+            borrowFailures.increment();
+            throw e;
+        }
+        try (jedis) {
+            return action.apply(jedis);
+        }
+    }
+
+    /**
+     * @return A snapshot of the pool utilization
+     */
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(
+                pool.getNumActive(),
+                pool.getNumIdle(),
+                pool.getNumWaiters(),
+                maxTotal,
+                pool.getMeanBorrowWaitTimeMillis(),
+                pool.getMaxBorrowWaitTimeMillis(),
+                borrowFailures.sum());
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * A point-in-time view of the connection pool.
+     */
+    public static final class PoolMetrics {
+        private final int active;
+        private final int idle;
+        private final int waiters;
+        private final int maxTotal;
+        private final long meanBorrowWaitMillis;
+        private final long maxBorrowWaitMillis;
+        private final long borrowFailures;
+
+        private PoolMetrics(int active, int idle, int waiters, int maxTotal,
+                            long meanBorrowWaitMillis, long maxBorrowWaitMillis, long borrowFailures) {
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
+            this.maxTotal = maxTotal;
+            this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+            this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+            this.borrowFailures = borrowFailures;
+        }
+
+        /**
+         * @return The number of connections currently borrowed
+         */
+        public int getActive() {
+            return active;
+        }
+
+        /**
+         * @return The number of open connections waiting in the pool
+         */
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * @return The number of threads currently waiting for a connection
+         */
+        public int getWaiters() {
+            return waiters;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        /**
+         * @return The fraction of the pool that is borrowed, between 0 and 1
+         */
+        public double getUtilization() {
+            return maxTotal > 0 ? (double) active / maxTotal : 0;
+        }
+
+        public long getMeanBorrowWaitMillis() {
+            return meanBorrowWaitMillis;
+        }
+
+        public long getMaxBorrowWaitMillis() {
+            return maxBorrowWaitMillis;
+        }
+
+        /**
+         * @return The number of calls that failed because no connection could be borrowed in time
+         */
+        public long getBorrowFailures() {
+            return borrowFailures;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolMetrics{active=" + active + ", idle=" + idle + ", waiters=" + waiters
+                    + ", maxTotal=" + maxTotal + ", meanBorrowWaitMillis=" + meanBorrowWaitMillis
+                    + ", maxBorrowWaitMillis=" + maxBorrowWaitMillis + ", borrowFailures=" + borrowFailures + "}";
+        }
+    }
+}
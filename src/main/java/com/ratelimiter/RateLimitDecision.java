@@ -0,0 +1,82 @@
+package com.ratelimiter;
+
+/**
+ * The outcome of a single rate limiting decision.
+ *
+ * Besides whether the request was allowed, a decision carries the number of tokens left
+ * in the bucket and, for rejected requests, how long the caller should wait before the
+ * same request would be allowed. A reservation, see {@link RateLimiter#reserve}, is allowed
+ * with a wait: the tokens are taken, but only become available after that time.
+ */
+public final class RateLimitDecision {
+    private final boolean allowed;
+    private final long remainingTokens;
+    private final long retryAfterMillis;
+
+    private RateLimitDecision(boolean allowed, long remainingTokens, long retryAfterMillis) {
+        this.allowed = allowed;
+        this.remainingTokens = remainingTokens;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Creates a decision for an allowed request.
+     *
+     * @param remainingTokens The number of tokens left after consumption
+     * @return The decision
+     */
+    public static RateLimitDecision allowed(long remainingTokens) {
+        return new RateLimitDecision(true, remainingTokens, 0);
+    }
+
+    /**
+     * Creates a decision for a request granted tokens that will only be available later.
+     *
+     * @param remainingTokens The number of tokens left after consumption
+     * @param waitMillis The number of milliseconds the caller must wait before proceeding
+     * @return The decision
+     */
+    public static RateLimitDecision reserved(long remainingTokens, long waitMillis) {
+        return new RateLimitDecision(true, remainingTokens, waitMillis);
+    }
+
+    /**
+     * Creates a decision for a rejected request.
+     *
+     * @param remainingTokens The number of tokens currently in the bucket
+     * @param retryAfterMillis The number of milliseconds until the request would be allowed
+     * @return The decision
+     */
+    public static RateLimitDecision denied(long remainingTokens, long retryAfterMillis) {
+        return new RateLimitDecision(false, remainingTokens, retryAfterMillis);
+    }
+
+    /**
+     * @return true if the request is allowed, false if it should be rejected
+     */
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    /**
+     * @return The number of tokens left in the bucket after this decision
+     */
+    public long getRemainingTokens() {
+        return remainingTokens;
+    }
+
+    /**
+     * @return The number of milliseconds until the request would be allowed if it was rejected,
+     *         the wait before proceeding if it was reserved, 0 if it was allowed right away
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitDecision{allowed=" + allowed
+                + ", remainingTokens=" + remainingTokens
+                + ", retryAfterMillis=" + retryAfterMillis + "}";
+    }
+}
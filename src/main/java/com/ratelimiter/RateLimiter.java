@@ -0,0 +1,130 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A rate limiter that decides, per client, whether a request may proceed.
+ *
+ * All limiters in this library share this API, so engines can be swapped or layered
+ * (for example a local tier in front of Redis) without changing callers.
+ *
+ * The blocking methods hold the calling thread for a Redis round trip. The async variants run
+ * the call on a virtual thread instead, so that tens of thousands of checks can be in flight
+ * without a platform thread each; a virtual thread blocked on a socket releases its carrier.
+ *
+ * Callers that would rather wait than be rejected use {@link #acquire}, which reserves
+ * tokens that are not there yet and waits until they are, instead of polling.
+ */
+public interface RateLimiter {
+
+    /**
+     * Attempts to consume the given number of tokens for the specified client, all or nothing.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs
+     * @return The rate limiting decision
+     */
+    RateLimitDecision tryConsume(String clientId, int permits);
+
+    /**
+     * Attempts to consume a single token for the specified client.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return The rate limiting decision
+     */
+    default RateLimitDecision tryConsume(String clientId) {
+        return tryConsume(clientId, 1);
+    }
+
+    /**
+     * Checks if a request from the specified client is allowed under the rate limit.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return true if the request is allowed, false if it should be rejected
+     */
+    default boolean isAllowed(String clientId) {
+        return tryConsume(clientId).isAllowed();
+    }
+
+    /**
+     * Attempts to consume the given number of tokens for the specified client on a virtual
+     * thread, without blocking the caller.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs
+     * @return A future completed with the rate limiting decision, or exceptionally if the check failed
+     */
+    default CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId, int permits) {
+        return CompletableFuture.supplyAsync(() -> tryConsume(clientId, permits), Thread::startVirtualThread);
+    }
+
+    /**
+     * Attempts to consume a single token for the specified client without blocking the caller.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return A future completed with the rate limiting decision
+     */
+    default CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId) {
+        return tryConsumeAsync(clientId, 1);
+    }
+
+    /**
+     * Checks if a request from the specified client is allowed without blocking the caller.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return A future completed with true if the request is allowed, false if it should be rejected
+     */
+    default CompletableFuture<Boolean> isAllowedAsync(String clientId) {
+        return tryConsumeAsync(clientId).thenApply(RateLimitDecision::isAllowed);
+    }
+
+    /**
+     * Attempts to consume the given number of tokens, accepting tokens that will only be
+     * available within {@code maxWait}. A granted reservation is taken from the bucket at once,
+     * ahead of later requests, and its decision reports how long to wait before proceeding.
+     * A request that cannot be granted within {@code maxWait} consumes nothing.
+     *
+     * Limiters that cannot reserve future tokens grant only what is available now, as
+     * {@link #tryConsume(String, int)}; {@link #acquire} then waits for the retry-after time
+     * and tries again.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs
+     * @param maxWait The longest wait the caller accepts
+     * @return The rate limiting decision, allowed with a wait if tokens were reserved
+     */
+    default RateLimitDecision reserve(String clientId, int permits, Duration maxWait) {
+        return tryConsume(clientId, permits);
+    }
+
+    /**
+     * Waits until the given number of tokens can be consumed, for at most {@code maxWait}.
+     * With a limiter that reserves, this is a single limiter call followed by a sleep, so
+     * callers are smoothed to the rate without polling. The sleep releases the carrier of a
+     * virtual thread.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs
+     * @param maxWait The longest time to wait
+     * @return true once the tokens are consumed, false if they could not be had within maxWait
+     * @throws InterruptedException if interrupted while waiting; reserved tokens are not returned
+     */
+    default boolean acquire(String clientId, int permits, Duration maxWait) throws InterruptedException {
+        return Acquisition.await(this, clientId, permits, maxWait);
+    }
+
+    /**
+     * Like {@link #acquire}, without blocking the caller: waits are timers on the
+     * {@link HashedTimerWheel#shared() shared timer wheel}, so a waiting caller holds no thread.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs
+     * @param maxWait The longest time to wait
+     * @return A future completed with true once the tokens are consumed, false if they could
+     *         not be had within maxWait, or exceptionally if a check failed
+     */
+    default CompletableFuture<Boolean> acquireAsync(String clientId, int permits, Duration maxWait) {
+        return Acquisition.schedule(this, clientId, permits, System.nanoTime() + maxWait.toNanos(), HashedTimerWheel.shared());
+    }
+}
@@ -0,0 +1,50 @@
+package com.ratelimiter;
+
+/**
+ * Receives instrumentation events from a {@link TokenBucketRateLimiter}, e.g. to feed a
+ * metrics library.
+ *
+ * Events are plain method calls with primitive arguments on the thread that made the
+ * decision, so the limiter allocates nothing to report them. Implementations run on the hot
+ * path: keep them cheap, thread-safe and free of blocking, for example by incrementing
+ * pre-registered counters. Every method does nothing by default.
+ */
+public interface RateLimiterListener {
+
+    /**
+     * A listener that ignores every event, used when none is set.
+     */
+    RateLimiterListener NONE = new RateLimiterListener() {
+    };
+
+    /**
+     * Called once per decision, including each entry of a batch.
+     *
+     * @param clientId The client the decision was made for
+     * @param permits The number of tokens requested
+     * @param allowed Whether the request was allowed
+     * @param latencyNanos The time taken by the call that made the decision; for a batch, the
+     *                     whole batch
+     */
+    default void onDecision(String clientId, int permits, boolean allowed, long latencyNanos) {
+    }
+
+    /**
+     * Called once per network round trip to Redis: a script call, a pipelined batch, or
+     * each command sent while running a transaction.
+     *
+     * @param commands The number of commands sent in the round trip
+     */
+    default void onRoundTrip(int commands) {
+    }
+
+    /**
+     * Called when a WATCH/MULTI transaction was aborted because another client changed the
+     * bucket concurrently.
+     *
+     * @param clientId The client whose transaction was aborted
+     * @param attempt The attempt that was aborted, starting at 1
+     */
+    default void onTransactionAbort(String clientId, int attempt) {
+    }
+}
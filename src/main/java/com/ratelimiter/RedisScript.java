@@ -0,0 +1,153 @@
+package com.ratelimiter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.commands.ScriptingKeyCommands;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Lua script executed on the Redis server.
+ *
+ * The SHA1 digest of the script is computed once on the client so every call can be sent
+ * with EVALSHA, which only transfers the digest. If the server does not have the script
+ * cached (after a restart, failover or SCRIPT FLUSH) the call falls back to EVAL, which
+ * runs the full source and caches it again for subsequent calls.
+ */
+final class RedisScript {
+    private final String source;
+    private final String sha1;
+
+    private RedisScript(String source) {
+        this.source = source;
+        this.sha1 = sha1Hex(source);
+    }
+
+    /**
+     * Loads a script from a classpath resource located next to this class.
+     *
+     * @param name The resource name, relative to the {@code com.ratelimiter} package
+     * @return The loaded script
+     */
+    static RedisScript fromResource(String name) {
+        try (InputStream in = RedisScript.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing Redis script resource: " + name);
+            }
+            return new RedisScript(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read Redis script resource: " + name, e);
+        }
+    }
+
+    /**
+     * Executes the script with EVALSHA, falling back to EVAL if the server reports NOSCRIPT.
+     *
+     * @param redis The Redis client to run the script on
+     * @param keys The keys accessed by the script
+     * @param args The script arguments
+     * @return The raw script reply
+     */
+    Object eval(ScriptingKeyCommands redis, List<String> keys, List<String> args) {
+        try {
+            return redis.evalsha(sha1, keys, args);
+        } catch (JedisNoScriptException e) {
+            return redis.eval(source, keys, args);
+        }
+    }
+
+    /**
+     * Executes the script once per entry in a single pipeline, so the whole batch costs one
+     * network flush. Entries rejected with NOSCRIPT did not run, so they are sent again with
+     * EVAL, which also caches the script for subsequent calls. Entries redirected by a Redis
+     * Cluster node did not run either; they are left to the caller to route again.
+     *
+     * @param jedis The connection to pipeline on
+     * @param keys The keys for each execution
+     * @param args The arguments for each execution
+     * @return The raw script replies, in the same order as the inputs, null for redirected entries
+     */
+    List<Object> evalPipelined(Jedis jedis, List<List<String>> keys, List<List<String>> args) {
+        int size = keys.size();
+        List<Response<Object>> responses = new ArrayList<>(size);
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < size; i++) {
+                responses.add(pipeline.evalsha(sha1, keys.get(i), args.get(i)));
+            }
+            pipeline.sync();
+        }
+
+        List<Object> results = new ArrayList<>(size);
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            try {
+                results.add(responses.get(i).get());
+            } catch (JedisRedirectionException e) {
+                results.add(null);
+            } catch (JedisDataException e) {
+                if (!isNoScript(e)) {
+                    throw e;
+                }
+                results.add(null);
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        List<Response<Object>> retried = new ArrayList<>(missing.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (int i : missing) {
+                retried.add(pipeline.eval(source, keys.get(i), args.get(i)));
+            }
+            pipeline.sync();
+        }
+        for (int j = 0; j < missing.size(); j++) {
+            try {
+                results.set(missing.get(j), retried.get(j).get());
+            } catch (JedisRedirectionException e) {
+                // Left null, like a redirected EVALSHA
+            }
+        }
+        return results;
+    }
+
+    private static boolean isNoScript(JedisDataException e) {
+        return e instanceof JedisNoScriptException
+                || (e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT"));
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    String getSha1() {
+        return sha1;
+    }
+
+    private static String sha1Hex(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps a Redis-backed limiter so that its latency stays bounded when Redis does not.
+ *
+ * Each call runs on a virtual thread and is given {@code deadline} to complete. A call that
+ * fails or runs past its deadline counts against a {@link CircuitBreaker}; while the breaker
+ * is open Redis is not contacted at all. Requests that Redis could not decide are decided by
+ * the {@link Fallback}: allowed, rejected, or checked against an in-process bucket.
+ *
+ * A call that ran past its deadline is abandoned, not interrupted, since interrupting a
+ * thread blocked on a socket closes the connection. It finishes in the background within the
+ * connection's socket timeout, so that timeout should be set not far above the deadline. If
+ * it still reaches Redis, its tokens are consumed even though the caller was answered by the
+ * fallback.
+ */
+public class ResilientRateLimiter implements RateLimiter, AutoCloseable {
+    private final RateLimiter remote;
+    private final long deadlineNanos;
+    private final CircuitBreaker breaker;
+    private final Fallback fallback;
+    private final ExecutorService executor;
+    private final FallbackMetrics metrics = new FallbackMetrics();
+
+    /**
+     * Constructs a new ResilientRateLimiter.
+     *
+     * @param remote The limiter to protect, usually a {@link TokenBucketRateLimiter}
+     * @param deadline How long a single call may take before the fallback decides instead
+     * @param breaker The circuit breaker guarding calls to the remote limiter
+     * @param fallback How to decide requests that the remote limiter could not
+     */
+    public ResilientRateLimiter(RateLimiter remote, Duration deadline, CircuitBreaker breaker, Fallback fallback) {
+        this.remote = remote;
+        this.deadlineNanos = deadline.toNanos();
+        this.breaker = breaker;
+        this.fallback = fallback;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Override
+    public RateLimitDecision tryConsume(String clientId, int permits) {
+        if (!breaker.tryAcquire()) {
+            metrics.shortCircuited.increment();
+            return fallback(clientId, permits);
+        }
+
+        Future<RateLimitDecision> call = executor.submit(() -> remote.tryConsume(clientId, permits));
+        try {
+            return onDecision(call.get(deadlineNanos, TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            call.cancel(false);
+            return onError(clientId, permits, e);
+        } catch (ExecutionException e) {
+            return onError(clientId, permits, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            call.cancel(false);
+            return onError(clientId, permits, e);
+        }
+    }
+
+    /**
+     * Runs the remote check through its own async API and completes at the deadline at the
+     * latest, without any thread waiting for it.
+     */
+    @Override
+    public CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId, int permits) {
+        if (!breaker.tryAcquire()) {
+            metrics.shortCircuited.increment();
+            return CompletableFuture.completedFuture(fallback(clientId, permits));
+        }
+        return remote.tryConsumeAsync(clientId, permits)
+                .copy()
+                .orTimeout(deadlineNanos, TimeUnit.NANOSECONDS)
+                .handle((decision, error) -> error == null
+                        ? onDecision(decision)
+                        : onError(clientId, permits, error instanceof CompletionException ? error.getCause() : error));
+    }
+
+    private RateLimitDecision onDecision(RateLimitDecision decision) {
+        CircuitBreaker.State before = breaker.getState();
+        breaker.onSuccess();
+        if (before != CircuitBreaker.State.CLOSED) {
+            fallback.onRecovered();
+        }
+        metrics.remoteDecisions.increment();
+        return decision;
+    }
+
+    private RateLimitDecision onError(String clientId, int permits, Throwable error) {
+        if (error instanceof IllegalArgumentException invalid) {
+            // An invalid request is the caller's fault and says nothing about Redis
+            breaker.onIgnored();
+            throw invalid;
+        }
+        if (error instanceof TimeoutException) {
+            metrics.timeouts.increment();
+        } else {
+            metrics.failures.increment();
+        }
+        breaker.onFailure();
+        return fallback(clientId, permits);
+    }
+
+    private RateLimitDecision fallback(String clientId, int permits) {
+        RateLimitDecision decision = fallback.decide(clientId, permits, breaker.remainingOpenMillis());
+        if (decision.isAllowed()) {
+            metrics.fallbackAllowed.increment();
+        } else {
+            metrics.fallbackDenied.increment();
+        }
+        return decision;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * @return The counters of remote decisions, failed calls and fallback decisions
+     */
+    public FallbackMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops accepting calls. Calls still running in the background are not waited for.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Counters describing how often Redis could not decide and how the fallback decided instead.
+     */
+    public static final class FallbackMetrics {
+        private final LongAdder remoteDecisions = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder shortCircuited = new LongAdder();
+        private final LongAdder fallbackAllowed = new LongAdder();
+        private final LongAdder fallbackDenied = new LongAdder();
+
+        /**
+         * @return The number of decisions made by the remote limiter within the deadline
+         */
+        public long getRemoteDecisions() {
+            return remoteDecisions.sum();
+        }
+
+        /**
+         * @return The number of calls abandoned because they ran past the deadline
+         */
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        /**
+         * @return The number of calls that failed with an exception, e.g. a lost connection
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return The number of requests not sent to Redis because the breaker was open
+         */
+        public long getShortCircuited() {
+            return shortCircuited.sum();
+        }
+
+        public long getFallbackAllowed() {
+            return fallbackAllowed.sum();
+        }
+
+        public long getFallbackDenied() {
+            return fallbackDenied.sum();
+        }
+
+        /**
+         * @return The number of requests decided by the fallback
+         */
+        public long getFallbackDecisions() {
+            return fallbackAllowed.sum() + fallbackDenied.sum();
+        }
+    }
+}
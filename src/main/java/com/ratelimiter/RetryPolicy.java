@@ -0,0 +1,83 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded retry policy for optimistic Redis transactions that were aborted because a
+ * watched key was modified concurrently.
+ *
+ * Retries back off exponentially with full jitter, so that clients contending for the same
+ * hot key spread out instead of colliding again on the next attempt. The backoff is capped
+ * to keep the worst-case decision latency bounded.
+ */
+public final class RetryPolicy {
+    private static final RetryPolicy DEFAULT =
+            new RetryPolicy(5, Duration.ofNanos(50_000), Duration.ofMillis(2));
+    private static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    /**
+     * Constructs a new RetryPolicy.
+     *
+     * @param maxAttempts The maximum number of attempts, including the first one
+     * @param initialBackoff The upper bound of the backoff before the first retry
+     * @param maxBackoff The upper bound of the backoff before any retry
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    /**
+     * @return The default policy: up to 5 attempts, backing off from 50 microseconds up to 2 milliseconds
+     */
+    public static RetryPolicy defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return A policy that never retries an aborted transaction
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Calculates a randomized backoff for the given retry.
+     *
+     * @param retry The retry number, starting at 1
+     * @return The backoff in nanoseconds
+     */
+    long backoffNanos(int retry) {
+        long ceiling = initialBackoffNanos << Math.min(retry - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    }
+
+    /**
+     * Parks the calling thread for a randomized backoff before the given retry.
+     *
+     * @param retry The retry number, starting at 1
+     */
+    void backoff(int retry) {
+        long nanos = backoffNanos(retry);
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+}
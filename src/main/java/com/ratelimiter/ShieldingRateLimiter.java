@@ -0,0 +1,162 @@
+package com.ratelimiter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps a Redis-backed limiter so that clients hammering it while denied are answered in
+ * process, without a round trip.
+ *
+ * Denials are counted by a {@link HeavyHitterTracker}. Once a client is a heavy hitter, its
+ * denial is kept as a verdict, denied until the retry-after time, and later requests of at
+ * least as many permits are denied locally until then. A bucket only refills at its rate, and
+ * other callers only take tokens from it, so such a request could not have been allowed by
+ * Redis either; the verdict is exact, not an approximation. Only a reset of the bucket, or a
+ * change of its limits, is seen late, by at most the retry-after time.
+ *
+ * Clients that are denied now and then are not shielded and cost nothing but a few counter
+ * increments. At most {@code maxVerdicts} verdicts are kept, expired ones being dropped to
+ * make room.
+ */
+public class ShieldingRateLimiter implements RateLimiter {
+    private final RateLimiter remote;
+    private final HeavyHitterTracker tracker;
+    private final int maxVerdicts;
+    private final Map<String, Verdict> verdicts = new ConcurrentHashMap<>();
+    private final LongAdder shielded = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+
+    /**
+     * Constructs a new ShieldingRateLimiter.
+     *
+     * @param remote The limiter to shield, usually a {@link TokenBucketRateLimiter}
+     * @param tracker Tells which clients are denied often enough to be shielded
+     * @param maxVerdicts The largest number of clients denied locally at a time
+     */
+    public ShieldingRateLimiter(RateLimiter remote, HeavyHitterTracker tracker, int maxVerdicts) {
+        if (maxVerdicts < 1) {
+            throw new IllegalArgumentException("maxVerdicts must be positive");
+        }
+        this.remote = remote;
+        this.tracker = tracker;
+        this.maxVerdicts = maxVerdicts;
+    }
+
+    @Override
+    public RateLimitDecision tryConsume(String clientId, int permits) {
+        RateLimitDecision local = shield(clientId, permits, 0);
+        if (local != null) {
+            return local;
+        }
+        forwarded.increment();
+        return onDecision(clientId, permits, remote.tryConsume(clientId, permits));
+    }
+
+    /**
+     * Answers shielded clients with a completed future, without starting a virtual thread.
+     */
+    @Override
+    public CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId, int permits) {
+        RateLimitDecision local = shield(clientId, permits, 0);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        forwarded.increment();
+        return remote.tryConsumeAsync(clientId, permits)
+                .thenApply(decision -> onDecision(clientId, permits, decision));
+    }
+
+    /**
+     * Forwards reservations the verdict does not rule out, i.e. those accepting a wait past it.
+     */
+    @Override
+    public RateLimitDecision reserve(String clientId, int permits, Duration maxWait) {
+        RateLimitDecision local = shield(clientId, permits, maxWait.toNanos());
+        if (local != null) {
+            return local;
+        }
+        forwarded.increment();
+        return onDecision(clientId, permits, remote.reserve(clientId, permits, maxWait));
+    }
+
+    private RateLimitDecision shield(String clientId, int permits, long maxWaitNanos) {
+        Verdict verdict = verdicts.get(clientId);
+        if (verdict == null) {
+            return null;
+        }
+        long waitNanos = verdict.deniedUntil - System.nanoTime();
+        if (waitNanos <= 0) {
+            verdicts.remove(clientId, verdict);
+            return null;
+        }
+        if (permits < verdict.permits || waitNanos <= maxWaitNanos) {
+            return null;
+        }
+        shielded.increment();
+        // Keeps the client counted as heavy while it is shielded
+        tracker.recordDenial(clientId);
+        return RateLimitDecision.denied(verdict.remainingTokens, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+    }
+
+    private RateLimitDecision onDecision(String clientId, int permits, RateLimitDecision decision) {
+        if (decision.isAllowed() || decision.getRetryAfterMillis() <= 0) {
+            return decision;
+        }
+        if (tracker.recordDenial(clientId) && (verdicts.size() < maxVerdicts || purgeExpired())) {
+            long deniedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(decision.getRetryAfterMillis());
+            verdicts.put(clientId, new Verdict(deniedUntil, permits, decision.getRemainingTokens()));
+        }
+        return decision;
+    }
+
+    private boolean purgeExpired() {
+        long now = System.nanoTime();
+        verdicts.values().removeIf(verdict -> verdict.deniedUntil - now <= 0);
+        return verdicts.size() < maxVerdicts;
+    }
+
+    /**
+     * @return The clients denied most often, most denied first
+     */
+    public List<HeavyHitterTracker.HeavyHitter> getTopDenied() {
+        return tracker.getTopK();
+    }
+
+    /**
+     * @return The number of clients currently denied locally
+     */
+    public int getShieldedClients() {
+        return verdicts.size();
+    }
+
+    /**
+     * @return The number of requests denied locally, without a call to the remote limiter
+     */
+    public long getShieldedDenials() {
+        return shielded.sum();
+    }
+
+    /**
+     * @return The number of requests passed to the remote limiter
+     */
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    private static final class Verdict {
+        private final long deniedUntil;
+        private final int permits;
+        private final long remainingTokens;
+
+        private Verdict(long deniedUntil, int permits, long remainingTokens) {
+            this.deniedUntil = deniedUntil;
+            this.permits = permits;
+            this.remainingTokens = remainingTokens;
+        }
+    }
+}
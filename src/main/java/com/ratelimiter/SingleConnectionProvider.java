@@ -0,0 +1,37 @@
+package com.ratelimiter;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A connection provider backed by a single {@link Jedis} connection.
+ *
+ * Calls are serialized on a lock, which makes sharing the connection safe but limits
+ * throughput to one Redis call at a time. Use {@link PooledConnectionProvider} when a limiter
+ * is shared by many threads.
+ */
+public class SingleConnectionProvider implements StandaloneConnectionProvider {
+    private final Jedis jedis;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Constructs a new SingleConnectionProvider.
+     *
+     * @param jedis The connection to share; it is not closed by this provider
+     */
+    public SingleConnectionProvider(Jedis jedis) {
+        this.jedis = jedis;
+    }
+
+    @Override
+    public <T> T execute(Function<Jedis, T> action) {
+        lock.lock();
+        try {
+            return action.apply(jedis);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.ratelimiter;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.function.Function;
+
+/**
+ * A connection provider for a single Redis server, where any connection reaches every key.
+ * Besides the keyed calls of a limiter, it runs actions that are not tied to a key, such as
+ * administrative commands.
+ */
+public interface StandaloneConnectionProvider extends JedisConnectionProvider {
+
+    /**
+     * Runs an action with exclusive use of a connection.
+     *
+     * @param action The action to run; it must not keep a reference to the connection
+     * @param <T> The result type
+     * @return The result of the action
+     */
+    <T> T execute(Function<Jedis, T> action);
+
+    /**
+     * Every key lives on the one server, so the key does not choose the connection.
+     */
+    @Override
+    default <T> T execute(String key, Function<Jedis, T> action) {
+        return execute(action);
+    }
+}
@@ -1,8 +1,16 @@
 package com.ratelimiter;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.SetParams;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A distributed rate limiter implementation using the Token Bucket algorithm.
@@ -11,32 +19,125 @@ import java.util.List;
  *
  * The Token Bucket algorithm works by:
  * 1. Maintaining a bucket of tokens
- * 2. Each request consumes one token
+ * 2. Each request consumes one token, or a given number of tokens for weighted requests
  * 3. Tokens are refilled at a specified rate
  * 4. Requests are rejected when the bucket is empty
  *
  * This implementation is thread-safe and uses Redis transactions to ensure atomic operations.
+ * Connections are obtained from a {@link JedisConnectionProvider}; use a
+ * {@link PooledConnectionProvider} to let one instance serve many threads concurrently.
+ * When constructed with a single {@link Jedis} connection, calls are serialized on it.
+ *
+ * Two strategies are available for updating the bucket, see {@link Strategy}. Both use the same
+ * key layout, so they can be switched or benchmarked against each other on the same data.
+ *
+ * Each bucket is a single string key, {@code rate_limiter:<clientId>}, holding
+ * {@code <tokens>:<last update>}. Every write sets the key to expire when the bucket would be
+ * refilled to capacity, since a full bucket and a missing one behave the same; idle clients
+ * therefore cost nothing in Redis. Buckets written by earlier versions as two keys,
+ * {@code :tokens} and {@code :last_update}, are still read when the new key is missing and are
+ * replaced by it on the next consuming write.
+ *
+ * On Redis Cluster, through a {@link ClusterConnectionProvider}, the client id is wrapped in a
+ * hash tag, {@code rate_limiter:{<clientId>}}, so the keys a script or transaction touches for
+ * one bucket always share a slot, and batches are pipelined per node.
  */
-public class TokenBucketRateLimiter {
-    private final Jedis jedis;
+public class TokenBucketRateLimiter implements RateLimiter {
+    private final JedisConnectionProvider connections;
     private final int capacity;
     private final int refillRate;
     private final String keyPrefix;
-    private static final String TOKENS_KEY = "tokens";
-    private static final String LAST_UPDATE_KEY = "last_update";
+    private final Strategy strategy;
+    private final RetryPolicy retryPolicy;
+    private final ContentionMetrics contentionMetrics = new ContentionMetrics();
+    private volatile RateLimiterListener listener = RateLimiterListener.NONE;
+    private static final String LEGACY_TOKENS_KEY = "tokens";
+    private static final String LEGACY_LAST_UPDATE_KEY = "last_update";
+    private static final RedisScript TOKEN_BUCKET_SCRIPT = RedisScript.fromResource("token_bucket.lua");
 
     /**
-     * Constructs a new TokenBucketRateLimiter with the specified parameters.
+     * The way the bucket state is read and updated in Redis.
+     */
+    public enum Strategy {
+        /**
+         * Optimistic locking with WATCH, GET and MULTI/EXEC. Costs four or more round trips
+         * per decision and aborts when another client updates the same bucket concurrently,
+         * in which case the transaction is retried according to the {@link RetryPolicy}.
+         */
+        TRANSACTION,
+        /**
+         * A server-side Lua script that refills, consumes and writes back the bucket in a
+         * single atomic round trip. The script is invoked with EVALSHA and reloaded on NOSCRIPT.
+         */
+        SCRIPT
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter with the specified parameters,
+     * using the {@link Strategy#TRANSACTION} strategy.
      *
      * @param jedis The Redis client instance to use for storage
      * @param capacity The maximum number of tokens the bucket can hold
      * @param refillRate The number of tokens to add per second
      */
     public TokenBucketRateLimiter(Jedis jedis, int capacity, int refillRate) {
-        this.jedis = jedis;
+        this(jedis, capacity, refillRate, Strategy.TRANSACTION);
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter with the specified parameters.
+     *
+     * @param jedis The Redis client instance to use for storage
+     * @param capacity The maximum number of tokens the bucket can hold
+     * @param refillRate The number of tokens to add per second
+     * @param strategy The strategy used to update the bucket in Redis
+     */
+    public TokenBucketRateLimiter(Jedis jedis, int capacity, int refillRate, Strategy strategy) {
+        this(jedis, capacity, refillRate, strategy, RetryPolicy.defaults());
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter with the specified parameters.
+     *
+     * @param jedis The Redis client instance to use for storage
+     * @param capacity The maximum number of tokens the bucket can hold
+     * @param refillRate The number of tokens to add per second
+     * @param strategy The strategy used to update the bucket in Redis
+     * @param retryPolicy The policy for retrying aborted transactions of the {@link Strategy#TRANSACTION} strategy
+     */
+    public TokenBucketRateLimiter(Jedis jedis, int capacity, int refillRate, Strategy strategy, RetryPolicy retryPolicy) {
+        this(new SingleConnectionProvider(jedis), capacity, refillRate, strategy, retryPolicy);
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter with the specified parameters.
+     *
+     * @param connections The provider of Redis connections, typically a {@link PooledConnectionProvider}
+     * @param capacity The maximum number of tokens the bucket can hold
+     * @param refillRate The number of tokens to add per second
+     * @param strategy The strategy used to update the bucket in Redis
+     */
+    public TokenBucketRateLimiter(JedisConnectionProvider connections, int capacity, int refillRate, Strategy strategy) {
+        this(connections, capacity, refillRate, strategy, RetryPolicy.defaults());
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter with the specified parameters.
+     *
+     * @param connections The provider of Redis connections, typically a {@link PooledConnectionProvider}
+     * @param capacity The maximum number of tokens the bucket can hold
+     * @param refillRate The number of tokens to add per second
+     * @param strategy The strategy used to update the bucket in Redis
+     * @param retryPolicy The policy for retrying aborted transactions of the {@link Strategy#TRANSACTION} strategy
+     */
+    public TokenBucketRateLimiter(JedisConnectionProvider connections, int capacity, int refillRate,
+                                  Strategy strategy, RetryPolicy retryPolicy) {
+        this.connections = connections;
         this.capacity = capacity;
         this.refillRate = refillRate;
         this.keyPrefix = "rate_limiter:";
+        this.strategy = strategy;
+        this.retryPolicy = retryPolicy;
     }
 
     /**
@@ -45,9 +146,173 @@ public class TokenBucketRateLimiter {
      * @param clientId The unique identifier for the client making the request
      * @return true if the request is allowed, false if it should be rejected
      */
+    @Override
     public boolean isAllowed(String clientId) {
+        return tryConsume(clientId).isAllowed();
+    }
+
+    /**
+     * Attempts to consume a token for the specified client and reports the full decision,
+     * including the remaining tokens and how long to wait when the request is rejected.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @return The rate limiting decision
+     */
+    @Override
+    public RateLimitDecision tryConsume(String clientId) {
+        return tryConsume(clientId, 1);
+    }
+
+    /**
+     * Attempts to consume the given number of tokens for the specified client, all or nothing.
+     * A rejected request consumes nothing, and its decision reports how long until the bucket
+     * holds enough tokens for the same request to succeed.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs, between 1 and the capacity
+     * @return The rate limiting decision
+     * @throws IllegalArgumentException if permits is less than 1 or greater than the capacity
+     */
+    @Override
+    public RateLimitDecision tryConsume(String clientId, int permits) {
+        return consume(clientId, permits, 0);
+    }
+
+    /**
+     * Attempts to consume the given number of tokens, reserving tokens that will be refilled
+     * within {@code maxWait}. A reservation is taken in the same single script call or
+     * transaction as a plain check: the stored token count goes negative, so later requests
+     * queue behind it. Waits are rounded down to whole milliseconds.
+     *
+     * @param clientId The unique identifier for the client making the request
+     * @param permits The number of tokens the request costs, between 1 and the capacity
+     * @param maxWait The longest wait the caller accepts
+     * @return The rate limiting decision, allowed with a wait if tokens were reserved
+     * @throws IllegalArgumentException if permits is less than 1 or greater than the capacity
+     */
+    @Override
+    public RateLimitDecision reserve(String clientId, int permits, Duration maxWait) {
+        return consume(clientId, permits, maxWait.toMillis());
+    }
+
+    private RateLimitDecision consume(String clientId, int permits, long maxWaitMillis) {
+        if (permits < 1 || permits > capacity) {
+            throw new IllegalArgumentException(
+                    "permits must be between 1 and the capacity " + capacity + ", was " + permits);
+        }
         String key = getKey(clientId);
-        return tryConsume(key);
+        long start = System.nanoTime();
+        RateLimitDecision decision = strategy == Strategy.SCRIPT
+                ? connections.execute(key, jedis -> consumeWithScript(jedis, key, permits, maxWaitMillis))
+                : consumeWithTransaction(clientId, key, permits, maxWaitMillis);
+        listener.onDecision(clientId, permits, decision.isAllowed(), System.nanoTime() - start);
+        return decision;
+    }
+
+    /**
+     * Checks a batch of clients in a single network round trip. Each distinct client is
+     * checked once, duplicates in the input are ignored.
+     *
+     * @param clientIds The clients making a request
+     * @return Whether each client's request is allowed, in the iteration order of the input
+     * @see #tryConsumeAll(List)
+     */
+    public Map<String, Boolean> isAllowed(Collection<String> clientIds) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(clientIds));
+        List<RateLimitDecision> decisions = tryConsumeAll(distinct);
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (int i = 0; i < distinct.size(); i++) {
+            result.put(distinct.get(i), decisions.get(i).isAllowed());
+        }
+        return result;
+    }
+
+    /**
+     * Attempts to consume a token for each entry of a batch, pipelining all checks on one
+     * connection so the batch costs a single network flush. On Redis Cluster the batch is
+     * split per node, with one pipeline each. A client that appears several times consumes
+     * one token per occurrence, evaluated in list order.
+     *
+     * The batch always runs the token bucket script, whatever the configured {@link Strategy},
+     * because WATCH/MULTI transactions cannot be pipelined. Each check is atomic on its own;
+     * the batch as a whole is not.
+     *
+     * @param clientIds The clients making a request
+     * @return The decision for each entry, in the same order as the input
+     */
+    public List<RateLimitDecision> tryConsumeAll(List<String> clientIds) {
+        if (clientIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        List<String> args = scriptArgs(Instant.now().toEpochMilli(), 1, 0);
+        List<String> bucketKeys = new ArrayList<>(clientIds.size());
+        for (String clientId : clientIds) {
+            bucketKeys.add(getKey(clientId));
+        }
+
+        Object[] replies = new Object[bucketKeys.size()];
+        for (List<Integer> group : connections.groupByServer(bucketKeys)) {
+            List<List<String>> keys = new ArrayList<>(group.size());
+            List<List<String>> argsPerKey = new ArrayList<>(group.size());
+            for (int i : group) {
+                keys.add(scriptKeys(bucketKeys.get(i)));
+                argsPerKey.add(args);
+            }
+            List<Object> groupReplies = connections.execute(bucketKeys.get(group.get(0)),
+                    jedis -> TOKEN_BUCKET_SCRIPT.evalPipelined(jedis, keys, argsPerKey));
+            listener.onRoundTrip(group.size());
+            for (int j = 0; j < group.size(); j++) {
+                replies[group.get(j)] = groupReplies.get(j);
+            }
+        }
+
+        List<RateLimitDecision> decisions = new ArrayList<>(replies.length);
+        for (int i = 0; i < replies.length; i++) {
+            String key = bucketKeys.get(i);
+            // A null reply was redirected because its slot moved, so it is routed again on its own
+            decisions.add(replies[i] != null
+                    ? toDecision(replies[i])
+                    : connections.execute(key, jedis -> consumeWithScript(jedis, key, 1, 0)));
+        }
+        long latency = System.nanoTime() - start;
+        for (int i = 0; i < decisions.size(); i++) {
+            listener.onDecision(clientIds.get(i), 1, decisions.get(i).isAllowed(), latency);
+        }
+        return decisions;
+    }
+
+    /**
+     * @return The maximum number of tokens the bucket can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of tokens added per second
+     */
+    public int getRefillRate() {
+        return refillRate;
+    }
+
+    /**
+     * Returns the counters of aborted, retried and given-up transactions of this limiter.
+     *
+     * @return The contention metrics
+     */
+    public ContentionMetrics getContentionMetrics() {
+        return contentionMetrics;
+    }
+
+    /**
+     * Sets the listener notified of decisions, Redis round trips and aborted transactions.
+     * Replaces any previous listener.
+     *
+     * @param listener The listener, or {@link RateLimiterListener#NONE} to stop reporting
+     */
+    public void setListener(RateLimiterListener listener) {
+        this.listener = listener;
     }
 
     /**
@@ -57,102 +322,236 @@ public class TokenBucketRateLimiter {
      * @return The complete Redis key for the client
      */
     private String getKey(String clientId) {
-        return keyPrefix + clientId;
+        return connections.isCluster() ? keyPrefix + "{" + clientId + "}" : keyPrefix + clientId;
     }
 
     /**
-     * Attempts to consume a token from the bucket for the specified key.
-     * This method handles the core rate limiting logic including token refill and consumption.
+     * Attempts to consume a token from the bucket for the specified key in a single
+     * round trip by running the token bucket script on the Redis server.
+     *
+     * @param jedis The connection to run the script on
+     * @param key The Redis key for the client's bucket
+     * @param permits The number of tokens to consume
+     * @param maxWaitMillis How long the caller accepts to wait for reserved tokens, 0 to only take available ones
+     * @return The rate limiting decision
+     */
+    private RateLimitDecision consumeWithScript(Jedis jedis, String key, int permits, long maxWaitMillis) {
+        List<String> args = scriptArgs(Instant.now().toEpochMilli(), permits, maxWaitMillis);
+        Object reply = TOKEN_BUCKET_SCRIPT.eval(jedis, scriptKeys(key), args);
+        listener.onRoundTrip(1);
+        return toDecision(reply);
+    }
+
+    private List<String> scriptKeys(String key) {
+        return Arrays.asList(key, key + ":" + LEGACY_TOKENS_KEY, key + ":" + LEGACY_LAST_UPDATE_KEY);
+    }
+
+    private List<String> scriptArgs(long currentTime, int permits, long maxWaitMillis) {
+        return Arrays.asList(
+                String.valueOf(capacity),
+                String.valueOf(refillRate),
+                String.valueOf(currentTime),
+                String.valueOf(permits),
+                String.valueOf(maxWaitMillis));
+    }
+
+    /**
+     * Converts the {allowed, remaining, retry after} reply of the token bucket script. An
+     * allowed reply with a retry-after time is a reservation.
+     *
+     * @param reply The raw script reply
+     * @return The rate limiting decision
+     */
+    private static RateLimitDecision toDecision(Object reply) {
+        List<?> result = (List<?>) reply;
+        boolean allowed = ((Long) result.get(0)) == 1L;
+        long remaining = (Long) result.get(1);
+        long retryAfter = (Long) result.get(2);
+        if (allowed) {
+            return retryAfter > 0 ? RateLimitDecision.reserved(remaining, retryAfter) : RateLimitDecision.allowed(remaining);
+        }
+        return RateLimitDecision.denied(remaining, retryAfter);
+    }
+
+    /**
+     * Attempts to consume a token using optimistic transactions. A transaction aborted by a
+     * concurrent update is not a denial: it is retried with backoff until it commits or the
+     * retry budget runs out, in which case the request is rejected as a give-up.
+     * The connection is returned to the provider between attempts, so backoff does not hold it.
      *
+     * @param clientId The client identifier, used for contention metrics
      * @param key The Redis key for the client's bucket
-     * @return true if a token was successfully consumed, false otherwise
+     * @param permits The number of tokens to consume
+     * @param maxWaitMillis How long the caller accepts to wait for reserved tokens, 0 to only take available ones
+     * @return The rate limiting decision
      */
-    private boolean tryConsume(String key) {
-        String tokensKey = key + ":" + TOKENS_KEY;
-        String lastUpdateKey = key + ":" + LAST_UPDATE_KEY;
+    private RateLimitDecision consumeWithTransaction(String clientId, String key, int permits, long maxWaitMillis) {
+        for (int attempt = 1; ; attempt++) {
+            RateLimitDecision decision = connections.execute(key,
+                    jedis -> attemptTransaction(jedis, key, permits, maxWaitMillis));
+            if (decision != null) {
+                return decision;
+            }
+            contentionMetrics.recordAbort(clientId);
+            listener.onTransactionAbort(clientId, attempt);
+            if (attempt >= retryPolicy.getMaxAttempts()) {
+                contentionMetrics.recordGiveUp(clientId);
+                return RateLimitDecision.denied(0, 0);
+            }
+            contentionMetrics.recordRetry(clientId);
+            retryPolicy.backoff(attempt);
+        }
+    }
 
+    /**
+     * Attempts to consume tokens from the bucket for the specified key.
+     * This method handles the core rate limiting logic including token refill and consumption.
+     *
+     * @param jedis The connection to run the transaction on
+     * @param key The Redis key for the client's bucket
+     * @param permits The number of tokens to consume
+     * @param maxWaitMillis How long the caller accepts to wait for reserved tokens, 0 to only take available ones
+     * @return The rate limiting decision, or null if the transaction was aborted
+     */
+    private RateLimitDecision attemptTransaction(Jedis jedis, String key, int permits, long maxWaitMillis) {
         // Start Redis transaction
-        jedis.watch(tokensKey, lastUpdateKey);
+        jedis.watch(key);
+        listener.onRoundTrip(1);
 
-        // Get current state
-        String tokensStr = jedis.get(tokensKey);
-        String lastUpdateStr = jedis.get(lastUpdateKey);
+        // Get current state, falling back to the legacy two-key layout
+        StoredState state = readState(jedis, key);
 
         // Initialize if not exists
-        if (tokensStr == null || lastUpdateStr == null) {
-            return initializeBucket(tokensKey, lastUpdateKey);
+        if (state.tokens == null || state.lastUpdate == null) {
+            return initializeBucket(jedis, key, permits, state.legacy);
         }
 
         // Calculate refill
         long currentTime = Instant.now().toEpochMilli();
-        long lastUpdate = Long.parseLong(lastUpdateStr);
-        int currentTokens = Integer.parseInt(tokensStr);
+        long lastUpdate = Long.parseLong(state.lastUpdate);
+        int currentTokens = Integer.parseInt(state.tokens);
         
-        int refilledTokens = calculateRefilledTokens(currentTime, lastUpdate, currentTokens);
-        
-        // Try to consume token
-        if (refilledTokens > 0) {
-            return updateBucket(tokensKey, lastUpdateKey, refilledTokens - 1, currentTime);
+        Refill refill = calculateRefill(currentTime, lastUpdate, currentTokens);
+
+        // Try to consume tokens
+        if (refill.tokens >= permits) {
+            return updateBucket(jedis, key, refill.tokens - permits, refill.lastUpdate, currentTime, state.legacy);
+        }
+        // Refill is counted from the refilled state, so is the time until enough tokens accrue
+        long missingMillis = ((long) (permits - refill.tokens) * 1000 + refillRate - 1) / refillRate;
+        long retryAfter = Math.max(0, missingMillis - (currentTime - refill.lastUpdate));
+        // Reserve tokens: the stored count goes negative, which later requests see as a longer wait
+        if (maxWaitMillis > 0 && retryAfter <= maxWaitMillis) {
+            RateLimitDecision reserved =
+                updateBucket(jedis, key, refill.tokens - permits, refill.lastUpdate, currentTime, state.legacy);
+            return reserved != null ? RateLimitDecision.reserved(0, retryAfter) : null;
         }
 
-        return false;
+        // Nothing is written, so release the watched keys before handing the connection back
+        jedis.unwatch();
+        listener.onRoundTrip(1);
+        return RateLimitDecision.denied(Math.max(0, refill.tokens), retryAfter);
+    }
+
+    /**
+     * Reads the stored state of a bucket. When the bucket key is missing, the keys of the legacy
+     * layout are watched and read instead.
+     *
+     * @param jedis The connection holding the WATCH on the bucket key
+     * @param key The Redis key for the client's bucket
+     * @return The stored state, with null fields if there is no bucket
+     */
+    private StoredState readState(Jedis jedis, String key) {
+        String state = jedis.get(key);
+        listener.onRoundTrip(1);
+        if (state != null) {
+            int separator = state.indexOf(':');
+            return new StoredState(state.substring(0, separator), state.substring(separator + 1), false);
+        }
+        if (connections.isCluster()) {
+            // The legacy layout was never hash-tagged, so it cannot exist on a cluster
+            return new StoredState(null, null, false);
+        }
+        String tokensKey = key + ":" + LEGACY_TOKENS_KEY;
+        String lastUpdateKey = key + ":" + LEGACY_LAST_UPDATE_KEY;
+        jedis.watch(tokensKey, lastUpdateKey);
+        List<String> legacy = jedis.mget(tokensKey, lastUpdateKey);
+        listener.onRoundTrip(1);
+        listener.onRoundTrip(1);
+        return new StoredState(legacy.get(0), legacy.get(1), legacy.get(0) != null || legacy.get(1) != null);
     }
 
     /**
      * Initializes a new bucket for a client with the maximum capacity.
      *
-     * @param tokensKey The Redis key for storing tokens
-     * @param lastUpdateKey The Redis key for storing the last update timestamp
-     * @return true if initialization was successful, false otherwise
+     * @param jedis The connection holding the WATCH on the bucket keys
+     * @param key The Redis key for the client's bucket
+     * @param permits The number of tokens to consume
+     * @param legacy Whether keys of the legacy layout exist and should be deleted
+     * @return The rate limiting decision, or null if the transaction was aborted
      */
-    private boolean initializeBucket(String tokensKey, String lastUpdateKey) {
+    private RateLimitDecision initializeBucket(Jedis jedis, String key, int permits, boolean legacy) {
         long currentTime = Instant.now().toEpochMilli();
-        return updateBucket(tokensKey, lastUpdateKey, capacity - 1, currentTime);
+        return updateBucket(jedis, key, capacity - permits, currentTime, currentTime, legacy);
     }
 
     /**
      * Calculates the number of tokens that should be in the bucket based on the time elapsed
-     * since the last update.
+     * since the last update. Only whole tokens are stored, so the timestamp only advances by the
+     * time those tokens took to accrue and partial progress is carried over, as in the script.
      *
      * @param currentTime The current timestamp in milliseconds
      * @param lastUpdate The timestamp of the last update in milliseconds
      * @param currentTokens The current number of tokens in the bucket
-     * @return The calculated number of tokens after refill
+     * @return The number of tokens after refill and the timestamp they are counted from
      */
-    private int calculateRefilledTokens(long currentTime, long lastUpdate, int currentTokens) {
-        long timePassed = currentTime - lastUpdate;
-        int tokensToAdd = (int) (timePassed * refillRate / 1000);
-        return Math.min(capacity, currentTokens + tokensToAdd);
+    private Refill calculateRefill(long currentTime, long lastUpdate, int currentTokens) {
+        long tokensToAdd = Math.max(0, currentTime - lastUpdate) * refillRate / 1000;
+        long tokens = currentTokens + tokensToAdd;
+        if (tokens >= capacity) {
+            return new Refill(capacity, currentTime);
+        }
+        return new Refill((int) tokens, lastUpdate + tokensToAdd * 1000 / refillRate);
     }
 
     /**
-     * Updates the bucket state in Redis using a transaction to ensure atomicity.
+     * Updates the bucket state in Redis using a transaction to ensure atomicity. The key expires
+     * when the bucket would be refilled to capacity.
      *
-     * @param tokensKey The Redis key for storing tokens
-     * @param lastUpdateKey The Redis key for storing the last update timestamp
+     * @param jedis The connection holding the WATCH on the bucket keys
+     * @param key The Redis key for the client's bucket
      * @param newTokens The new number of tokens to store
+     * @param lastUpdate The timestamp the stored tokens are counted from in milliseconds
      * @param currentTime The current timestamp in milliseconds
-     * @return true if the update was successful, false otherwise
+     * @param legacy Whether keys of the legacy layout exist and should be deleted
+     * @return The rate limiting decision, or null if the transaction was aborted
      */
-    private boolean updateBucket(String tokensKey, String lastUpdateKey, int newTokens, long currentTime) {
+    private RateLimitDecision updateBucket(Jedis jedis, String key, int newTokens, long lastUpdate, long currentTime,
+                                           boolean legacy) {
+        long refillMillis = ((long) (capacity - newTokens) * 1000 + refillRate - 1) / refillRate;
+        long timeToFull = Math.max(1, refillMillis - (currentTime - lastUpdate));
         var transaction = jedis.multi();
-        transaction.set(tokensKey, String.valueOf(newTokens));
-        transaction.set(lastUpdateKey, String.valueOf(currentTime));
+        transaction.set(key, newTokens + ":" + lastUpdate, SetParams.setParams().px(timeToFull));
+        if (legacy) {
+            transaction.del(key + ":" + LEGACY_TOKENS_KEY, key + ":" + LEGACY_LAST_UPDATE_KEY);
+        }
         List<Object> results = transaction.exec();
-        return results != null && !results.isEmpty();
+        // MULTI and the queued commands are flushed together with EXEC
+        listener.onRoundTrip(legacy ? 4 : 3);
+        return results != null ? RateLimitDecision.allowed(newTokens) : null;
     }
 
     /**
-     * Retrieves the current number of tokens in the bucket for a specific client.
+     * Retrieves the stored number of tokens in the bucket for a specific client.
      * This method is intended for testing purposes only.
      *
      * @param clientId The client identifier
-     * @return The current number of tokens in the bucket
+     * @return The stored number of tokens, the capacity if the bucket does not exist
      */
     protected int getCurrentTokens(String clientId) {
         String key = getKey(clientId);
-        String tokensStr = jedis.get(key + ":" + TOKENS_KEY);
-        return tokensStr != null ? Integer.parseInt(tokensStr) : 0;
+        String state = connections.execute(key, jedis -> jedis.get(key));
+        return state != null ? Integer.parseInt(state.substring(0, state.indexOf(':'))) : capacity;
     }
 
     /**
@@ -160,11 +559,40 @@ public class TokenBucketRateLimiter {
      * This method is intended for testing purposes only.
      *
      * @param clientId The client identifier
-     * @return The timestamp of the last update in milliseconds
+     * @return The timestamp of the last update in milliseconds, 0 if the bucket does not exist
      */
     protected long getLastUpdateTime(String clientId) {
         String key = getKey(clientId);
-        String lastUpdateStr = jedis.get(key + ":" + LAST_UPDATE_KEY);
-        return lastUpdateStr != null ? Long.parseLong(lastUpdateStr) : 0;
+        String state = connections.execute(key, jedis -> jedis.get(key));
+        return state != null ? Long.parseLong(state.substring(state.indexOf(':') + 1)) : 0;
+    }
+
+    /**
+     * The tokens in a bucket after refill and the timestamp from which further refill is counted.
+     */
+    private static final class Refill {
+        private final int tokens;
+        private final long lastUpdate;
+
+        private Refill(int tokens, long lastUpdate) {
+            this.tokens = tokens;
+            this.lastUpdate = lastUpdate;
+        }
+    }
+
+    /**
+     * The raw bucket state read by a transaction.
+     */
+    private static final class StoredState {
+        private final String tokens;
+        private final String lastUpdate;
+        // Whether the state came from keys of the legacy layout, which must be deleted on write
+        private final boolean legacy;
+
+        private StoredState(String tokens, String lastUpdate, boolean legacy) {
+            this.tokens = tokens;
+            this.lastUpdate = lastUpdate;
+            this.legacy = legacy;
+        }
     }
-} 
\ No newline at end of file
+}
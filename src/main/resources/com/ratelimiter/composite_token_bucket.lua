@@ -0,0 +1,75 @@
+-- A chain of token buckets refilled, checked and consumed together, atomically inside Redis.
+-- Either every bucket is debited or none is.
+--
+-- KEYS[i]         bucket key of level i, holding "<tokens>:<last update>", innermost level first
+-- ARGV[1]         current time in milliseconds
+-- ARGV[2]         number of tokens to consume from every level
+-- ARGV[1 + 2 * i] capacity of level i
+-- ARGV[2 + 2 * i] refill rate of level i in tokens per second
+--
+-- Returns {allowed (1 or 0), first rejecting level (0 if allowed),
+--          tokens left (the fewest over all levels, or those of the rejecting level),
+--          milliseconds until every level would allow the request}
+
+local now = tonumber(ARGV[1])
+local permits = tonumber(ARGV[2])
+
+local tokens = {}
+local updates = {}
+local rejected = 0
+local retry_after = 0
+for i = 1, #KEYS do
+    local capacity = tonumber(ARGV[1 + 2 * i])
+    local refill_rate = tonumber(ARGV[2 + 2 * i])
+    local t, last_update
+    local state = redis.call('GET', KEYS[i])
+    if state then
+        local sep = string.find(state, ':', 1, true)
+        t = tonumber(string.sub(state, 1, sep - 1))
+        last_update = tonumber(string.sub(state, sep + 1))
+    else
+        -- A missing bucket has expired after refilling to capacity, or was never used
+        t = capacity
+        last_update = now
+    end
+
+    -- Same refill as token_bucket.lua: whole tokens only, partial progress carried over
+    local added = math.floor(math.max(0, now - last_update) * refill_rate / 1000)
+    if added > 0 then
+        t = t + added
+        last_update = last_update + math.floor(added * 1000 / refill_rate)
+    end
+    if t >= capacity then
+        t = capacity
+        last_update = now
+    end
+
+    if t < permits then
+        if rejected == 0 then
+            rejected = i
+        end
+        local wait = math.ceil((permits - t) * 1000 / refill_rate) - (now - last_update)
+        retry_after = math.max(retry_after, wait)
+    end
+    tokens[i] = t
+    updates[i] = last_update
+end
+
+if rejected > 0 then
+    -- A denial changes nothing, so no level is written
+    return {0, rejected, tokens[rejected], retry_after}
+end
+
+local fewest = nil
+for i = 1, #KEYS do
+    local capacity = tonumber(ARGV[1 + 2 * i])
+    local refill_rate = tonumber(ARGV[2 + 2 * i])
+    local t = tokens[i] - permits
+    local ttl = math.max(1, math.ceil((capacity - t) * 1000 / refill_rate) - (now - updates[i]))
+    redis.call('SET', KEYS[i], t .. ':' .. updates[i], 'PX', ttl)
+    if fewest == nil or t < fewest then
+        fewest = t
+    end
+end
+
+return {1, 0, fewest, 0}
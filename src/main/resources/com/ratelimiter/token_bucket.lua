@@ -0,0 +1,72 @@
+-- Token bucket refill and consume, executed atomically inside Redis.
+--
+-- KEYS[1]  bucket key, holding "<tokens>:<last update>"
+-- KEYS[2]  legacy tokens key, read when the bucket key is missing
+-- KEYS[3]  legacy last update key, read when the bucket key is missing
+-- ARGV[1]  bucket capacity
+-- ARGV[2]  refill rate in tokens per second
+-- ARGV[3]  current time in milliseconds
+-- ARGV[4]  number of tokens to consume
+-- ARGV[5]  optional, milliseconds the caller accepts to wait for tokens not yet refilled
+--
+-- Returns {allowed (1 or 0), remaining tokens, milliseconds until the request would succeed},
+-- where a reservation is allowed with the milliseconds to wait before using its tokens
+
+local capacity = tonumber(ARGV[1])
+local refill_rate = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local permits = tonumber(ARGV[4])
+local max_wait = tonumber(ARGV[5] or '0')
+
+local tokens, last_update
+local legacy = false
+local state = redis.call('GET', KEYS[1])
+if state then
+    local sep = string.find(state, ':', 1, true)
+    tokens = tonumber(string.sub(state, 1, sep - 1))
+    last_update = tonumber(string.sub(state, sep + 1))
+else
+    local old = redis.call('MGET', KEYS[2], KEYS[3])
+    tokens = tonumber(old[1])
+    last_update = tonumber(old[2])
+    legacy = tokens ~= nil or last_update ~= nil
+end
+
+-- A missing bucket has expired after refilling to capacity, or was never used
+if tokens == nil or last_update == nil then
+    tokens = capacity
+    last_update = now
+end
+
+-- Only whole tokens are stored, so the timestamp only advances by the time
+-- those tokens took to accrue and partial progress is carried over.
+local added = math.floor(math.max(0, now - last_update) * refill_rate / 1000)
+if added > 0 then
+    tokens = tokens + added
+    last_update = last_update + math.floor(added * 1000 / refill_rate)
+end
+if tokens >= capacity then
+    tokens = capacity
+    last_update = now
+end
+
+local wait = 0
+if tokens < permits then
+    local retry_after = math.max(0, math.ceil((permits - tokens) * 1000 / refill_rate) - (now - last_update))
+    if max_wait <= 0 or retry_after > max_wait then
+        -- A denial changes nothing, so nothing is written
+        return {0, math.max(0, tokens), retry_after}
+    end
+    -- Reserve: the tokens go negative, which later requests see as a longer wait
+    wait = retry_after
+end
+
+tokens = tokens - permits
+-- Once refilled to capacity the bucket is the same as a missing one, so let it expire then
+local ttl = math.max(1, math.ceil((capacity - tokens) * 1000 / refill_rate) - (now - last_update))
+redis.call('SET', KEYS[1], tokens .. ':' .. last_update, 'PX', ttl)
+if legacy then
+    redis.call('DEL', KEYS[2], KEYS[3])
+end
+
+return {1, math.max(0, tokens), wait}
@@ -0,0 +1,112 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the limiter against a three-node Redis Cluster. The nodes run in one container and
+ * announce 127.0.0.1, which is mapped to the container's published ports.
+ */
+@Testcontainers
+class ClusterTokenBucketRateLimiterTest {
+    private static final int[] NODE_PORTS = {7000, 7001, 7002};
+    private static final int BUCKET_CAPACITY = 5;
+    private static final int REFILL_RATE = 1;
+
+    @Container
+    private static final GenericContainer<?> cluster = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(7000, 7001, 7002)
+            .withCommand("sh", "-c",
+                    "for port in 7000 7001 7002; do "
+                            + "redis-server --port $port --cluster-enabled yes --cluster-config-file nodes-$port.conf --daemonize yes; "
+                            + "done; "
+                            + "sleep 1; "
+                            + "redis-cli --cluster create 127.0.0.1:7000 127.0.0.1:7001 127.0.0.1:7002 --cluster-yes; "
+                            + "tail -f /dev/null")
+            .waitingFor(Wait.forLogMessage(".*All 16384 slots covered.*", 1).withStartupTimeout(Duration.ofSeconds(60)));
+
+    private ClusterConnectionProvider connections;
+
+    @BeforeEach
+    public void setUp() {
+        Set<HostAndPort> nodes = new HashSet<>();
+        for (int port : NODE_PORTS) {
+            nodes.add(new HostAndPort(cluster.getHost(), cluster.getMappedPort(port)));
+        }
+        DefaultJedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+                .hostAndPortMapper(announced -> new HostAndPort(cluster.getHost(), cluster.getMappedPort(announced.getPort())))
+                .build();
+        connections = new ClusterConnectionProvider(nodes, clientConfig, 4, Duration.ofSeconds(2));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connections.close();
+    }
+
+    /**
+     * Test scenario: Single checks with both strategies on a cluster
+     * Expected: Requests are limited to the capacity, so scripts and transactions run on the owning node
+     */
+    @Test
+    void singleChecksAreRoutedToTheOwningNode() {
+        for (TokenBucketRateLimiter.Strategy strategy : TokenBucketRateLimiter.Strategy.values()) {
+            String clientId = "cluster-" + strategy;
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(connections, BUCKET_CAPACITY, REFILL_RATE, strategy);
+
+            for (int i = 0; i < BUCKET_CAPACITY; i++) {
+                assertTrue(limiter.isAllowed(clientId), "Request within capacity should be allowed for " + strategy);
+            }
+            assertFalse(limiter.isAllowed(clientId), "Request exceeding capacity should be denied for " + strategy);
+            assertEquals(0, limiter.getCurrentTokens(clientId));
+        }
+    }
+
+    /**
+     * Test scenario: A batch of clients spread over all nodes
+     * Expected: The batch is split per node and every decision matches a single check
+     */
+    @Test
+    void batchIsPipelinedPerNode() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+                connections, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+        List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            clientIds.add("client-" + i);
+        }
+        List<String> keys = new ArrayList<>();
+        for (String clientId : clientIds) {
+            keys.add("rate_limiter:{" + clientId + "}");
+        }
+        assertEquals(NODE_PORTS.length, connections.groupByServer(keys).size(), "Clients should span every node");
+
+        for (int round = 0; round < BUCKET_CAPACITY; round++) {
+            List<RateLimitDecision> decisions = limiter.tryConsumeAll(clientIds);
+            for (RateLimitDecision decision : decisions) {
+                assertTrue(decision.isAllowed());
+                assertEquals(BUCKET_CAPACITY - round - 1, decision.getRemainingTokens());
+            }
+        }
+        for (RateLimitDecision decision : limiter.tryConsumeAll(clientIds)) {
+            assertFalse(decision.isAllowed());
+        }
+    }
+}
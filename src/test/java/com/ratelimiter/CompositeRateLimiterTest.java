@@ -0,0 +1,105 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class CompositeRateLimiterTest {
+    private static final int REDIS_PORT = 6379;
+
+    @Container
+    private static final GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(REDIS_PORT);
+
+    private Jedis jedis;
+    private CompositeRateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setUp() {
+        jedis = new Jedis(redis.getHost(), redis.getMappedPort(REDIS_PORT));
+        jedis.flushAll();
+        rateLimiter = new CompositeRateLimiter(new SingleConnectionProvider(jedis), List.of(
+                new CompositeRateLimiter.Level("client", 3, 1),
+                new CompositeRateLimiter.Level("org", 5, 1),
+                new CompositeRateLimiter.Level("global", 100, 1)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (jedis != null) {
+            jedis.close();
+        }
+    }
+
+    /**
+     * Test scenario: Two clients of one organization exhaust their own and the organization's limit
+     * Expected: Each denial names the level that rejected it
+     */
+    @Test
+    void reportsTheRejectingLevel() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rateLimiter.isAllowed(List.of("alice", "acme", "all")));
+        }
+        CompositeDecision clientDenied = rateLimiter.tryConsume(List.of("alice", "acme", "all"));
+        assertFalse(clientDenied.isAllowed());
+        assertEquals("client", clientDenied.getRejectedLevel());
+        assertTrue(clientDenied.getRetryAfterMillis() > 0);
+
+        CompositeDecision allowed = rateLimiter.tryConsume(List.of("bob", "acme", "all"), 2);
+        assertTrue(allowed.isAllowed());
+        assertNull(allowed.getRejectedLevel());
+        assertEquals(0, allowed.getRemainingTokens(), "The organization has no tokens left");
+
+        CompositeDecision orgDenied = rateLimiter.tryConsume(List.of("bob", "acme", "all"));
+        assertFalse(orgDenied.isAllowed());
+        assertEquals("org", orgDenied.getRejectedLevel());
+    }
+
+    /**
+     * Test scenario: A request rejected by the organization level
+     * Expected: Nothing is consumed from the client's bucket, and the check is a single round trip
+     */
+    @Test
+    void rejectionConsumesNothing() {
+        AtomicInteger roundTrips = new AtomicInteger();
+        rateLimiter.setListener(new RateLimiterListener() {
+            @Override
+            public void onRoundTrip(int commands) {
+                roundTrips.incrementAndGet();
+            }
+        });
+        assertTrue(rateLimiter.tryConsume(List.of("alice", "acme", "all"), 3).isAllowed());
+        assertTrue(rateLimiter.tryConsume(List.of("bob", "acme", "all"), 2).isAllowed());
+
+        assertFalse(rateLimiter.isAllowed(List.of("carol", "acme", "all")));
+        assertEquals(3, roundTrips.get());
+        // carol's bucket was never written, and the global bucket holds only the allowed requests
+        assertNull(jedis.get("rate_limiter:client:carol"));
+        assertTrue(jedis.get("rate_limiter:global:all").startsWith("95:"));
+    }
+
+    /**
+     * Test scenario: Invalid arguments
+     * Expected: Missing ids and permits above the smallest capacity are rejected
+     */
+    @Test
+    void validatesArguments() {
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(List.of("alice", "acme")));
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(List.of("alice", "acme", "all"), 4));
+    }
+}
@@ -0,0 +1,32 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records aborts directly, without Redis, to check the bound on per-client counters.
+ */
+class ContentionMetricsTest {
+
+    /**
+     * Test scenario: More contended clients than the metrics track, one of them aborting far more often
+     * Expected: At most maxClients are tracked, the most contended client is kept and the totals count every abort
+     */
+    @Test
+    void perClientCountersAreBoundedAndKeepTheMostContended() {
+        ContentionMetrics metrics = new ContentionMetrics(10);
+        for (int i = 0; i < 50; i++) {
+            metrics.recordAbort("hot-client");
+        }
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordAbort("client-" + i);
+        }
+
+        assertEquals(10, metrics.getContendedClients().size());
+        assertEquals(50, metrics.getClient("hot-client").getAborts());
+        assertTrue(metrics.getContendedClients().containsKey("client-999"), "The latest client should be tracked");
+        assertEquals(1050, metrics.getTotals().getAborts());
+    }
+}
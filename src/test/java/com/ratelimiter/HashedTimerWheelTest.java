@@ -0,0 +1,74 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedTimerWheelTest {
+
+    /**
+     * Test scenario: Timers shorter and longer than one turn of the wheel
+     * Expected: Each fires no earlier than its delay
+     */
+    @Test
+    void timersFireAfterTheirDelay() {
+        try (HashedTimerWheel wheel = new HashedTimerWheel(Duration.ofMillis(1), 8)) {
+            List<CompletableFuture<Void>> timers = new ArrayList<>();
+            List<Long> firedAfter = new ArrayList<>();
+            long start = System.nanoTime();
+            for (long delayMillis : new long[] {0, 3, 20, 50}) {
+                timers.add(wheel.delay(delayMillis * 1_000_000)
+                        .thenRun(() -> firedAfter.add((System.nanoTime() - start) / 1_000_000)));
+            }
+            CompletableFuture.allOf(timers.toArray(new CompletableFuture[0])).join();
+
+            assertEquals(4, firedAfter.size());
+            assertTrue(firedAfter.get(3) >= 50, "A timer several turns ahead should not fire early, fired after " + firedAfter.get(3));
+            for (int i = 1; i < firedAfter.size(); i++) {
+                assertTrue(firedAfter.get(i) >= firedAfter.get(i - 1), "Timers should fire in order");
+            }
+        }
+    }
+
+    /**
+     * Test scenario: A wheel closed with a pending timer
+     * Expected: The timer is cancelled instead of left pending
+     */
+    @Test
+    void closingCancelsPendingTimers() {
+        CompletableFuture<Void> timer;
+        try (HashedTimerWheel wheel = new HashedTimerWheel(Duration.ofMillis(1), 8)) {
+            timer = wheel.delay(Duration.ofSeconds(10).toNanos());
+        }
+        assertThrows(CancellationException.class, timer::join);
+    }
+
+    /**
+     * Test scenario: Concurrent async acquires on an exhausted in-process bucket
+     * Expected: They are granted one refill interval apart, and those beyond the wait fail fast
+     */
+    @Test
+    void acquireAsyncSmoothsCallersToTheRate() {
+        LocalTokenBucketRateLimiter limiter = new LocalTokenBucketRateLimiter(1, 10);
+        assertTrue(limiter.isAllowed("client"));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> acquired = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            acquired.add(limiter.acquireAsync("client", 1, Duration.ofMillis(250)));
+        }
+        assertTrue(acquired.get(0).join() && acquired.get(1).join());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis >= 190, "Two tokens at 10 per second take 200ms, took " + elapsedMillis + "ms");
+        assertFalse(acquired.get(2).join(), "The third token is 300ms away, beyond the wait");
+    }
+}
@@ -0,0 +1,186 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.Jedis;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class LeasingRateLimiterTest {
+    private static final int REDIS_PORT = 6379;
+    private static final String CLIENT_ID = "test-client";
+    private static final int BUCKET_CAPACITY = 20;
+    // Slow enough that no whole token is refilled while a test runs
+    private static final int REFILL_RATE = 1;
+
+    @Container
+    private static final GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(REDIS_PORT);
+
+    private PooledConnectionProvider pool;
+    private TokenBucketRateLimiter remote;
+
+    @BeforeEach
+    public void setUp() {
+        pool = new PooledConnectionProvider(redis.getHost(), redis.getMappedPort(REDIS_PORT), 8, 0, Duration.ofSeconds(2));
+        remote = new TokenBucketRateLimiter(pool, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+        try (Jedis jedis = new Jedis(redis.getHost(), redis.getMappedPort(REDIS_PORT))) {
+            jedis.flushAll();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Test scenario: Consecutive requests served from a lease of 5 tokens
+     * Expected: Redis is only contacted when a lease is used up, one lease at a time
+     */
+    @Test
+    void requestsAreServedFromTheLease() {
+        LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 5, Duration.ofMinutes(1));
+
+        assertTrue(limiter.isAllowed(CLIENT_ID));
+        assertEquals(BUCKET_CAPACITY - 5, remote.getCurrentTokens(CLIENT_ID));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.isAllowed(CLIENT_ID));
+        }
+        assertEquals(BUCKET_CAPACITY - 5, remote.getCurrentTokens(CLIENT_ID));
+
+        assertTrue(limiter.isAllowed(CLIENT_ID));
+        assertEquals(BUCKET_CAPACITY - 10, remote.getCurrentTokens(CLIENT_ID));
+
+        LeasingRateLimiter.LeaseMetrics metrics = limiter.getMetrics();
+        assertEquals(2, metrics.getLeases());
+        assertEquals(4, metrics.getLocalDecisions());
+        assertEquals(2, metrics.getRemoteDecisions());
+    }
+
+    /**
+     * Test scenario: Two nodes leasing from the same bucket concurrently
+     * Expected: Together they never admit more requests than the bucket capacity
+     */
+    @Test
+    void nodesNeverExceedTheSharedCapacity() throws InterruptedException {
+        List<LeasingRateLimiter> nodes = List.of(
+                new LeasingRateLimiter(remote, 3, Duration.ofMinutes(1)),
+                new LeasingRateLimiter(remote, 3, Duration.ofMinutes(1)));
+        AtomicInteger allowed = new AtomicInteger();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            LeasingRateLimiter node = nodes.get(t % nodes.size());
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    if (node.isAllowed(CLIENT_ID)) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(allowed.get() <= BUCKET_CAPACITY, "Nodes admitted " + allowed.get() + " requests");
+        assertTrue(allowed.get() > 0);
+    }
+
+    /**
+     * Test scenario: A lease expiring before its tokens are used
+     * Expected: The unused tokens are reported as drift and a new lease is taken
+     */
+    @Test
+    void expiredLeaseIsCountedAsDrift() throws InterruptedException {
+        LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 5, Duration.ofMillis(50));
+
+        assertTrue(limiter.isAllowed(CLIENT_ID));
+        Thread.sleep(100);
+        assertTrue(limiter.isAllowed(CLIENT_ID));
+
+        LeasingRateLimiter.LeaseMetrics metrics = limiter.getMetrics();
+        assertEquals(4, metrics.getTokensExpired());
+        assertEquals(10, metrics.getTokensLeased());
+        assertEquals(0.4, metrics.getDrift(), 1e-9);
+    }
+
+    /**
+     * Test scenario: The shared bucket holding fewer tokens than a lease
+     * Expected: The last tokens are leased, then requests are denied in a single round trip
+     */
+    @Test
+    void lastTokensAreLeasedThenDeniedInOneRoundTrip() {
+        LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 8, Duration.ofMinutes(1));
+
+        int allowed = 0;
+        for (int i = 0; i < BUCKET_CAPACITY + 5; i++) {
+            if (limiter.isAllowed(CLIENT_ID)) {
+                allowed++;
+            }
+        }
+
+        assertEquals(BUCKET_CAPACITY, allowed);
+        assertFalse(limiter.isAllowed(CLIENT_ID));
+        LeasingRateLimiter.LeaseMetrics metrics = limiter.getMetrics();
+        // Leases of 8, 8, then a refused lease and one of the 4 left, then one call per denial
+        assertEquals(3, metrics.getLeases());
+        assertEquals(2 + 2 + 6, metrics.getRemoteDecisions());
+    }
+
+    /**
+     * Test scenario: A denial after a refused lease, on a bucket that refills 1 token per second
+     * Expected: The retry-after time is for the requested permit, not for a whole lease
+     */
+    @Test
+    void denialRetryAfterIsForTheRequestedPermits() {
+        LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 10, Duration.ofMinutes(1));
+        assertTrue(limiter.tryConsume(CLIENT_ID, BUCKET_CAPACITY).isAllowed());
+
+        RateLimitDecision denied = limiter.tryConsume(CLIENT_ID, 1);
+
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfterMillis() <= 1000, "Retry after " + denied.getRetryAfterMillis());
+    }
+
+    /**
+     * Test scenario: A client whose lease expired while another client renews
+     * Expected: The idle client is dropped and its unused tokens counted as drift only once
+     */
+    @Test
+    void idleClientsAreDropped() throws InterruptedException {
+        LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 5, Duration.ofMillis(50));
+
+        assertTrue(limiter.isAllowed(CLIENT_ID));
+        Thread.sleep(100);
+        assertTrue(limiter.isAllowed("other-client"));
+        assertEquals(4, limiter.getMetrics().getTokensExpired());
+
+        assertTrue(limiter.isAllowed(CLIENT_ID));
+        assertEquals(4, limiter.getMetrics().getTokensExpired());
+        assertEquals(3, limiter.getMetrics().getLeases());
+    }
+
+    @Test
+    void leaseLargerThanCapacityIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LeasingRateLimiter(remote, BUCKET_CAPACITY + 1, Duration.ofSeconds(1)));
+    }
+}
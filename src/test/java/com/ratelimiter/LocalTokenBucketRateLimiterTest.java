@@ -0,0 +1,66 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exercises the in-process fallback limiter, which needs no Redis.
+ */
+class LocalTokenBucketRateLimiterTest {
+
+    /**
+     * Test scenario: A scan of many distinct client ids, each seen once
+     * Expected: The limiter never tracks more than maxBuckets clients
+     */
+    @Test
+    void bucketsAreBoundedByMaxBuckets() {
+        LocalTokenBucketRateLimiter limiter = new LocalTokenBucketRateLimiter(10, 1, 100);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(limiter.isAllowed("scan-" + i));
+        }
+
+        assertEquals(100, limiter.getBucketCount());
+        assertEquals(9_900, limiter.getEvictedBuckets() + limiter.getExpiredBuckets());
+    }
+
+    /**
+     * Test scenario: Clients whose buckets have refilled to capacity, then new clients
+     * Expected: The full buckets are dropped without evicting anyone
+     */
+    @Test
+    void fullBucketsAreDropped() throws InterruptedException {
+        // A single token refills in a millisecond, so every bucket is full after the sleep
+        LocalTokenBucketRateLimiter limiter = new LocalTokenBucketRateLimiter(1, 1000);
+        for (int i = 0; i < 100; i++) {
+            limiter.isAllowed("old-" + i);
+        }
+        Thread.sleep(10);
+        for (int i = 0; i < 100; i++) {
+            limiter.isAllowed("new-" + i);
+        }
+
+        assertTrue(limiter.getExpiredBuckets() > 0, "Full buckets should have been dropped");
+        assertEquals(0, limiter.getEvictedBuckets());
+        assertTrue(limiter.getBucketCount() < 200);
+    }
+
+    /**
+     * Test scenario: A drained client evicted by a new one
+     * Expected: The evicted client starts over with a full bucket, the others keep theirs
+     */
+    @Test
+    void evictedClientStartsOverWithAFullBucket() {
+        LocalTokenBucketRateLimiter limiter = new LocalTokenBucketRateLimiter(1, 1, 1);
+        assertTrue(limiter.isAllowed("first"));
+        assertFalse(limiter.isAllowed("first"));
+
+        assertTrue(limiter.isAllowed("second"));
+        assertEquals(1, limiter.getEvictedBuckets());
+
+        assertTrue(limiter.isAllowed("first"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.Jedis;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class MicroBatchingRateLimiterTest {
+    private static final int REDIS_PORT = 6379;
+    private static final String CLIENT_ID = "test-client";
+
+    @Container
+    private static final GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(REDIS_PORT);
+
+    private PooledConnectionProvider pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = new PooledConnectionProvider(redis.getHost(), redis.getMappedPort(REDIS_PORT), 4, 0, Duration.ofSeconds(2));
+        try (Jedis jedis = new Jedis(redis.getHost(), redis.getMappedPort(REDIS_PORT))) {
+            jedis.flushAll();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Test scenario: Many threads checking the same client through the batcher
+     * Expected: Every request within capacity is allowed and checks are coalesced into fewer batches
+     */
+    @Test
+    void concurrentChecksAreCoalesced() throws InterruptedException {
+        int threads = 16;
+        int requestsPerThread = 20;
+        int capacity = threads * requestsPerThread;
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+                pool, capacity, 1, TokenBucketRateLimiter.Strategy.SCRIPT);
+        AtomicInteger allowed = new AtomicInteger();
+
+        try (MicroBatchingRateLimiter batching = new MicroBatchingRateLimiter(limiter, Duration.ofNanos(200_000), 64)) {
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(new Thread(() -> {
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        if (batching.isAllowed(CLIENT_ID)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            assertEquals(capacity, allowed.get(), "Every request within capacity should be allowed");
+            assertTrue(batching.getBatchCount() < capacity, "Concurrent checks should share batches");
+            assertTrue(batching.getAverageBatchSize() > 1);
+        }
+    }
+
+    /**
+     * Test scenario: Checks submitted after the batcher was closed
+     * Expected: They are rejected instead of blocking forever
+     */
+    @Test
+    void closedBatcherRejectsChecks() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+                pool, 10, 1, TokenBucketRateLimiter.Strategy.SCRIPT);
+        MicroBatchingRateLimiter batching = new MicroBatchingRateLimiter(limiter, Duration.ofNanos(200_000), 64);
+
+        assertTrue(batching.isAllowed(CLIENT_ID));
+        batching.close();
+
+        assertThrows(IllegalStateException.class, () -> batching.isAllowed(CLIENT_ID));
+    }
+}
@@ -0,0 +1,185 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the resilient limiter against stand-in remote limiters that fail or hang on demand,
+ * so that outages can be produced deterministically.
+ */
+class ResilientRateLimiterTest {
+    private static final String CLIENT_ID = "test-client";
+    private static final Duration DEADLINE = Duration.ofMillis(50);
+
+    private static final RateLimiter FAILING = (clientId, permits) -> {
+        throw new IllegalStateException("Redis is down");
+    };
+
+    /**
+     * Test scenario: A remote call that hangs past the deadline
+     * Expected: The call returns around the deadline with a fail-open decision and counts as a timeout
+     */
+    @Test
+    void slowCallIsDecidedByFallbackAtDeadline() {
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimiter hanging = (clientId, permits) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return RateLimitDecision.denied(0, 1000);
+        };
+
+        try (ResilientRateLimiter limiter = new ResilientRateLimiter(
+                hanging, DEADLINE, CircuitBreaker.withDefaults(), Fallback.failOpen())) {
+            long start = System.nanoTime();
+            assertTrue(limiter.isAllowed(CLIENT_ID), "Fail-open fallback should allow the request");
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(elapsedMillis < 1000, "Decision should not wait for the hanging call, took " + elapsedMillis + "ms");
+            assertEquals(1, limiter.getMetrics().getTimeouts());
+            assertEquals(1, limiter.getMetrics().getFallbackAllowed());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * Test scenario: An async check whose remote call hangs past the deadline
+     * Expected: The future completes at the deadline with the fallback's decision
+     */
+    @Test
+    void asyncCallCompletesWithFallbackAtDeadline() {
+        CompletableFuture<RateLimitDecision> never = new CompletableFuture<>();
+        RateLimiter hanging = new RateLimiter() {
+            @Override
+            public RateLimitDecision tryConsume(String clientId, int permits) {
+                return never.join();
+            }
+
+            @Override
+            public CompletableFuture<RateLimitDecision> tryConsumeAsync(String clientId, int permits) {
+                return never;
+            }
+        };
+
+        try (ResilientRateLimiter limiter = new ResilientRateLimiter(
+                hanging, DEADLINE, CircuitBreaker.withDefaults(), Fallback.failClosed())) {
+            RateLimitDecision decision = limiter.tryConsumeAsync(CLIENT_ID).join();
+
+            assertFalse(decision.isAllowed(), "Fail-closed fallback should reject the request");
+            assertFalse(never.isDone(), "The remote future should be left alone");
+            assertEquals(1, limiter.getMetrics().getTimeouts());
+        }
+    }
+
+    /**
+     * Test scenario: Consecutive failures reaching the breaker's threshold
+     * Expected: The breaker opens and later requests are rejected without calling Redis
+     */
+    @Test
+    void breakerOpensAfterConsecutiveFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        RateLimiter failing = (clientId, permits) -> {
+            calls.incrementAndGet();
+            return FAILING.tryConsume(clientId, permits);
+        };
+        CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+
+        try (ResilientRateLimiter limiter = new ResilientRateLimiter(failing, DEADLINE, breaker, Fallback.failClosed())) {
+            for (int i = 0; i < 10; i++) {
+                RateLimitDecision decision = limiter.tryConsume(CLIENT_ID);
+                assertFalse(decision.isAllowed(), "Fail-closed fallback should reject the request");
+            }
+
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            assertEquals(3, calls.get(), "Redis should not be called while the breaker is open");
+            assertEquals(3, limiter.getMetrics().getFailures());
+            assertEquals(7, limiter.getMetrics().getShortCircuited());
+            assertEquals(10, limiter.getMetrics().getFallbackDenied());
+            assertTrue(limiter.tryConsume(CLIENT_ID).getRetryAfterMillis() > 0,
+                    "Rejections should ask the caller to retry once the breaker probes again");
+        }
+    }
+
+    /**
+     * Test scenario: Redis recovers after the breaker opened
+     * Expected: After the open period a single probe succeeds and closes the breaker
+     */
+    @Test
+    void probeClosesBreakerAfterRecovery() throws InterruptedException {
+        AtomicBoolean down = new AtomicBoolean(true);
+        RateLimiter flaky = (clientId, permits) -> {
+            if (down.get()) {
+                return FAILING.tryConsume(clientId, permits);
+            }
+            return RateLimitDecision.allowed(9);
+        };
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMillis(100));
+
+        try (ResilientRateLimiter limiter = new ResilientRateLimiter(flaky, DEADLINE, breaker, Fallback.failClosed())) {
+            assertFalse(limiter.isAllowed(CLIENT_ID));
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+            down.set(false);
+            assertFalse(limiter.isAllowed(CLIENT_ID), "Breaker should stay open until the open period ends");
+            Thread.sleep(150);
+
+            RateLimitDecision decision = limiter.tryConsume(CLIENT_ID);
+            assertTrue(decision.isAllowed());
+            assertEquals(9, decision.getRemainingTokens(), "The probe should be decided by Redis");
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals(1, breaker.getOpenCount());
+        }
+    }
+
+    /**
+     * Test scenario: Redis is down and the local fallback holds 3 tokens per client
+     * Expected: Each client is limited to the local capacity while the breaker is open
+     */
+    @Test
+    void localFallbackEnforcesApproximateLimit() {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMinutes(1));
+        Fallback fallback = Fallback.local(new LocalTokenBucketRateLimiter(3, 1));
+
+        try (ResilientRateLimiter limiter = new ResilientRateLimiter(FAILING, DEADLINE, breaker, fallback)) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(limiter.isAllowed(CLIENT_ID), "Request within the local capacity should be allowed");
+            }
+            assertFalse(limiter.isAllowed(CLIENT_ID), "Request exceeding the local capacity should be denied");
+            assertTrue(limiter.isAllowed("other-client"), "Other clients should have their own local bucket");
+
+            assertEquals(4, limiter.getMetrics().getFallbackAllowed());
+            assertEquals(1, limiter.getMetrics().getFallbackDenied());
+        }
+    }
+
+    /**
+     * Test scenario: A request for more permits than the remote bucket can ever hold
+     * Expected: The caller's error is rethrown and does not count against the breaker
+     */
+    @Test
+    void invalidRequestIsNotAFailure() {
+        RateLimiter strict = (clientId, permits) -> {
+            throw new IllegalArgumentException("permits must be between 1 and the capacity 10, was " + permits);
+        };
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMinutes(1));
+
+        try (ResilientRateLimiter limiter = new ResilientRateLimiter(strict, DEADLINE, breaker, Fallback.failOpen())) {
+            assertThrows(IllegalArgumentException.class, () -> limiter.tryConsume(CLIENT_ID, 11));
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals(0, limiter.getMetrics().getFallbackDecisions());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the shielding limiter against stand-in remote limiters that count their calls, so that
+ * the requests kept away from Redis can be observed directly.
+ */
+class ShieldingRateLimiterTest {
+    private static final String CLIENT_ID = "test-client";
+    private static final int THRESHOLD = 5;
+
+    private static HeavyHitterTracker tracker() {
+        return new HeavyHitterTracker(THRESHOLD, 10, Duration.ofMinutes(1));
+    }
+
+    /**
+     * Test scenario: A client keeps calling while its bucket is empty for the next 500 ms
+     * Expected: After THRESHOLD denials from Redis, further calls are denied locally with a shrinking retry-after time
+     */
+    @Test
+    void heavyHitterIsDeniedLocallyUntilRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+        RateLimiter remote = (clientId, permits) -> {
+            calls.incrementAndGet();
+            return RateLimitDecision.denied(0, 500);
+        };
+        ShieldingRateLimiter limiter = new ShieldingRateLimiter(remote, tracker(), 100);
+
+        for (int i = 0; i < 100; i++) {
+            RateLimitDecision decision = limiter.tryConsume(CLIENT_ID);
+            assertFalse(decision.isAllowed());
+            assertTrue(decision.getRetryAfterMillis() > 0 && decision.getRetryAfterMillis() <= 501,
+                    "Retry-after should count down from the remote one, was " + decision.getRetryAfterMillis());
+        }
+
+        assertEquals(THRESHOLD, calls.get(), "Only the denials before the client became heavy should reach Redis");
+        assertEquals(100 - THRESHOLD, limiter.getShieldedDenials());
+        assertEquals(1, limiter.getShieldedClients());
+    }
+
+    /**
+     * Test scenario: A heavy hitter's verdict expires
+     * Expected: The next call reaches Redis again and is allowed
+     */
+    @Test
+    void expiredVerdictIsForwarded() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        RateLimiter remote = (clientId, permits) -> calls.incrementAndGet() <= THRESHOLD
+                ? RateLimitDecision.denied(0, 50)
+                : RateLimitDecision.allowed(0);
+        ShieldingRateLimiter limiter = new ShieldingRateLimiter(remote, tracker(), 100);
+
+        for (int i = 0; i < THRESHOLD + 10; i++) {
+            limiter.tryConsume(CLIENT_ID);
+        }
+        assertEquals(THRESHOLD, calls.get());
+
+        Thread.sleep(60);
+
+        assertTrue(limiter.isAllowed(CLIENT_ID), "Once the retry-after time has passed Redis should decide again");
+        assertEquals(THRESHOLD + 1, calls.get());
+        assertEquals(0, limiter.getShieldedClients());
+    }
+
+    /**
+     * Test scenario: A heavy hitter denied for 5 permits asks for 1, then reserves with a wait longer than the verdict
+     * Expected: Neither request is denied locally, since either might be granted
+     */
+    @Test
+    void smallerRequestsAndLongReservationsAreForwarded() {
+        AtomicInteger calls = new AtomicInteger();
+        RateLimiter remote = (clientId, permits) -> {
+            calls.incrementAndGet();
+            return RateLimitDecision.denied(0, 1000);
+        };
+        ShieldingRateLimiter limiter = new ShieldingRateLimiter(remote, tracker(), 100);
+        for (int i = 0; i < THRESHOLD; i++) {
+            limiter.tryConsume(CLIENT_ID, 5);
+        }
+
+        limiter.tryConsume(CLIENT_ID, 5);
+        assertEquals(THRESHOLD, calls.get(), "An equal request should be denied locally");
+
+        limiter.tryConsume(CLIENT_ID, 1);
+        assertEquals(THRESHOLD + 1, calls.get(), "A smaller request should reach Redis");
+
+        limiter.reserve(CLIENT_ID, 5, Duration.ofSeconds(2));
+        assertEquals(THRESHOLD + 2, calls.get(), "A reservation accepting a longer wait should reach Redis");
+    }
+
+    /**
+     * Test scenario: Many clients denied now and then, and two denied on every call
+     * Expected: Only the two heavy clients are shielded, and they top the top-K list
+     */
+    @Test
+    void onlyHeavyHittersAreShieldedAndReported() {
+        RateLimiter remote = (clientId, permits) -> RateLimitDecision.denied(0, 1000);
+        ShieldingRateLimiter limiter = new ShieldingRateLimiter(remote, tracker(), 100);
+
+        for (int round = 0; round < 50; round++) {
+            limiter.tryConsume("abuser-1");
+            limiter.tryConsume("abuser-2");
+            limiter.tryConsume("abuser-2");
+            limiter.tryConsume("client-" + round);
+        }
+
+        List<HeavyHitterTracker.HeavyHitter> top = limiter.getTopDenied();
+        assertEquals(2, top.size(), "Occasionally denied clients should not be heavy hitters: " + top);
+        assertEquals("abuser-2", top.get(0).getClientId());
+        assertEquals("abuser-1", top.get(1).getClientId());
+        assertEquals(2, limiter.getShieldedClients());
+    }
+
+    /**
+     * Test scenario: More heavy hitters than the table holds
+     * Expected: The table keeps the most denied ones
+     */
+    @Test
+    void topKKeepsTheMostDenied() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(THRESHOLD, 3, Duration.ofMinutes(1));
+        for (int client = 0; client < 6; client++) {
+            for (int i = 0; i < THRESHOLD + client * 10; i++) {
+                tracker.recordDenial("client-" + client);
+            }
+        }
+
+        List<HeavyHitterTracker.HeavyHitter> top = tracker.getTopK();
+        assertEquals(3, top.size());
+        assertEquals("client-5", top.get(0).getClientId());
+        assertEquals("client-4", top.get(1).getClientId());
+        assertEquals("client-3", top.get(2).getClientId());
+    }
+}
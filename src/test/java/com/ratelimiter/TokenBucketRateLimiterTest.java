@@ -9,9 +9,20 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 import redis.clients.jedis.Jedis;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Testcontainers
 class TokenBucketRateLimiterTest {
@@ -120,4 +131,427 @@ class TokenBucketRateLimiterTest {
         assertFalse(rateLimiter.isAllowed(CLIENT_ID), "Request exceeding capacity should be denied");
         
     }
-} 
\ No newline at end of file
+
+    /**
+     * Test scenario: Scripted strategy basic rate limiting
+     * Expected: Allow requests up to the bucket capacity, then deny with a retry-after hint
+     */
+    @Test
+    void scriptStrategyLimitsToCapacity() {
+        TokenBucketRateLimiter scripted = new TokenBucketRateLimiter(
+                jedis, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+
+        for (int i = 0; i < BUCKET_CAPACITY; i++) {
+            RateLimitDecision decision = scripted.tryConsume(CLIENT_ID);
+            assertTrue(decision.isAllowed(), MessageFormat.format("Request is expected to be allowed for the {0} time", i+1));
+            assertEquals(BUCKET_CAPACITY - i - 1, decision.getRemainingTokens());
+        }
+
+        RateLimitDecision denied = scripted.tryConsume(CLIENT_ID);
+        assertFalse(denied.isAllowed(), "Request exceeding capacity should be denied");
+        assertTrue(denied.getRetryAfterMillis() > 0 && denied.getRetryAfterMillis() <= 1000 / REFILL_RATE,
+                "Retry-after should not exceed the time to refill one token");
+    }
+
+    /**
+     * Test scenario: Scripted strategy partial refill
+     * Expected: Tokens should be refilled based on elapsed time, the same as the transaction strategy
+     */
+    @Test
+    void scriptStrategyPartialRefill() throws InterruptedException {
+        TokenBucketRateLimiter scripted = new TokenBucketRateLimiter(
+                jedis, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+
+        for (int i = 0; i < BUCKET_CAPACITY; i++) {
+            assertTrue(scripted.isAllowed(CLIENT_ID));
+        }
+
+        Thread.sleep(500); // refil rate is 2, so 500ms will add 1 token
+
+        assertTrue(scripted.isAllowed(CLIENT_ID), "Refilled token should be consumed");
+        assertFalse(scripted.isAllowed(CLIENT_ID), "Request exceeding capacity should be denied");
+    }
+
+    /**
+     * Test scenario: Script cache flushed on the server
+     * Expected: The limiter falls back to EVAL on NOSCRIPT and keeps working
+     */
+    @Test
+    void scriptStrategyReloadsFlushedScript() {
+        TokenBucketRateLimiter scripted = new TokenBucketRateLimiter(
+                jedis, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+
+        assertTrue(scripted.isAllowed(CLIENT_ID));
+        jedis.scriptFlush();
+        assertTrue(scripted.isAllowed(CLIENT_ID), "Request should be allowed after the script cache was flushed");
+        assertEquals(BUCKET_CAPACITY - 2, rateLimiter.getCurrentTokens(CLIENT_ID));
+    }
+
+    /**
+     * Test scenario: Concurrent transactions on the same hot key
+     * Expected: Aborted transactions are retried instead of denied, so exactly the capacity is allowed
+     */
+    @Test
+    void concurrentTransactionsAreRetried() throws InterruptedException {
+        int threads = 4;
+        int requestsPerThread = 25;
+        int capacity = threads * requestsPerThread;
+        RetryPolicy retryPolicy = new RetryPolicy(1000, Duration.ofNanos(50_000), Duration.ofMillis(1));
+        AtomicInteger allowed = new AtomicInteger();
+        List<TokenBucketRateLimiter> limiters = new ArrayList<>();
+        List<Jedis> connections = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Jedis connection = new Jedis(redis.getHost(), redis.getMappedPort(REDIS_PORT));
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+                    connection, capacity, 1, TokenBucketRateLimiter.Strategy.TRANSACTION, retryPolicy);
+            connections.add(connection);
+            limiters.add(limiter);
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < requestsPerThread; i++) {
+                    if (limiter.isAllowed(CLIENT_ID)) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long giveUps = 0;
+        for (TokenBucketRateLimiter limiter : limiters) {
+            ContentionMetrics.Snapshot totals = limiter.getContentionMetrics().getTotals();
+            assertEquals(totals.getAborts(), totals.getRetries() + totals.getGiveUps());
+            giveUps += totals.getGiveUps();
+        }
+        connections.forEach(Jedis::close);
+
+        assertEquals(0, giveUps, "No transaction should exhaust the retry budget");
+        assertEquals(capacity, allowed.get(), "Every request within capacity should be allowed");
+    }
+
+    /**
+     * Test scenario: Denied request in the transaction strategy
+     * Expected: The watched keys are released, so the connection can run an unrelated transaction
+     */
+    @Test
+    void deniedTransactionReleasesWatch() {
+        for (int i = 0; i < BUCKET_CAPACITY; i++) {
+            assertTrue(rateLimiter.isAllowed(CLIENT_ID));
+        }
+        assertFalse(rateLimiter.isAllowed(CLIENT_ID));
+
+        // A write from another connection must not abort this connection's next transaction
+        try (Jedis other = new Jedis(redis.getHost(), redis.getMappedPort(REDIS_PORT))) {
+            other.set("rate_limiter:" + CLIENT_ID, "0:0");
+        }
+        var transaction = jedis.multi();
+        transaction.set("unrelated", "value");
+        assertNotNull(transaction.exec(), "Transaction should not be aborted by a stale WATCH");
+    }
+
+    /**
+     * Test scenario: One limiter instance shared by many threads through a connection pool
+     * Expected: Every request within capacity is allowed and every borrowed connection is returned
+     */
+    @Test
+    void pooledLimiterIsSharedAcrossThreads() throws InterruptedException {
+        int threads = 32;
+        int requestsPerThread = 10;
+        int capacity = threads * requestsPerThread;
+        AtomicInteger allowed = new AtomicInteger();
+
+        try (PooledConnectionProvider pool = new PooledConnectionProvider(
+                redis.getHost(), redis.getMappedPort(REDIS_PORT), 8, 0, Duration.ofSeconds(2))) {
+            TokenBucketRateLimiter shared = new TokenBucketRateLimiter(
+                    pool, capacity, 1, TokenBucketRateLimiter.Strategy.SCRIPT);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(new Thread(() -> {
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        if (shared.isAllowed(CLIENT_ID)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            PooledConnectionProvider.PoolMetrics metrics = pool.getMetrics();
+            assertEquals(0, metrics.getActive(), "All connections should be returned to the pool");
+            assertEquals(0, metrics.getBorrowFailures());
+            assertTrue(metrics.getIdle() <= 8, "The pool should not grow beyond its maximum size");
+        }
+
+        assertEquals(capacity, allowed.get(), "Every request within capacity should be allowed");
+    }
+
+    /**
+     * Test scenario: Many more concurrent async checks than pooled connections
+     * Expected: Callers are not blocked, and exactly the capacity is allowed once all checks complete
+     */
+    @Test
+    void asyncChecksRunOnVirtualThreads() {
+        int checks = 2_000;
+        int capacity = 500;
+
+        try (PooledConnectionProvider pool = new PooledConnectionProvider(
+                redis.getHost(), redis.getMappedPort(REDIS_PORT), 8, 0, Duration.ofSeconds(10))) {
+            TokenBucketRateLimiter shared = new TokenBucketRateLimiter(
+                    pool, capacity, 1, TokenBucketRateLimiter.Strategy.SCRIPT);
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < checks; i++) {
+                results.add(shared.isAllowedAsync(CLIENT_ID));
+            }
+
+            long allowed = results.stream().map(CompletableFuture::join).filter(Boolean::booleanValue).count();
+            assertEquals(capacity, allowed, "Exactly the capacity should be allowed");
+            assertEquals(0, pool.getMetrics().getBorrowFailures());
+        }
+    }
+
+    /**
+     * Test scenario: A listener attached to limiters with both strategies
+     * Expected: Every decision is reported with its outcome, and each strategy its round trips
+     */
+    @Test
+    void listenerReceivesDecisionsAndRoundTrips() {
+        AtomicInteger allowed = new AtomicInteger();
+        AtomicInteger denied = new AtomicInteger();
+        AtomicInteger roundTrips = new AtomicInteger();
+        RateLimiterListener listener = new RateLimiterListener() {
+            @Override
+            public void onDecision(String clientId, int permits, boolean isAllowed, long latencyNanos) {
+                assertEquals(CLIENT_ID, clientId);
+                assertTrue(latencyNanos > 0);
+                (isAllowed ? allowed : denied).incrementAndGet();
+            }
+
+            @Override
+            public void onRoundTrip(int commands) {
+                roundTrips.incrementAndGet();
+            }
+        };
+
+        TokenBucketRateLimiter script = new TokenBucketRateLimiter(
+                jedis, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+        script.setListener(listener);
+        for (int i = 0; i <= BUCKET_CAPACITY; i++) {
+            script.tryConsume(CLIENT_ID);
+        }
+        assertEquals(BUCKET_CAPACITY, allowed.get());
+        assertEquals(1, denied.get());
+        assertEquals(BUCKET_CAPACITY + 1, roundTrips.get(), "A script decision should take one round trip");
+
+        jedis.flushAll();
+        roundTrips.set(0);
+        rateLimiter.setListener(listener);
+        rateLimiter.tryConsume(CLIENT_ID);
+        // WATCH, GET, WATCH and MGET of the legacy keys, then MULTI/SET/EXEC
+        assertEquals(5, roundTrips.get(), "A transaction on a new bucket should take five round trips");
+    }
+
+    /**
+     * Test scenario: Batched checks for several clients
+     * Expected: Each entry consumes a token in list order and gets its own decision
+     */
+    @Test
+    void batchedChecksArePipelined() {
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < BUCKET_CAPACITY + 1; i++) {
+            batch.add("client1");
+        }
+        batch.add("client2");
+
+        List<RateLimitDecision> decisions = rateLimiter.tryConsumeAll(batch);
+
+        assertEquals(batch.size(), decisions.size());
+        for (int i = 0; i < BUCKET_CAPACITY; i++) {
+            assertTrue(decisions.get(i).isAllowed(), MessageFormat.format("Request is expected to be allowed for the {0} time", i+1));
+        }
+        assertFalse(decisions.get(BUCKET_CAPACITY).isAllowed(), "Request exceeding capacity for client1 should be denied");
+        assertTrue(decisions.get(BUCKET_CAPACITY + 1).isAllowed(), "Request for client2 should be allowed");
+        assertEquals(BUCKET_CAPACITY - 1, rateLimiter.getCurrentTokens("client2"));
+    }
+
+    /**
+     * Test scenario: Batched checks after the script cache was flushed
+     * Expected: The whole batch is retried with EVAL and no token is consumed twice
+     */
+    @Test
+    void batchedChecksReloadFlushedScript() {
+        rateLimiter.tryConsumeAll(Arrays.asList("client1", "client2"));
+        jedis.scriptFlush();
+
+        Map<String, Boolean> results = rateLimiter.isAllowed(Arrays.asList("client1", "client2", "client1"));
+
+        assertEquals(2, results.size(), "Duplicate clients should be checked once");
+        assertTrue(results.get("client1"));
+        assertTrue(results.get("client2"));
+        assertEquals(BUCKET_CAPACITY - 2, rateLimiter.getCurrentTokens("client1"));
+        assertEquals(BUCKET_CAPACITY - 2, rateLimiter.getCurrentTokens("client2"));
+    }
+
+    /**
+     * Test scenario: Weighted requests with both strategies
+     * Expected: Tokens are consumed all or nothing and the retry-after covers the missing tokens
+     */
+    @Test
+    void weightedRequestsAreAllOrNothing() {
+        for (TokenBucketRateLimiter.Strategy strategy : TokenBucketRateLimiter.Strategy.values()) {
+            String clientId = "weighted-" + strategy;
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(jedis, BUCKET_CAPACITY, REFILL_RATE, strategy);
+
+            RateLimitDecision first = limiter.tryConsume(clientId, 3);
+            assertTrue(first.isAllowed(), "Request within capacity should be allowed for " + strategy);
+            assertEquals(BUCKET_CAPACITY - 3, first.getRemainingTokens());
+
+            RateLimitDecision second = limiter.tryConsume(clientId, 3);
+            assertFalse(second.isAllowed(), "Request exceeding remaining tokens should be denied for " + strategy);
+            assertEquals(BUCKET_CAPACITY - 3, limiter.getCurrentTokens(clientId), "A denied request should consume nothing");
+            long missingMillis = 1000 / REFILL_RATE;
+            assertTrue(second.getRetryAfterMillis() > 0 && second.getRetryAfterMillis() <= missingMillis,
+                    "Retry-after should cover the one missing token for " + strategy);
+
+            assertTrue(limiter.tryConsume(clientId, 2).isAllowed(), "Remaining tokens should still be usable for " + strategy);
+        }
+    }
+
+    /**
+     * Test scenario: Weighted request larger than the bucket
+     * Expected: Rejected as invalid, since it could never succeed
+     */
+    @Test
+    void weightedRequestAboveCapacityIsInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(CLIENT_ID, BUCKET_CAPACITY + 1));
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(CLIENT_ID, 0));
+    }
+
+    /**
+     * Test scenario: Consuming from a bucket with both strategies
+     * Expected: The bucket is a single key that expires when it would be refilled to capacity
+     */
+    @Test
+    void bucketKeyExpiresWhenRefilled() {
+        for (TokenBucketRateLimiter.Strategy strategy : TokenBucketRateLimiter.Strategy.values()) {
+            String clientId = "ttl-" + strategy;
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(jedis, BUCKET_CAPACITY, REFILL_RATE, strategy);
+
+            assertTrue(limiter.tryConsume(clientId, 2).isAllowed());
+
+            long ttl = jedis.pttl("rate_limiter:" + clientId);
+            assertTrue(ttl > 0 && ttl <= 2 * 1000 / REFILL_RATE,
+                    "Key should expire once the 2 consumed tokens are refilled for " + strategy + ", was " + ttl);
+            assertEquals(BUCKET_CAPACITY - 2, limiter.getCurrentTokens(clientId));
+        }
+    }
+
+    /**
+     * Test scenario: An empty bucket last updated one and a half tokens ago, consumed once with both strategies
+     * Expected: Both keep the half token of refill progress, so the next token is due in about 250ms and not 500ms
+     */
+    @Test
+    void partialRefillProgressIsKeptByBothStrategies() {
+        for (TokenBucketRateLimiter.Strategy strategy : TokenBucketRateLimiter.Strategy.values()) {
+            String clientId = "progress-" + strategy;
+            long lastUpdate = System.currentTimeMillis() - 3 * 1000 / (2 * REFILL_RATE);
+            jedis.set("rate_limiter:" + clientId, "0:" + lastUpdate);
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(jedis, BUCKET_CAPACITY, REFILL_RATE, strategy);
+
+            assertTrue(limiter.isAllowed(clientId), "The refilled token should be usable for " + strategy);
+            assertEquals(lastUpdate + 1000 / REFILL_RATE, limiter.getLastUpdateTime(clientId),
+                    "Only the time of the whole token should be consumed for " + strategy);
+
+            RateLimitDecision denied = limiter.tryConsume(clientId);
+            assertFalse(denied.isAllowed());
+            assertTrue(denied.getRetryAfterMillis() <= 1000 / (2 * REFILL_RATE),
+                    "The next token should be due within half a refill interval for " + strategy
+                            + ", was " + denied.getRetryAfterMillis());
+        }
+    }
+
+    /**
+     * Test scenario: A bucket stored in the legacy two-key layout, with both strategies
+     * Expected: Its state is honoured and moved to the single-key layout on the next write
+     */
+    @Test
+    void legacyBucketIsMigrated() {
+        for (TokenBucketRateLimiter.Strategy strategy : TokenBucketRateLimiter.Strategy.values()) {
+            String clientId = "legacy-" + strategy;
+            String legacyTokens = "rate_limiter:" + clientId + ":tokens";
+            String legacyLastUpdate = "rate_limiter:" + clientId + ":last_update";
+            jedis.set(legacyTokens, "1");
+            jedis.set(legacyLastUpdate, String.valueOf(System.currentTimeMillis()));
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(jedis, BUCKET_CAPACITY, REFILL_RATE, strategy);
+
+            assertTrue(limiter.isAllowed(clientId), "Remaining legacy token should be usable for " + strategy);
+            assertFalse(limiter.isAllowed(clientId), "Legacy bucket should be empty for " + strategy);
+
+            assertEquals(0, limiter.getCurrentTokens(clientId));
+            assertEquals(0L, jedis.del(legacyTokens, legacyLastUpdate), "Legacy keys should be deleted for " + strategy);
+        }
+    }
+
+    /**
+     * Test scenario: Reservations on an empty bucket with both strategies
+     * Expected: Requests within the wait are granted with increasing waits, beyond it they are denied
+     */
+    @Test
+    void reservationsQueueBehindEachOther() {
+        for (TokenBucketRateLimiter.Strategy strategy : TokenBucketRateLimiter.Strategy.values()) {
+            String clientId = "reserve-" + strategy;
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(jedis, BUCKET_CAPACITY, REFILL_RATE, strategy);
+            assertTrue(limiter.tryConsume(clientId, BUCKET_CAPACITY).isAllowed());
+
+            RateLimitDecision first = limiter.reserve(clientId, 1, Duration.ofSeconds(2));
+            RateLimitDecision second = limiter.reserve(clientId, 1, Duration.ofSeconds(2));
+            assertTrue(first.isAllowed() && second.isAllowed(), "Reservations within the wait should be granted for " + strategy);
+            assertTrue(first.getRetryAfterMillis() > 0 && first.getRetryAfterMillis() <= 1000 / REFILL_RATE);
+            assertTrue(second.getRetryAfterMillis() > first.getRetryAfterMillis(), "Second reservation should wait longer");
+
+            assertFalse(limiter.reserve(clientId, 1, Duration.ofMillis(100)).isAllowed(),
+                    "A reservation beyond the wait should be denied for " + strategy);
+            assertFalse(limiter.isAllowed(clientId), "Plain checks should queue behind reservations for " + strategy);
+        }
+    }
+
+    /**
+     * Test scenario: Acquiring from an empty bucket with the script strategy
+     * Expected: The caller is held until the next token is refilled, with a single limiter call
+     */
+    @Test
+    void acquireWaitsForTheReservedToken() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+                jedis, BUCKET_CAPACITY, REFILL_RATE, TokenBucketRateLimiter.Strategy.SCRIPT);
+        assertTrue(limiter.tryConsume(CLIENT_ID, BUCKET_CAPACITY).isAllowed());
+        AtomicInteger decisions = new AtomicInteger();
+        limiter.setListener(new RateLimiterListener() {
+            @Override
+            public void onDecision(String clientId, int permits, boolean allowed, long latencyNanos) {
+                decisions.incrementAndGet();
+            }
+        });
+
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(CLIENT_ID, 1, Duration.ofSeconds(2)));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis >= 1000 / REFILL_RATE - 50, "Should wait for the refill, waited " + elapsedMillis + "ms");
+        assertEquals(1, decisions.get());
+        assertFalse(limiter.acquire(CLIENT_ID, BUCKET_CAPACITY, Duration.ofMillis(10)));
+    }
+}